@@ -0,0 +1,192 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Priority;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AdmissionController} bounds the number of enhancements in flight. Requests beyond the limit wait in a
+ * FIFO queue, for a limited time; when the queue is full or the wait expires they are shed, and it's up to the
+ * caller to decide, according to its {@link OverloadPolicy}, what shedding means. Under overload, the admitted
+ * requests keep a predictable latency instead of all of them slowing down.
+ * <p/>
+ * Requests run in one of two {@link Priority} lanes, each with its own queue. A number of slots is reserved for
+ * the {@link Priority#INTERACTIVE} lane: {@link Priority#BULK} requests first wait for one of the other slots,
+ * so that however many of them are queued, interactive requests never wait behind more than the bulk requests
+ * already in flight.
+ */
+public class AdmissionController {
+
+    /**
+     * What happens to a request that is not admitted.
+     */
+    public static enum OverloadPolicy {
+        /**
+         * The enhancement fails.
+         */
+        REJECT,
+        /**
+         * The content is left without enhancements.
+         */
+        SKIP,
+        /**
+         * Only the beginning of the text is enhanced.
+         */
+        TRUNCATE
+    }
+
+    private final Semaphore fPermits;
+
+    /**
+     * The slots bulk requests may use, i.e. all but the interactive reserve.
+     */
+    private final Semaphore fBulkPermits;
+
+    private final int fMaxInFlight;
+
+    private final int fMaxQueue;
+
+    private final long fMaxWait;
+
+    private final AtomicInteger fWaiting = new AtomicInteger();
+
+    private final AtomicInteger fBulkWaiting = new AtomicInteger();
+
+    private final AtomicLong fAdmitted = new AtomicLong();
+
+    private final AtomicLong fShed = new AtomicLong();
+
+    /**
+     * @param maxInFlight the number of requests admitted at once.
+     * @param maxQueue    the number of requests waiting for admission at once.
+     * @param maxWait     how long, in milliseconds, a request waits for admission.
+     */
+    public AdmissionController(int maxInFlight, int maxQueue, long maxWait) {
+        this(maxInFlight, maxQueue, maxWait, 0);
+    }
+
+    /**
+     * @param maxInFlight         the number of requests admitted at once.
+     * @param maxQueue            the number of requests of each lane waiting for admission at once.
+     * @param maxWait             how long, in milliseconds, a request waits for admission.
+     * @param interactiveReserved the number of slots bulk requests can't use. At least one slot is always left
+     *                            to bulk requests.
+     */
+    public AdmissionController(int maxInFlight, int maxQueue, long maxWait, int interactiveReserved) {
+        fPermits = new Semaphore(maxInFlight, true);
+        fBulkPermits = new Semaphore(Math.max(1, maxInFlight - interactiveReserved), true);
+        fMaxInFlight = maxInFlight;
+        fMaxQueue = maxQueue;
+        fMaxWait = maxWait;
+    }
+
+    /**
+     * Waits for the admission of an interactive request. An admitted request must be followed by a call to
+     * {@link #release()}.
+     *
+     * @return <code>true</code> if the request was admitted, <code>false</code> if it was shed.
+     */
+    public boolean admit() throws InterruptedException {
+        return admit(Priority.INTERACTIVE);
+    }
+
+    /**
+     * Waits for the admission of a request in the given lane. An admitted request must be followed by a call to
+     * {@link #release(Priority)} with the same priority.
+     *
+     * @return <code>true</code> if the request was admitted, <code>false</code> if it was shed.
+     */
+    public boolean admit(Priority priority) throws InterruptedException {
+        boolean bulk = priority == Priority.BULK;
+        // a request admitted right away never waits, and doesn't count against the queue.
+        if (bulk ? acquireBulk(0) : fPermits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            fAdmitted.incrementAndGet();
+            return true;
+        }
+
+        AtomicInteger waiting = bulk ? fBulkWaiting : fWaiting;
+        if (waiting.incrementAndGet() > fMaxQueue) {
+            waiting.decrementAndGet();
+            fShed.incrementAndGet();
+            return false;
+        }
+
+        boolean admitted;
+        try {
+            admitted = bulk ? acquireBulk(fMaxWait) : fPermits.tryAcquire(fMaxWait, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        (admitted ? fAdmitted : fShed).incrementAndGet();
+        return admitted;
+    }
+
+    private boolean acquireBulk(long maxWait) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWait;
+        if (!fBulkPermits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        boolean acquired = false;
+        try {
+            acquired = fPermits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } finally {
+            if (!acquired) {
+                fBulkPermits.release();
+            }
+        }
+        return acquired;
+    }
+
+    public void release() {
+        release(Priority.INTERACTIVE);
+    }
+
+    public void release(Priority priority) {
+        fPermits.release();
+        if (priority == Priority.BULK) {
+            fBulkPermits.release();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for admission.
+     */
+    public int getQueueDepth() {
+        return fWaiting.get() + fBulkWaiting.get();
+    }
+
+    /**
+     * @return the number of requests of a lane waiting for admission.
+     */
+    public int getQueueDepth(Priority priority) {
+        return (priority == Priority.BULK ? fBulkWaiting : fWaiting).get();
+    }
+
+    /**
+     * @return the number of admitted requests not yet released.
+     */
+    public int getInFlight() {
+        return fMaxInFlight - fPermits.availablePermits();
+    }
+
+    public long getAdmitted() {
+        return fAdmitted.get();
+    }
+
+    public long getShed() {
+        return fShed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdmissionController{in flight=%d/%d, queued=%d+%d/%d, admitted=%d, shed=%d}",
+                getInFlight(), fMaxInFlight, fWaiting.get(), fBulkWaiting.get(), fMaxQueue, getAdmitted(),
+                getShed());
+    }
+
+}
@@ -0,0 +1,149 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.ITranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TextView;
+import org.apache.clerezza.rdf.core.LiteralFactory;
+import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.clerezza.rdf.core.impl.TripleImpl;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The annotations and triples a ContentItem may still add to its metadata, as set by
+ * {@link DatatxtProperties#DATATXT_MAX_ANNOTATIONS} and {@link DatatxtProperties#DATATXT_MAX_TRIPLES}. Responses
+ * go through the budget on their way to the translator: only their most confident annotations are translated, in
+ * batches sized after the triples the annotations before them took, until either limit is reached. A ContentItem
+ * whose annotations were cut short is marked as {@link DatatxtNexEngine#TRUNCATED}.
+ * <p/>
+ * The triples limit is approximate: a batch is only sized after the costliest batch so far, so one whose annotations
+ * take more triples than that can go past the limit, by at most the excess of that batch. The annotations limit is
+ * exact.
+ * <p/>
+ * A budget is used by one enhancement at a time.
+ */
+class AnnotationBudget {
+
+    private static final Comparator<Annotation> MOST_CONFIDENT_FIRST = new Comparator<Annotation>() {
+        @Override
+        public int compare(Annotation a, Annotation b) {
+            return Float.compare(b.confidence, a.confidence);
+        }
+    };
+
+    private final int fMaxAnnotations;
+
+    private final int fMaxTriples;
+
+    private int fAnnotations;
+
+    private int fTriples;
+
+    /**
+     * The most triples an annotation took so far, on average over a batch.
+     */
+    private int fTripleCost;
+
+    private boolean fTruncated;
+
+    /**
+     * @param maxAnnotations the number of annotations translated, at most, or <code>0</code> for no limit.
+     * @param maxTriples     the number of triples added, at most, or <code>0</code> for no limit.
+     */
+    AnnotationBudget(int maxAnnotations, int maxTriples) {
+        fMaxAnnotations = maxAnnotations;
+        fMaxTriples = maxTriples;
+    }
+
+    /**
+     * Translates the annotations of a response the budget still allows.
+     */
+    void translate(ITranslator translator, Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                   DatatxtResponse response) {
+        if (response.annotations == null) {
+            translator.translate(item, engine, text, response);
+            return;
+        }
+
+        if (fMaxAnnotations > 0 && response.annotations.size() > fMaxAnnotations - fAnnotations) {
+            response = response.top(fMaxAnnotations - fAnnotations);
+            fTruncated = true;
+        }
+
+        if (fMaxTriples <= 0) {
+            translator.translate(item, engine, text, response);
+            fAnnotations += response.annotations.size();
+            return;
+        }
+
+        // what the translator writes once per ContentItem, such as the language, first: it counts against the
+        // triples, but not against what annotations cost.
+        MGraph graph = item.getValue();
+        int before = graph.size();
+        translator.translate(item, engine, text, with(response, Collections.<Annotation>emptyList()));
+        fTriples += graph.size() - before;
+
+        // the budget goes to the most confident annotations first.
+        List<Annotation> ranked = new ArrayList<>(response.annotations);
+        Collections.sort(ranked, MOST_CONFIDENT_FIRST);
+        int next = 0;
+        do {
+            int left = fMaxTriples - fTriples;
+            // a single annotation as long as we don't know what annotations cost.
+            int batch = fTripleCost > 0 ? left / fTripleCost : left > 0 ? 1 : 0;
+            if (batch == 0) {
+                fTruncated |= next < ranked.size();
+                return;
+            }
+            List<Annotation> annotations = ranked.subList(next, Math.min(ranked.size(), next + batch));
+
+            before = graph.size();
+            translator.translate(item, engine, text, with(response, annotations));
+            int added = graph.size() - before;
+
+            fTriples += added;
+            fAnnotations += annotations.size();
+            if (!annotations.isEmpty()) {
+                fTripleCost = Math.max(fTripleCost, (added + annotations.size() - 1) / annotations.size());
+            }
+            next += annotations.size();
+        } while (next < ranked.size());
+    }
+
+    /**
+     * Marks the ContentItem as {@link DatatxtNexEngine#TRUNCATED}, with the number of annotations it got, if the
+     * budget cut them short.
+     */
+    void record(Pair<UriRef, MGraph> item) {
+        if (!fTruncated) {
+            return;
+        }
+        LiteralFactory literals = LiteralFactory.getInstance();
+        item.getValue().add(new TripleImpl(item.getKey(), DatatxtNexEngine.TRUNCATED,
+                literals.createTypedLiteral(true)));
+        item.getValue().add(new TripleImpl(item.getKey(), DatatxtNexEngine.ANNOTATIONS_KEPT,
+                literals.createTypedLiteral(fAnnotations)));
+    }
+
+    boolean isTruncated() {
+        return fTruncated;
+    }
+
+    int getAnnotations() {
+        return fAnnotations;
+    }
+
+    private static DatatxtResponse with(DatatxtResponse response, List<Annotation> annotations) {
+        DatatxtResponse copy = response.top(0);
+        copy.annotations = new ArrayList<>(annotations);
+        return copy;
+    }
+
+}
@@ -0,0 +1,107 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Priority;
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link BulkEnhancement} runs a {@link DatatxtNexEngine} over a sequence of {@link ContentItem}s on an
+ * {@link Executor}, keeping at most a fixed number of items in flight. Items are pulled from the sequence only
+ * when a slot frees up, so lazily produced sequences are never materialized. Failures are recorded per item and
+ * do not stop the batch. Unless they say otherwise, items are enhanced in the {@link Priority#BULK} lane.
+ */
+class BulkEnhancement {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(BulkEnhancement.class);
+
+    private final DatatxtNexEngine fEngine;
+
+    private final Executor fExecutor;
+
+    private final Semaphore fSlots;
+
+    private final int fParallelism;
+
+    private final BulkListener fListener;
+
+    private final BulkResult fResult = new BulkResult();
+
+    BulkEnhancement(DatatxtNexEngine engine, Executor executor, int parallelism, BulkListener listener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        fEngine = engine;
+        fExecutor = executor;
+        fParallelism = parallelism;
+        fSlots = new Semaphore(parallelism);
+        fListener = listener;
+    }
+
+    BulkResult run(Iterable<? extends ContentItem> items) throws InterruptedException {
+        for (final ContentItem ci : items) {
+            fSlots.acquire();
+            try {
+                fExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            enhance(ci);
+                        } finally {
+                            fSlots.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                fSlots.release();
+                failed(ci, ex);
+            }
+        }
+
+        // Wait for the items still in flight.
+        fSlots.acquire(fParallelism);
+        fSlots.release(fParallelism);
+        return fResult;
+    }
+
+    private void enhance(ContentItem ci) {
+        try {
+            if (fEngine.canEnhance(ci) == EnhancementEngine.CANNOT_ENHANCE) {
+                notifyCompleted(ci, false, fResult.skipped());
+            } else {
+                fEngine.computeEnhancements(ci, Priority.BULK);
+                notifyCompleted(ci, true, fResult.enhanced());
+            }
+        } catch (Exception ex) {
+            failed(ci, ex);
+        }
+    }
+
+    private void failed(ContentItem ci, Exception ex) {
+        fLogger.warn("Bulk enhancement of ContentItem {} failed.", ci.getUri(), ex);
+        int progress = fResult.failed(ci.getUri(), ex);
+        if (fListener != null) {
+            try {
+                fListener.failed(ci, ex, progress);
+            } catch (RuntimeException listenerEx) {
+                fLogger.warn("BulkListener failed.", listenerEx);
+            }
+        }
+    }
+
+    private void notifyCompleted(ContentItem ci, boolean enhanced, int progress) {
+        if (fListener != null) {
+            try {
+                fListener.completed(ci, enhanced, progress);
+            } catch (RuntimeException ex) {
+                fLogger.warn("BulkListener failed.", ex);
+            }
+        }
+    }
+
+}
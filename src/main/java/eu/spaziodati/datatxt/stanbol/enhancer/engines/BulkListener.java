@@ -0,0 +1,26 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+
+/**
+ * Receives progress notifications from {@link DatatxtNexEngine#enhanceAll(Iterable, int, BulkListener)}.
+ * Notifications come from the worker threads, possibly concurrently.
+ */
+public interface BulkListener {
+
+    /**
+     * Called after a {@link ContentItem} has been enhanced, or skipped because the engine cannot enhance it.
+     *
+     * @param enhanced <code>false</code> if the item was skipped.
+     * @param progress the number of items processed so far, including this one.
+     */
+    void completed(ContentItem ci, boolean enhanced, int progress);
+
+    /**
+     * Called when enhancing a {@link ContentItem} failed. The batch carries on with the other items.
+     *
+     * @param progress the number of items processed so far, including this one.
+     */
+    void failed(ContentItem ci, Exception ex, int progress);
+
+}
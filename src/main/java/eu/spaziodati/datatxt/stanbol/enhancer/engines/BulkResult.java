@@ -0,0 +1,67 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import org.apache.clerezza.rdf.core.UriRef;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of {@link DatatxtNexEngine#enhanceAll(Iterable, int, BulkListener)}.
+ */
+public class BulkResult {
+
+    private int fEnhanced;
+
+    private int fSkipped;
+
+    private final Map<UriRef, Exception> fFailures = new LinkedHashMap<>();
+
+    /**
+     * The methods recording an item return the number of items processed with it, so that the progress told to
+     * {@link BulkListener}s always matches the result.
+     */
+    synchronized int enhanced() {
+        fEnhanced++;
+        return processed();
+    }
+
+    synchronized int skipped() {
+        fSkipped++;
+        return processed();
+    }
+
+    synchronized int failed(UriRef item, Exception ex) {
+        fFailures.put(item, ex);
+        return processed();
+    }
+
+    synchronized int processed() {
+        return fEnhanced + fSkipped + fFailures.size();
+    }
+
+    public synchronized int getEnhanced() {
+        return fEnhanced;
+    }
+
+    public synchronized int getSkipped() {
+        return fSkipped;
+    }
+
+    public synchronized int getFailed() {
+        return fFailures.size();
+    }
+
+    /**
+     * @return the failed items, by URI, with the reason they failed.
+     */
+    public synchronized Map<UriRef, Exception> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(fFailures));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BulkResult{enhanced=%d, skipped=%d, failed=%d}", fEnhanced, fSkipped, fFailures.size());
+    }
+
+}
@@ -16,32 +16,60 @@
  */
 package eu.spaziodati.datatxt.stanbol.enhancer.engines;
 
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.AdmissionController.OverloadPolicy;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ClientRegistry;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DeadlineException;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtException;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Endpoint;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.EngineEvent;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Priority;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Quota;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.PropertyHelper;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.RequestContext;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Trace;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.UnmanagedLanguageException;
-import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.FamTranslator;
-import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.FiseTranslator;
-import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.ITranslator;
-import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TranslationSupport;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.gazetteer.Gazetteer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs.IncrementalEnhancer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs.ParagraphReuseEnhancer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs.TextWindows;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TextView;
 
 import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.NonLiteral;
 import org.apache.clerezza.rdf.core.UriRef;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.felix.scr.annotations.*;
 import org.apache.stanbol.commons.namespaceprefix.NamespacePrefixService;
 import org.apache.stanbol.enhancer.servicesapi.*;
 import org.apache.stanbol.enhancer.servicesapi.helper.ContentItemHelper;
 import org.apache.stanbol.enhancer.servicesapi.helper.EnhancementEngineHelper;
+import org.apache.stanbol.enhancer.servicesapi.helper.ExecutionMetadataHelper;
 import org.apache.stanbol.enhancer.servicesapi.impl.AbstractEnhancementEngine;
+import org.apache.stanbol.enhancer.servicesapi.rdf.ExecutionMetadata;
+import org.apache.stanbol.enhancer.servicesapi.rdf.ExecutionPlan;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link DatatxtNexEngine} is a Stanbol Enhancement Engine that uses the
@@ -61,8 +89,16 @@ import java.util.Map;
         label = "dataTXT-NEX: Named Entity eXtraction & Linking",
         description = "This engine performs Named Entity Extraction & Linking using dataTXT. It enables you to " +
                 "automatically enrich your data by tagging texts with Wikipedia entities.")
-@Reference(name = "prefix",
-        referenceInterface = NamespacePrefixService.class)
+@References({
+        @Reference(name = "prefix",
+                referenceInterface = NamespacePrefixService.class),
+        @Reference(name = "registry",
+                referenceInterface = ClientRegistry.class,
+                cardinality = ReferenceCardinality.OPTIONAL_UNARY,
+                policy = ReferencePolicy.DYNAMIC,
+                bind = "bindRegistry",
+                unbind = "unbindRegistry")
+})
 @Service
 @Properties(value = {
         @Property(name = EnhancementEngine.PROPERTY_NAME, value = "datatxtNex")
@@ -73,6 +109,8 @@ public class DatatxtNexEngine
 
     private static Logger fLogger = LoggerFactory.getLogger(DatatxtNexEngine.class);
 
+    private static Logger fTraceLogger = LoggerFactory.getLogger(DatatxtNexEngine.class.getName() + ".trace");
+
     /**
      * The default order for the Execution of this Engine. Currently set to
      * {@link ServiceProperties#ORDERING_EXTRACTION_ENHANCEMENT} + 17. It should run after Metaxa and LangId.
@@ -97,22 +135,102 @@ public class DatatxtNexEngine
     }
 
     /**
-     * Property for controlling the output ontology for the annotations produced by this engine. Only the values
-     * in {@link OutputOntology} are allowed, and are interpreted as {@link OutputOntology#valueOf(String)}.
+     * Property for controlling the output ontologies for the annotations produced by this engine. Only the values
+     * in {@link OutputOntology} are allowed, and are interpreted as {@link OutputOntology#valueOf(String)}. With
+     * several values, annotations are written in each ontology from the same dataTXT response.
      */
     @Property(options = {
             @PropertyOption(name = "FISE", value = "FISE (Stanbol Enhancement Structure)"),
             @PropertyOption(name = "FAM", value = "FAM (Fusepool Annotation Model)"),
-    }, value = "FAM", label="Ouput Ontology", description="This engines supports (1) FISE: "
-            + "Stanbol Enhancement Structure and (2) FAM: Fusepool Annotation Model as output "
-            + "format for annotations.")
+    }, value = {"FAM"}, cardinality = Integer.MAX_VALUE, label="Ouput Ontology", description="This engines"
+            + " supports (1) FISE: Stanbol Enhancement Structure and (2) FAM: Fusepool Annotation Model as output "
+            + "format for annotations. Select both to get both from a single dataTXT call.")
     public static final String PROPERTY_OUTPUT_ONTOLOGY = NAMESPACE + ".outputontology";
 
+    /**
+     * How the local {@link Gazetteer}, built from the entities dataTXT returned so far, is used.
+     */
+    public static enum FallbackMode {
+        /**
+         * The gazetteer is not used.
+         */
+        DISABLED,
+        /**
+         * Annotations are produced by the gazetteer when dataTXT cannot be reached.
+         */
+        OUTAGE
+    }
+
+    /**
+     * Property for controlling the local fallback annotator. Only the values in {@link FallbackMode} are allowed.
+     */
+    @Property(options = {
+            @PropertyOption(name = "DISABLED", value = "Disabled"),
+            @PropertyOption(name = "OUTAGE", value = "Annotate locally when dataTXT is unavailable"),
+    }, value = "DISABLED", label = "Local fallback", description = "Entities returned by dataTXT are collected into a "
+            + "local gazetteer which can annotate texts, with lower confidence, when dataTXT is unavailable.")
+    public static final String PROPERTY_FALLBACK_MODE = NAMESPACE + ".fallback";
+
+    /**
+     * Property for controlling what happens to ContentItems shed by admission control. Only the values in
+     * {@link OverloadPolicy} are allowed.
+     */
+    @Property(options = {
+            @PropertyOption(name = "REJECT", value = "Fail the enhancement"),
+            @PropertyOption(name = "SKIP", value = "Skip the enhancement"),
+            @PropertyOption(name = "TRUNCATE", value = "Enhance the beginning of the text only"),
+    }, value = "REJECT", label = "Overload policy", description = "What happens to ContentItems which are not "
+            + "admitted for enhancement because too many are already in flight.")
+    public static final String PROPERTY_OVERLOAD_POLICY = NAMESPACE + ".overload_policy";
+
+    /**
+     * Property listing the enhancement chains whose ContentItems are enhanced in the {@link Priority#BULK} lane.
+     */
+    @Property(value = {}, cardinality = Integer.MAX_VALUE, label = "Bulk chains", description = "The names of "
+            + "the enhancement chains used for bulk work, e.g. re-indexing. Their ContentItems only get the "
+            + "admission slots and quota left over by interactive ones.")
+    public static final String PROPERTY_BULK_CHAINS = NAMESPACE + ".bulk_chains";
+
+    /**
+     * A ContentItem can choose its lane with a literal <code>INTERACTIVE</code> or <code>BULK</code> for this
+     * property in its metadata. It takes precedence over the lane of the chain.
+     */
+    public static final UriRef PRIORITY = new UriRef("http://dandelion.eu/ns/datatxt#priority");
+
+    /**
+     * A ContentItem whose annotations were cut short by {@link #DATATXT_MAX_ANNOTATIONS} or
+     * {@link #DATATXT_MAX_TRIPLES} has a <code>true</code> literal for this property in its metadata, and the number
+     * of annotations it got for {@link #ANNOTATIONS_KEPT}.
+     */
+    public static final UriRef TRUNCATED = new UriRef("http://dandelion.eu/ns/datatxt#truncated");
+
+    public static final UriRef ANNOTATIONS_KEPT = new UriRef("http://dandelion.eu/ns/datatxt#annotationsKept");
+
+    /**
+     * Sheds are logged once every this many.
+     */
+    private static final int SHED_LOG_INTERVAL = 100;
+
+    /**
+     * The head and tail kept of streamed texts: enough for the nif:head and nif:tail of FAM selectors.
+     */
+    private static final int STREAMING_HEAD_TAIL = 200;
+
     private volatile NamespacePrefixService fPrefixService;
 
-    private volatile ITranslator fTranslator;
+    private volatile ClientRegistry fRegistry;
+
+    /**
+     * Everything built from the configuration, swapped at once when it is modified.
+     */
+    private volatile EngineState fState;
+
+    private final Set<RequestContext> fInFlight =
+            Collections.newSetFromMap(new ConcurrentHashMap<RequestContext, Boolean>());
 
-    private volatile DatatxtClient fClient;
+    private volatile WarmUp fWarmUp;
+
+    private volatile Thread fWarmUpThread;
 
     public Map<String,Object> getServiceProperties() {
         return Collections.unmodifiableMap(Collections.singletonMap(
@@ -126,13 +244,90 @@ public class DatatxtNexEngine
         super.activate(ctx);
         @SuppressWarnings("unchecked")
         Dictionary<String, Object> properties = ctx.getProperties();
-        fTranslator = outputOntology(ctx, properties);
-        fClient = DatatxtClient.newClient(properties);
+        EngineState state = new EngineState(properties, fPrefixService, fRegistry, null);
+        fState = state;
+
+        if (new PropertyHelper(properties).getBoolean(DATATXT_WARM_UP, DEFAULT_WARM_UP)) {
+            fWarmUp = new WarmUp(this, state.fClient, state.fTranslator);
+            fWarmUpThread = daemonThreads("datatxt-warm-up-").newThread(fWarmUp);
+            fWarmUpThread.start();
+        } else {
+            fWarmUp = null;
+        }
+    }
+
+    /**
+     * Applies a new configuration without deactivating the engine. The new state is built next to the current
+     * one, keeping its endpoints, quotas, caches and learned data where the configuration allows it, and then
+     * swapped in: enhancements in flight finish with the state they started with, which is closed afterwards.
+     * If the new configuration is invalid, the current one stays in effect.
+     */
+    @Modified
+    protected void modified(ComponentContext ctx) throws ConfigurationException, IOException {
+        // the base class only reads the name of the engine, which may have changed too.
+        super.activate(ctx);
+        @SuppressWarnings("unchecked")
+        Dictionary<String, Object> properties = ctx.getProperties();
+        EngineState previous = fState;
+        fState = new EngineState(properties, fPrefixService, fRegistry, previous);
+        if (previous != null) {
+            previous.retire();
+        }
+        fLogger.info("Engine {} reconfigured.", getName());
+    }
+
+    /**
+     * @return <code>true</code> unless the engine is still warming up after its activation. Load balancers should
+     * only route traffic to the node once it is warmed up.
+     */
+    public boolean isWarmedUp() {
+        WarmUp warmUp = fWarmUp;
+        return warmUp == null || warmUp.isDone();
+    }
+
+    /**
+     * @return the admission controller, which reports queue depth and shed counts, or <code>null</code> if
+     * admission control is disabled or the engine is not active.
+     */
+    public AdmissionController getAdmission() {
+        EngineState state = fState;
+        return state != null ? state.fAdmission : null;
+    }
+
+    /**
+     * @return the quotas of the dataTXT keys in use, which report the units left and when they are projected to
+     * run out. None if the engine is not active.
+     */
+    public List<Quota> getQuotas() {
+        List<Quota> quotas = new ArrayList<>();
+        EngineState state = fState;
+        if (state == null) {
+            return quotas;
+        }
+        for (Endpoint endpoint : state.fClient.getEndpoints()) {
+            if (!quotas.contains(endpoint.getQuota())) {
+                quotas.add(endpoint.getQuota());
+            }
+        }
+        return quotas;
     }
 
     @Override
     @Deactivate
     protected void deactivate(ComponentContext ctx) {
+        Thread warmUp = fWarmUpThread;
+        if (warmUp != null) {
+            warmUp.interrupt();
+            fWarmUpThread = null;
+        }
+        for (RequestContext context : fInFlight) {
+            context.cancel();
+        }
+        EngineState state = fState;
+        if (state != null) {
+            fState = null;
+            state.close();
+        }
         super.deactivate(ctx);
     }
 
@@ -140,7 +335,21 @@ public class DatatxtNexEngine
      * @see org.apache.stanbol.enhancer.servicesapi.EnhancementEnginee#canEnhance(org.apache.stanbol.enhancer.servicesapi.ContentItem)
      */
     public int canEnhance(ContentItem ci) throws EngineException {
-        // check if content is present
+        EngineState state = fState;
+        if (state == null) {
+            throw new EngineException(this, ci, "The engine is not active", null);
+        }
+        // don't bother reading the text if dataTXT is known not to support its language
+        String language = EnhancementEngineHelper.getLanguage(ci);
+        if (state.fClient.isUnmanaged(language)) {
+            fLogger.debug("Skipping ContentItem {}: language {} is not supported by DataTXT", ci.getUri(), language);
+            return CANNOT_ENHANCE;
+        }
+
+        // check if content is present, without reading texts which may be huge.
+        if (state.fStreamingWindow > 0) {
+            return hasText(ci) ? ENHANCE_SYNCHRONOUS : CANNOT_ENHANCE;
+        }
         String text = text(ci);
         boolean canEnhance = text != null && !text.isEmpty();
         if (fLogger.isDebugEnabled()) {
@@ -154,35 +363,397 @@ public class DatatxtNexEngine
      * @see org.apache.stanbol.enhancer.servicesapi.EnhancementEngine#computeEnhancements(org.apache.stanbol.enhancer.servicesapi.ContentItem)
      */
     public void computeEnhancements(ContentItem ci) throws EngineException {
+        computeEnhancements(ci, Priority.INTERACTIVE);
+    }
+
+    /**
+     * As {@link #computeEnhancements(ContentItem)}, in the lane chosen by the ContentItem or its chain, if any, or
+     * else in the given one.
+     */
+    void computeEnhancements(ContentItem ci, Priority defaultPriority) throws EngineException {
+        EngineState state = acquireState(ci);
+        Trace trace = state.fTracing ? new Trace(ci.getUri().getUnicodeString()) : null;
+        EngineEvent event = EngineEvent.begin(EngineEvent.Type.ENHANCEMENT)
+                .set(EngineEvent.Field.CONTENT_ITEM, ci.getUri().getUnicodeString());
+        try {
+            computeEnhancements(state, ci, priority(state, ci, defaultPriority), trace, event);
+        } finally {
+            state.release();
+            event.commit();
+            if (trace != null) {
+                fTraceLogger.info(trace.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the current state, registered as used by an enhancement. It must be released once the enhancement
+     * is over.
+     */
+    private EngineState acquireState(ContentItem ci) throws EngineException {
+        while (true) {
+            EngineState state = fState;
+            if (state == null) {
+                throw new EngineException(this, ci, "The engine is not active", null);
+            }
+            if (state.acquire()) {
+                return state;
+            }
+            // swapped and closed in the meantime, the new state is there already.
+        }
+    }
+
+    /**
+     * @return the priority set in the metadata of a ContentItem, {@link Priority#BULK} if it is enhanced by one
+     * of the {@link #PROPERTY_BULK_CHAINS}, or else the default one.
+     */
+    private Priority priority(EngineState state, ContentItem ci, Priority defaultPriority) {
+        String priority = EnhancementEngineHelper.getString(ci.getMetadata(), ci.getUri(), PRIORITY);
+        if (priority != null) {
+            return Priority.parse(priority, defaultPriority);
+        }
+
+        Set<String> bulkChains = state.fBulkChains;
+        if (!bulkChains.isEmpty()) {
+            String chain = chain(ci);
+            if (chain != null && bulkChains.contains(chain)) {
+                return Priority.BULK;
+            }
+        }
+        return defaultPriority;
+    }
+
+    /**
+     * @return the name of the chain enhancing a ContentItem, from its execution metadata, or <code>null</code> if
+     * it is not known.
+     */
+    private static String chain(ContentItem ci) {
+        MGraph executionMetadata;
+        try {
+            executionMetadata = ci.getPart(ExecutionMetadata.CHAIN_EXECUTION, MGraph.class);
+        } catch (NoSuchPartException ex) {
+            return null;
+        }
+        NonLiteral execution = ExecutionMetadataHelper.getChainExecution(executionMetadata, ci.getUri());
+        NonLiteral plan = execution != null
+                ? ExecutionMetadataHelper.getExecutionPlanNode(executionMetadata, execution)
+                : null;
+        return plan != null ? EnhancementEngineHelper.getString(executionMetadata, plan, ExecutionPlan.CHAIN) : null;
+    }
+
+    private void computeEnhancements(EngineState state, ContentItem ci, Priority priority, Trace trace,
+                                     EngineEvent event) throws EngineException {
         // We don't need to call ci.getLock().writeLock().lock()
         // as we're enhancing synchronously.
-        String text = text(ci);
+        boolean streamed = isStreamed(state, ci);
+        String text = streamed ? null : text(ci);
+        String language = EnhancementEngineHelper.getLanguage(ci);
+        int maxLength = Integer.MAX_VALUE;
+        event.set(EngineEvent.Field.PRIORITY, priority).set(EngineEvent.Field.LANGUAGE, language)
+                .set(EngineEvent.Field.TEXT_LENGTH, text != null ? text.length() : null);
+
+        AdmissionController admission = state.fAdmission;
+        Trace.Span wait = trace != null && admission != null
+                ? trace.start("admission").attr("priority", priority)
+                : null;
+        boolean admitted = admission == null || admit(ci, admission, state.fOverloadPolicy, priority);
+        if (wait != null) {
+            wait.attr("admitted", admitted).end();
+        }
+        if (!admitted) {
+            switch (state.fOverloadPolicy) {
+                case SKIP:
+                    return;
+                case TRUNCATE:
+                    // enhancing a short prefix is cheap enough to go ahead without a permit.
+                    maxLength = state.fTruncateLength;
+                    text = streamed ? null : truncate(text, maxLength);
+                    break;
+                default:
+                    throw new EngineException(this, ci, "Too many enhancements in flight: " + admission, null);
+            }
+        }
+
+        try {
+            if (streamed) {
+                enhanceStreamed(state, ci, language, priority, trace, maxLength);
+            } else {
+                enhance(state, ci, text, language, priority, trace);
+            }
+        } finally {
+            if (admitted && admission != null) {
+                admission.release(priority);
+            }
+        }
+    }
+
+    private boolean admit(ContentItem ci, AdmissionController admission, OverloadPolicy overloadPolicy,
+                          Priority priority) throws EngineException {
+        boolean admitted;
+        try {
+            admitted = admission.admit(priority);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EngineException(this, ci, "Interrupted while waiting for admission", ex);
+        }
+
+        if (!admitted) {
+            long shed = admission.getShed();
+            if (shed % SHED_LOG_INTERVAL == 1) {
+                fLogger.warn("Overloaded, shedding {} ContentItem {} ({}): {}", new Object[]{priority, ci.getUri(),
+                        overloadPolicy, admission});
+            }
+        }
+        return admitted;
+    }
+
+    /**
+     * @return the text up to <code>length</code> characters, cut at a whitespace if there is one.
+     */
+    private String truncate(String text, int length) {
+        if (text.length() <= length) {
+            return text;
+        }
+        int end = length;
+        while (end > 0 && !Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        return text.substring(0, end > 0 ? end : length);
+    }
+
+    private void enhance(EngineState state, ContentItem ci, String text, String language, Priority priority,
+                         Trace trace) throws EngineException {
+        Gazetteer gazetteer = state.fGazetteer;
+        Pair<UriRef, MGraph> item = new ImmutablePair<UriRef, MGraph>(ci.getUri(), ci.getMetadata());
+        AnnotationBudget budget = state.newBudget();
         try {
-            fTranslator.translate(new ImmutablePair<UriRef, MGraph>(ci.getUri(), ci.getMetadata()),
-                    this, text, fClient.doRequest(text, EnhancementEngineHelper.getLanguage(ci)));
+            DatatxtResponse response = request(state, ci, true, text, language, priority, trace);
+            Trace.Span span = trace != null ? trace.start("translate")
+                    .attr("annotations", response.annotations != null ? response.annotations.size() : 0) : null;
+            budget.translate(state.fTranslator, item, this, TextView.of(text), response);
+            if (span != null) {
+                span.attr("translated", budget.getAnnotations()).end();
+            }
+            budget.record(item);
         } catch (UnmanagedLanguageException ex){
             fLogger.warn("Unable to process ContentItem {} because Language {} is not supported by DataTXT",
                     ci, ex.getLanguage());
         } catch (DatatxtException ex) {
-            throw new EngineException(ex);
+            if (!canFallBack(state, ex)) {
+                throw new EngineException(ex);
+            }
+            fLogger.warn("dataTXT unavailable, annotating ContentItem {} with the local gazetteer.", ci.getUri(), ex);
+            budget.translate(state.fTranslator, item, this, TextView.of(text), gazetteer.annotate(text, language));
+            budget.record(item);
         }
     }
 
-    private ITranslator outputOntology(ComponentContext context, Dictionary<String, Object> properties) throws ConfigurationException {
-        String s = (String) properties.get(PROPERTY_OUTPUT_ONTOLOGY);
-        OutputOntology outputOntology = s == null ? OutputOntology.FAM : OutputOntology.valueOf(s.toUpperCase());
+    /**
+     * Enhances a text too large to be read in memory, one window at a time. Each window is sent to dataTXT on its
+     * own and translated against a {@link TextView} of the window.
+     *
+     * @param maxLength the number of characters to enhance, at most.
+     */
+    private void enhanceStreamed(EngineState state, ContentItem ci, String language, Priority priority,
+                                 Trace trace, int maxLength) throws EngineException {
+        Blob blob = ci.getBlob();
+        Pair<UriRef, MGraph> item = new ImmutablePair<UriRef, MGraph>(ci.getUri(), ci.getMetadata());
+        AnnotationBudget budget = state.newBudget();
+        try {
+            TextWindows.Scan scan;
+            try (Reader reader = reader(blob)) {
+                scan = TextWindows.scan(reader, STREAMING_HEAD_TAIL);
+            }
 
-        TranslationSupport support = new TranslationSupport(fPrefixService);
-        switch (outputOntology) {
-            case FISE:
-                return new FiseTranslator(support);
-            case FAM:
-                return new FamTranslator(support);
-            default:
-                throw new IllegalStateException();
+            try (Reader reader = reader(blob)) {
+                TextWindows.WindowReader windows = new TextWindows.WindowReader(reader, scan,
+                        Math.min(state.fStreamingWindow, maxLength));
+                TextWindows.Window window;
+                while ((window = windows.next()) != null) {
+                    DatatxtResponse response = requestWindow(state, ci, window.text, language, priority, trace);
+                    if (response == null) {
+                        return;
+                    }
+                    budget.translate(state.fTranslator, item, this,
+                            new TextView(scan.head, scan.tail, scan.length, window.text, window.offset),
+                            response.shift(window.offset));
+                    // let the first window decide the language of the next ones.
+                    if (language == null) {
+                        language = response.lang;
+                    }
+                    if (window.offset + window.text.length() >= maxLength) {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            fLogger.error("Failed to stream the text from content: " + ci.getUri(), ex);
+            throw new InvalidContentException(this, ci, ex);
+        } finally {
+            budget.record(item);
         }
     }
 
+    /**
+     * @return the response for a window, from dataTXT or from the gazetteer, or <code>null</code> if the
+     * language is not supported.
+     */
+    private DatatxtResponse requestWindow(EngineState state, ContentItem ci, String text, String language,
+                                          Priority priority, Trace trace) throws EngineException {
+        Gazetteer gazetteer = state.fGazetteer;
+        try {
+            return request(state, ci, false, text, language, priority, trace);
+        } catch (UnmanagedLanguageException ex) {
+            fLogger.warn("Unable to process ContentItem {} because Language {} is not supported by DataTXT",
+                    ci, ex.getLanguage());
+            return null;
+        } catch (DatatxtException ex) {
+            if (!canFallBack(state, ex)) {
+                throw new EngineException(ex);
+            }
+            fLogger.warn("dataTXT unavailable, annotating a window of ContentItem {} with the local gazetteer.",
+                    ci.getUri(), ex);
+            return gazetteer.annotate(text, language);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the text of a ContentItem is large enough to be streamed.
+     */
+    private boolean isStreamed(EngineState state, ContentItem ci) {
+        int window = state.fStreamingWindow;
+        if (window <= 0) {
+            return false;
+        }
+        long length = ci.getBlob().getContentLength();
+        // lengths are in bytes, which are at least as many as characters.
+        return length < 0 || length > window;
+    }
+
+    private static Reader reader(Blob blob) throws IOException {
+        String charset = blob.getParameter().get("charset");
+        return new InputStreamReader(blob.getStream(), charset != null ? charset : "UTF-8");
+    }
+
+    /**
+     * @return <code>true</code> if the text of a ContentItem has any non-whitespace character, reading no more of
+     * it than needed.
+     */
+    private boolean hasText(ContentItem ci) throws InvalidContentException {
+        try (Reader reader = reader(ci.getBlob())) {
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] > ' ') {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            fLogger.error("Failed to get the text from content: " + ci.getUri(), e);
+            throw new InvalidContentException(this, ci, e);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the gazetteer can annotate a text dataTXT failed to. Cancelled calls are not
+     * retried locally: the engine is going away.
+     */
+    private static boolean canFallBack(EngineState state, DatatxtException ex) {
+        return state.fFallbackMode != FallbackMode.DISABLED && state.fGazetteer.size() > 0 && !isCancellation(ex);
+    }
+
+    /**
+     * @return <code>true</code> if a call failed because it was cancelled on deactivation, rather than because its
+     * time budget ran out.
+     */
+    private static boolean isCancellation(DatatxtException ex) {
+        return ex instanceof DeadlineException && ((DeadlineException) ex).isCancelled();
+    }
+
+    /**
+     * Calls dataTXT for a text, within the configured time budget. The call is cancelled if the engine is
+     * deactivated in the meantime.
+     *
+     * @param ci       the ContentItem the text belongs to.
+     * @param whole    <code>true</code> if the text is the whole document, which can then be enhanced
+     *                 incrementally.
+     * @param priority the lane of the call, for the quota reserved to interactive calls.
+     */
+    private DatatxtResponse request(EngineState state, ContentItem ci, boolean whole, String text, String language,
+                                    Priority priority, Trace trace) throws DatatxtException {
+        DatatxtClient client = state.fClient;
+        String id = ci.getUri().getUnicodeString();
+        IncrementalEnhancer incremental = whole ? state.fIncremental : null;
+        ParagraphReuseEnhancer paragraphReuse = state.fParagraphReuse;
+        RequestContext context = client.newContext(trace, priority, id);
+        fInFlight.add(context);
+        DatatxtResponse response;
+        try {
+            if (incremental != null) {
+                response = incremental.enhance(id, text, language, client, context);
+            } else if (paragraphReuse != null) {
+                response = paragraphReuse.enhance(text, language, client, context);
+            } else {
+                response = client.doRequest(text, language, context);
+            }
+        } finally {
+            fInFlight.remove(context);
+        }
+
+        Gazetteer gazetteer = state.fGazetteer;
+        if (gazetteer != null) {
+            gazetteer.learn(response);
+        }
+        return response;
+    }
+
+    /**
+     * Enhances a sequence of {@link ContentItem}s with at most <code>parallelism</code> items in flight, on a pool of
+     * threads owned by this call. Items the engine cannot enhance are skipped; failures are reported to the listener
+     * and collected in the result, without stopping the batch. Items are enhanced in the
+     * {@link Priority#BULK} lane, unless their metadata asks for another one.
+     *
+     * @param items       the items to enhance. They are pulled lazily, so a streaming {@link Iterable} is fine.
+     * @param parallelism the maximum number of items processed concurrently.
+     * @param listener    an optional listener for progress notifications.
+     * @return the outcome of the batch, once every item has been processed.
+     */
+    public BulkResult enhanceAll(Iterable<? extends ContentItem> items, int parallelism, BulkListener listener)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, daemonThreads("datatxt-bulk-"));
+
+        try {
+            return enhanceAll(items, executor, parallelism, listener);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * As {@link #enhanceAll(Iterable, int, BulkListener)}, but runs the items on a caller-provided
+     * {@link Executor} (e.g. a virtual-thread-per-task executor on runtimes that offer one).
+     */
+    public BulkResult enhanceAll(Iterable<? extends ContentItem> items, Executor executor, int parallelism,
+                                 BulkListener listener) throws InterruptedException {
+        return new BulkEnhancement(this, executor, parallelism, listener).run(items);
+    }
+
+    static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger fCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + fCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     private String text(ContentItem ci) throws InvalidContentException {
         try {
             String text = ContentItemHelper.getText(ci.getBlob());
@@ -204,4 +775,18 @@ public class DatatxtNexEngine
         fPrefixService = null;
     }
 
+    protected void bindRegistry(ClientRegistry registry) {
+        fRegistry = registry;
+    }
+
+    /**
+     * The client built with the registry keeps using the resources it got from it until the engine is
+     * deactivated.
+     */
+    protected void unbindRegistry(ClientRegistry registry) {
+        if (fRegistry == registry) {
+            fRegistry = null;
+        }
+    }
+
 }
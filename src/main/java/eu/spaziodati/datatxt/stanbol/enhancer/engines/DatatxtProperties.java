@@ -24,6 +24,14 @@ public interface DatatxtProperties {
             description = "The assigned Application KEY (sign up for free at https://dandelion.eu/accounts/login)")
     public static final String DATATXT_APP_KEY = "eu.spaziodati.datatxt.stanbol.engine.enhancer.app_key";
 
+    @Property(value = {}, label = "Endpoints", cardinality = Integer.MAX_VALUE,
+            description = "A list of dataTXT endpoints and credentials, each formatted as"
+                    + " url|app_id|app_key[|weight[|daily_units]]. Requests are balanced over the endpoints by latency,"
+                    + " outstanding requests and weight, and fail over to another endpoint on errors. Endpoints sharing"
+                    + " an app_id share its daily_units quota (0 or empty for no limit). If empty, the endpoint URL,"
+                    + " application ID and application KEY above are used.")
+    public static final String DATATXT_ENDPOINTS = NAMESPACE + ".endpoints";
+
     @Property(value = "0.6", label = "Threshold for the Confidence value",
             description = "Entities with a confidence value below this threshold will be discarded."
                     + " Confidence is a numeric estimation of the quality of the annotation,"
@@ -36,6 +44,172 @@ public interface DatatxtProperties {
     public static final String DATATXT_MIN_LENGTH = NAMESPACE + ".min_length";
     public static final int DEFAULT_MIN_LENGTH = 2;
 
+    @Property(floatValue = -1f, label = "Fetch confidence floor",
+            description = "If set (between 0 and the confidence threshold), requests are sent to dataTXT with this"
+                    + " confidence threshold and the configured threshold and spot minimum length are applied locally."
+                    + " Cached responses can then be shared by engines configured with different thresholds."
+                    + " -1 disables the floor.")
+    public static final String DATATXT_FETCH_MIN_CONFIDENCE = NAMESPACE + ".fetch_min_confidence";
+    public static final float DEFAULT_FETCH_MIN_CONFIDENCE = -1f;
+
+    @Property(intValue = -1, label = "Fetch spot length floor",
+            description = "With the fetch confidence floor, the spot minimum length requests are sent to dataTXT"
+                    + " with (between 0 and the spot minimum length). Lower it to share cached responses with engines"
+                    + " configured with shorter spots. -1 fetches at the spot minimum length.")
+    public static final String DATATXT_FETCH_MIN_LENGTH = NAMESPACE + ".fetch_min_length";
+    public static final int DEFAULT_FETCH_MIN_LENGTH = -1;
+
+    @Property(intValue = 5000, label = "Connect timeout",
+            description = "How long, in milliseconds, to wait for a connection to dataTXT. 0 waits forever.")
+    public static final String DATATXT_CONNECT_TIMEOUT = NAMESPACE + ".connect_timeout";
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    @Property(intValue = 30000, label = "Read timeout",
+            description = "How long, in milliseconds, to wait for data from dataTXT. 0 waits forever.")
+    public static final String DATATXT_READ_TIMEOUT = NAMESPACE + ".read_timeout";
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    @Property(intValue = 60000, label = "Request timeout",
+            description = "The time budget, in milliseconds, for all the dataTXT calls made to enhance a ContentItem,"
+                    + " retries on other endpoints included. 0 disables it.")
+    public static final String DATATXT_REQUEST_TIMEOUT = NAMESPACE + ".request_timeout";
+    public static final int DEFAULT_REQUEST_TIMEOUT = 60000;
+
+    @Property(intValue = 0, label = "Slow call threshold",
+            description = "dataTXT calls taking longer than this many milliseconds are logged, with excerpts of the"
+                    + " request and the response. 0 disables the slow call log.")
+    public static final String DATATXT_SLOW_CALL_THRESHOLD = NAMESPACE + ".slow_call_threshold";
+    public static final int DEFAULT_SLOW_CALL_THRESHOLD = 0;
+
+    @Property(floatValue = 1f, label = "Slow call sample rate",
+            description = "The fraction, between 0 and 1, of the slow calls which are logged.")
+    public static final String DATATXT_SLOW_CALL_SAMPLE_RATE = NAMESPACE + ".slow_call_sample_rate";
+    public static final float DEFAULT_SLOW_CALL_SAMPLE_RATE = 1f;
+
+    @Property(boolValue = false, label = "Tracing",
+            description = "Logs, for each enhancement, where the time went: admission, cache, HTTP calls (with"
+                    + " response sizes) and translation.")
+    public static final String DATATXT_TRACE = NAMESPACE + ".trace";
+    public static final boolean DEFAULT_TRACE = false;
+
+    @Property(intValue = 0, label = "Response cache size",
+            description = "The number of dataTXT responses kept in memory, by request fingerprint. 0 disables the cache.")
+    public static final String DATATXT_CACHE_SIZE = NAMESPACE + ".cache_size";
+    public static final int DEFAULT_CACHE_SIZE = 0;
+
+    @Property(value = "", label = "Persistent response cache directory",
+            description = "A directory where dataTXT responses are stored across restarts. Engines on the same host"
+                    + " may share it: the first one opening it writes, the others read. Leave empty to disable.")
+    public static final String DATATXT_CACHE_DIRECTORY = NAMESPACE + ".cache_directory";
+
+    @Property(intValue = 256, label = "Persistent response cache size",
+            description = "The maximum size, in MB, of the persistent response cache. When it is exceeded, the oldest"
+                    + " responses are dropped.")
+    public static final String DATATXT_CACHE_DIRECTORY_SIZE = NAMESPACE + ".cache_directory_size";
+    public static final int DEFAULT_CACHE_DIRECTORY_SIZE = 256;
+
+    @Property(value = "", label = "Cluster cache node id",
+            description = "The id of this node in a response cache shared by a cluster of enhancer nodes. The"
+                    + " cluster needs a cache connector service, and the memory or persistent cache holds the share"
+                    + " of this node. Leave empty to keep the cache local.")
+    public static final String DATATXT_CACHE_NODE_ID = NAMESPACE + ".cache_node_id";
+
+    @Property(value = {}, cardinality = Integer.MAX_VALUE, label = "Cluster cache nodes",
+            description = "The ids of the members of the cluster sharing the response cache. This node is always one"
+                    + " of them.")
+    public static final String DATATXT_CACHE_NODES = NAMESPACE + ".cache_nodes";
+
+    @Property(intValue = 2, label = "Cluster cache replicas",
+            description = "How many nodes of the cluster store each response. With 2 or more, no response is lost"
+                    + " when a single node joins or leaves.")
+    public static final String DATATXT_CACHE_REPLICAS = NAMESPACE + ".cache_replicas";
+    public static final int DEFAULT_CACHE_REPLICAS = 2;
+
+    @Property(intValue = 1000, label = "Cluster near-cache size",
+            description = "The number of responses from the cluster cache kept in memory on this node. 0 disables"
+                    + " the near-cache.")
+    public static final String DATATXT_CACHE_NEAR_SIZE = NAMESPACE + ".cache_near_size";
+    public static final int DEFAULT_CACHE_NEAR_SIZE = 1000;
+
+    @Property(intValue = 0, label = "Entity store size",
+            description = "The number of entity descriptions (abstract, image and types) kept locally. When enabled,"
+                    + " and once the store knows most of the entities dataTXT returns, dataTXT is asked for abstracts,"
+                    + " images and types only for entities not in the store. 0 disables the store.")
+    public static final String DATATXT_ENTITY_STORE_SIZE = NAMESPACE + ".entity_store_size";
+    public static final int DEFAULT_ENTITY_STORE_SIZE = 0;
+
+    @Property(boolValue = true, label = "Entity abstracts",
+            description = "Adds the abstracts of linked entities to the enhancements. When disabled, abstracts are"
+                    + " neither requested nor parsed.")
+    public static final String DATATXT_INCLUDE_ABSTRACTS = NAMESPACE + ".include_abstracts";
+    public static final boolean DEFAULT_INCLUDE_ABSTRACTS = true;
+
+    @Property(boolValue = true, label = "Entity depictions",
+            description = "Adds the depictions of linked entities to the enhancements. When disabled, images are"
+                    + " neither requested nor parsed.")
+    public static final String DATATXT_INCLUDE_IMAGES = NAMESPACE + ".include_images";
+    public static final boolean DEFAULT_INCLUDE_IMAGES = true;
+
+    @Property(intValue = 0, label = "Maximum annotations",
+            description = "The number of annotations added per ContentItem, at most. Beyond it, only the most"
+                    + " confident ones are kept, and the ContentItem is marked as truncated. 0 keeps them all.")
+    public static final String DATATXT_MAX_ANNOTATIONS = NAMESPACE + ".max_annotations";
+    public static final int DEFAULT_MAX_ANNOTATIONS = 0;
+
+    @Property(intValue = 0, label = "Maximum triples",
+            description = "The number of triples added per ContentItem, roughly. Annotations are added most"
+                    + " confident first, in batches sized after the triples the previous ones took, and the"
+                    + " ContentItem is marked as truncated when some are left out. A batch of unusually costly"
+                    + " annotations can go past the limit. 0 sets no limit.")
+    public static final String DATATXT_MAX_TRIPLES = NAMESPACE + ".max_triples";
+    public static final int DEFAULT_MAX_TRIPLES = 0;
+
+    @Property(intValue = 0, label = "Maximum abstract length",
+            description = "Entity abstracts longer than this many characters are cut at a word boundary. 0 keeps"
+                    + " them whole.")
+    public static final String DATATXT_MAX_ABSTRACT_LENGTH = NAMESPACE + ".max_abstract_length";
+    public static final int DEFAULT_MAX_ABSTRACT_LENGTH = 0;
+
+    @Property(intValue = 0, label = "Maximum enhancements in flight",
+            description = "The number of ContentItems enhanced at once. Others wait for admission, and are shed"
+                    + " according to the overload policy when the wait is too long. 0 disables admission control.")
+    public static final String DATATXT_MAX_IN_FLIGHT = NAMESPACE + ".max_in_flight";
+    public static final int DEFAULT_MAX_IN_FLIGHT = 0;
+
+    @Property(intValue = 100, label = "Maximum admission queue",
+            description = "The number of ContentItems waiting for admission. Beyond it, they are shed right away.")
+    public static final String DATATXT_MAX_QUEUE = NAMESPACE + ".max_queue";
+    public static final int DEFAULT_MAX_QUEUE = 100;
+
+    @Property(intValue = 10000, label = "Maximum admission wait",
+            description = "How long, in milliseconds, a ContentItem waits for admission before being shed.")
+    public static final String DATATXT_MAX_QUEUE_WAIT = NAMESPACE + ".max_queue_wait";
+    public static final int DEFAULT_MAX_QUEUE_WAIT = 10000;
+
+    @Property(intValue = 20, label = "Interactive reserve",
+            description = "The percentage of the admission slots, and of the daily quota of each dataTXT key, reserved"
+                    + " for interactive enhancements. Bulk enhancements only use what is left over.")
+    public static final String DATATXT_INTERACTIVE_RESERVE = NAMESPACE + ".interactive_reserve";
+    public static final int DEFAULT_INTERACTIVE_RESERVE = 20;
+
+    @Property(intValue = 2000, label = "Overload truncation length",
+            description = "The number of characters enhanced when a ContentItem is shed with the TRUNCATE policy.")
+    public static final String DATATXT_OVERLOAD_TRUNCATE_LENGTH = NAMESPACE + ".overload_truncate_length";
+    public static final int DEFAULT_OVERLOAD_TRUNCATE_LENGTH = 2000;
+
+    @Property(intValue = 0, label = "Streaming window",
+            description = "Texts larger than this many characters are not read in memory at once: they are streamed"
+                    + " and sent to dataTXT one window of at most this size at a time. 0 always reads texts in full.")
+    public static final String DATATXT_STREAMING_WINDOW = NAMESPACE + ".streaming_window";
+    public static final int DEFAULT_STREAMING_WINDOW = 0;
+
+    @Property(boolValue = false, label = "Warm-up",
+            description = "If enabled, the engine warms up in the background after activation: it connects to the"
+                    + " endpoints, loads recent responses of the persistent cache in memory, and exercises the"
+                    + " response parser and the translator on a synthetic response.")
+    public static final String DATATXT_WARM_UP = NAMESPACE + ".warm_up";
+    public static final boolean DEFAULT_WARM_UP = false;
+
     @Property(value = {}, label = "Recognizes more type of entities", cardinality = Integer.MAX_VALUE,
             description = "Recognizes more type. Note: this parameter require the country parameter to be set, and VAT IDs will work only for Italy.", options = {
             @PropertyOption(name = "phone", value = "Phone numbers - Enables matching of phone numbers"),
@@ -54,6 +228,62 @@ public interface DatatxtProperties {
                     + " (to define your own spots: https://dandelion.eu/docs/api/datatxt/custom-spots/v1/)")
     public static final String DATATXT_CUSTOM_SPOTS = NAMESPACE + ".custom_spots";
 
+    @Property(boolValue = false, label = "Compress requests",
+            description = "If enabled, request bodies are sent gzip-compressed (Content-Encoding: gzip) using chunked"
+                    + " streaming. Only enable this if the endpoint accepts compressed requests. Compressed responses"
+                    + " are always negotiated.")
+    public static final String DATATXT_REQUEST_COMPRESSION = NAMESPACE + ".request_compression";
+    public static final boolean DEFAULT_REQUEST_COMPRESSION = false;
+
+    @Property(boolValue = false, label = "Quota pacing",
+            description = "If enabled, bulk requests are spread over time so that the units dataTXT reports as left"
+                    + " last until they are reset, instead of running out in the middle of a batch. Interactive"
+                    + " requests are never delayed.")
+    public static final String DATATXT_QUOTA_PACING = NAMESPACE + ".quota_pacing";
+    public static final boolean DEFAULT_QUOTA_PACING = false;
+
+    @Property(value = {}, label = "Supported languages", cardinality = Integer.MAX_VALUE,
+            description = "The languages (e.g. en, it, fr) dataTXT is expected to support. Content in any other language"
+                    + " is skipped without calling the service. Leave empty to try every language.")
+    public static final String DATATXT_SUPPORTED_LANGUAGES = NAMESPACE + ".supported_languages";
+
+    @Property(intValue = 3600, label = "Unmanaged language TTL",
+            description = "For how many seconds a language reported as unmanaged by dataTXT is remembered. Content in"
+                    + " such languages is skipped without calling the service until the entry expires. 0 disables"
+                    + " the cache.")
+    public static final String DATATXT_UNMANAGED_LANGUAGE_TTL = NAMESPACE + ".unmanaged_language_ttl";
+    public static final int DEFAULT_UNMANAGED_LANGUAGE_TTL = 3600;
+
+    @Property(boolValue = false, label = "Incremental re-enhancement",
+            description = "If enabled, the engine remembers the annotations of each paragraph of recently enhanced"
+                    + " documents. When a document is enhanced again, only the paragraphs that changed are sent to"
+                    + " dataTXT.")
+    public static final String DATATXT_INCREMENTAL = NAMESPACE + ".incremental";
+    public static final boolean DEFAULT_INCREMENTAL = false;
+
+    @Property(intValue = 1000, label = "Incremental re-enhancement documents",
+            description = "How many documents are remembered for incremental re-enhancement.")
+    public static final String DATATXT_INCREMENTAL_DOCUMENTS = NAMESPACE + ".incremental_documents";
+    public static final int DEFAULT_INCREMENTAL_DOCUMENTS = 1000;
+
+    @Property(boolValue = false, label = "Paragraph reuse",
+            description = "If enabled, the engine remembers the annotations of the paragraphs it enhanced, whatever"
+                    + " the document. Paragraphs seen before, e.g. disclaimers and footers, get the same annotations"
+                    + " again, and only the novel ones are sent to dataTXT, with some of their surrounding text."
+                    + " Incremental re-enhancement, when enabled, takes precedence for whole documents.")
+    public static final String DATATXT_PARAGRAPH_REUSE = NAMESPACE + ".paragraph_reuse";
+    public static final boolean DEFAULT_PARAGRAPH_REUSE = false;
+
+    @Property(intValue = 100000, label = "Paragraph reuse size",
+            description = "How many paragraphs are remembered for paragraph reuse.")
+    public static final String DATATXT_PARAGRAPH_REUSE_SIZE = NAMESPACE + ".paragraph_reuse_size";
+    public static final int DEFAULT_PARAGRAPH_REUSE_SIZE = 100000;
+
+    @Property(intValue = 100000, label = "Local gazetteer size",
+            description = "The maximum number of spots the local fallback gazetteer remembers, over all languages.")
+    public static final String DATATXT_GAZETTEER_SIZE = NAMESPACE + ".gazetteer_size";
+    public static final int DEFAULT_GAZETTEER_SIZE = 100000;
+
     public static final Collection<String> ACCEPTED_COUNTRIES = Arrays.asList(new String[]{
             "AD", "AE", "AM", "AO", "AQ", "AR", "AU", "BB", "BR", "BS", "BY",
             "CA", "CH", "CL", "CN", "CX", "DE", "FR", "GB", "HU", "IT", "JP",
@@ -0,0 +1,284 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.AdmissionController.OverloadPolicy;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtNexEngine.FallbackMode;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtNexEngine.OutputOntology;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ClientRegistry;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.EntityStore;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.PropertyHelper;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.gazetteer.Gazetteer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs.IncrementalEnhancer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs.ParagraphReuseEnhancer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.CompositeTranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.FamTranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.FiseTranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.ITranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.RecordingTranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TranslationSupport;
+import org.apache.stanbol.commons.namespaceprefix.NamespacePrefixService;
+import org.osgi.service.cm.ConfigurationException;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EngineState} holds everything a {@link DatatxtNexEngine} builds from its configuration, so that a new
+ * configuration can be swapped in at once. Enhancements {@link #acquire()} the state they start with and keep
+ * using it until they are over: a state replaced by a new one is only closed once the last of them
+ * {@link #release()}s it.
+ * <p/>
+ * A state built from a previous one takes over what the new configuration leaves unchanged: the endpoints, quotas
+ * and caches of the client, as long as the endpoints and credentials are the same, the entity store, the
+ * gazetteer, the incremental and paragraph reuse enhancers and the admission controller.
+ */
+class EngineState implements DatatxtProperties {
+
+    /**
+     * The properties deciding which endpoints are called, and with which credentials.
+     */
+    private static final String[] ENDPOINT_PROPERTIES = {DATATXT_NEX_URL, DATATXT_APP_ID, DATATXT_APP_KEY,
+            DATATXT_ENDPOINTS};
+
+    /**
+     * The properties deciding what dataTXT returns for a text, besides the text itself.
+     */
+    private static final String[] REQUEST_PROPERTIES = {DATATXT_MIN_CONFIDENCE, DATATXT_MIN_LENGTH,
+            DATATXT_FETCH_MIN_CONFIDENCE, DATATXT_FETCH_MIN_LENGTH, DATATXT_EXTRA_TYPES, DATATXT_COUNTRY,
+            DATATXT_CUSTOM_SPOTS, DATATXT_INCLUDE_ABSTRACTS, DATATXT_INCLUDE_IMAGES, DATATXT_MAX_ANNOTATIONS,
+            DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY};
+
+    private static final String[] ADMISSION_PROPERTIES = {DATATXT_MAX_IN_FLIGHT, DATATXT_MAX_QUEUE,
+            DATATXT_MAX_QUEUE_WAIT, DATATXT_INTERACTIVE_RESERVE};
+
+    final Dictionary<String, Object> fProperties;
+
+    final EntityStore fEntities;
+
+    final ITranslator fTranslator;
+
+    final DatatxtClient fClient;
+
+    final IncrementalEnhancer fIncremental;
+
+    final ParagraphReuseEnhancer fParagraphReuse;
+
+    final FallbackMode fFallbackMode;
+
+    final Gazetteer fGazetteer;
+
+    final AdmissionController fAdmission;
+
+    final OverloadPolicy fOverloadPolicy;
+
+    final int fTruncateLength;
+
+    final boolean fTracing;
+
+    final int fStreamingWindow;
+
+    final int fMaxAnnotations;
+
+    final int fMaxTriples;
+
+    final Set<String> fBulkChains;
+
+    /**
+     * The enhancements using this state, plus one for the engine as long as this is its current state.
+     */
+    private final AtomicInteger fUsers = new AtomicInteger(1);
+
+    private final AtomicBoolean fClosed = new AtomicBoolean();
+
+    /**
+     * @param previous the state this one replaces, or <code>null</code>.
+     */
+    EngineState(Dictionary<String, Object> properties, NamespacePrefixService prefixService,
+                ClientRegistry registry, EngineState previous) throws ConfigurationException {
+        PropertyHelper p = new PropertyHelper(properties);
+        fProperties = properties;
+
+        fEntities = previous != null && unchanged(previous, DATATXT_ENTITY_STORE_SIZE)
+                ? previous.fEntities
+                : DatatxtClient.entityStore(p.getInt(DATATXT_ENTITY_STORE_SIZE, DEFAULT_ENTITY_STORE_SIZE, 0,
+                Integer.MAX_VALUE));
+        fTranslator = new RecordingTranslator(outputOntology(properties, new TranslationSupport(prefixService,
+                fEntities, p.getBoolean(DATATXT_INCLUDE_ABSTRACTS, DEFAULT_INCLUDE_ABSTRACTS),
+                p.getBoolean(DATATXT_INCLUDE_IMAGES, DEFAULT_INCLUDE_IMAGES),
+                p.getInt(DATATXT_MAX_ABSTRACT_LENGTH, DEFAULT_MAX_ABSTRACT_LENGTH, 0, Integer.MAX_VALUE))));
+
+        if (!p.getBoolean(DATATXT_INCREMENTAL, DEFAULT_INCREMENTAL)) {
+            fIncremental = null;
+        } else if (previous != null && previous.fIncremental != null
+                && unchanged(previous, DATATXT_INCREMENTAL_DOCUMENTS) && unchanged(previous, REQUEST_PROPERTIES)) {
+            // the remembered annotations are still what dataTXT would return.
+            fIncremental = previous.fIncremental;
+        } else {
+            fIncremental = new IncrementalEnhancer(p.getInt(DATATXT_INCREMENTAL_DOCUMENTS,
+                    DEFAULT_INCREMENTAL_DOCUMENTS, 1, Integer.MAX_VALUE));
+        }
+
+        if (!p.getBoolean(DATATXT_PARAGRAPH_REUSE, DEFAULT_PARAGRAPH_REUSE)) {
+            fParagraphReuse = null;
+        } else if (previous != null && previous.fParagraphReuse != null
+                && unchanged(previous, DATATXT_PARAGRAPH_REUSE_SIZE) && unchanged(previous, REQUEST_PROPERTIES)) {
+            // the stored annotations are still what dataTXT would return.
+            fParagraphReuse = previous.fParagraphReuse;
+        } else {
+            fParagraphReuse = new ParagraphReuseEnhancer(p.getInt(DATATXT_PARAGRAPH_REUSE_SIZE,
+                    DEFAULT_PARAGRAPH_REUSE_SIZE, 1, Integer.MAX_VALUE));
+        }
+
+        String mode = p.getString(DatatxtNexEngine.PROPERTY_FALLBACK_MODE, FallbackMode.DISABLED.name());
+        fFallbackMode = FallbackMode.valueOf(mode.trim().toUpperCase());
+        if (fFallbackMode == FallbackMode.DISABLED) {
+            fGazetteer = null;
+        } else if (previous != null && previous.fGazetteer != null
+                && unchanged(previous, DATATXT_GAZETTEER_SIZE)) {
+            // keep what has been learned so far.
+            fGazetteer = previous.fGazetteer;
+        } else {
+            fGazetteer = new Gazetteer(p.getInt(DATATXT_GAZETTEER_SIZE, DEFAULT_GAZETTEER_SIZE, 1,
+                    Integer.MAX_VALUE));
+        }
+
+        int maxInFlight = p.getInt(DATATXT_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT, 0, Integer.MAX_VALUE);
+        if (maxInFlight <= 0) {
+            fAdmission = null;
+        } else if (previous != null && previous.fAdmission != null
+                && unchanged(previous, ADMISSION_PROPERTIES)) {
+            // the enhancements admitted by the previous state still count.
+            fAdmission = previous.fAdmission;
+        } else {
+            fAdmission = new AdmissionController(maxInFlight,
+                    p.getInt(DATATXT_MAX_QUEUE, DEFAULT_MAX_QUEUE, 0, Integer.MAX_VALUE),
+                    p.getInt(DATATXT_MAX_QUEUE_WAIT, DEFAULT_MAX_QUEUE_WAIT, 0, Integer.MAX_VALUE),
+                    maxInFlight * p.getInt(DATATXT_INTERACTIVE_RESERVE, DEFAULT_INTERACTIVE_RESERVE, 0, 100)
+                            / 100);
+        }
+        fBulkChains = new HashSet<>(p.getStrings(DatatxtNexEngine.PROPERTY_BULK_CHAINS));
+        fOverloadPolicy = OverloadPolicy.valueOf(p.getString(DatatxtNexEngine.PROPERTY_OVERLOAD_POLICY,
+                OverloadPolicy.REJECT.name()).trim().toUpperCase());
+        fTracing = p.getBoolean(DATATXT_TRACE, DEFAULT_TRACE);
+        fStreamingWindow = p.getInt(DATATXT_STREAMING_WINDOW, DEFAULT_STREAMING_WINDOW, 0, Integer.MAX_VALUE);
+        fTruncateLength = p.getInt(DATATXT_OVERLOAD_TRUNCATE_LENGTH, DEFAULT_OVERLOAD_TRUNCATE_LENGTH, 1,
+                Integer.MAX_VALUE);
+        fMaxAnnotations = p.getInt(DATATXT_MAX_ANNOTATIONS, DEFAULT_MAX_ANNOTATIONS, 0, Integer.MAX_VALUE - 1);
+        fMaxTriples = p.getInt(DATATXT_MAX_TRIPLES, DEFAULT_MAX_TRIPLES, 0, Integer.MAX_VALUE);
+
+        // the client comes last, as it needs closing if anything above fails.
+        // only request and parse what the translator uses.
+        // share endpoints, quotas and caches with the other configurations, if the registry is there, and with
+        // the previous configuration if it calls the same endpoints with the same credentials.
+        fClient = previous != null && unchanged(previous, ENDPOINT_PROPERTIES)
+                ? previous.fClient.reconfigure(properties, fTranslator.getRequiredFields(), fEntities)
+                : DatatxtClient.newClient(properties, fTranslator.getRequiredFields(), fEntities, registry);
+    }
+
+    /**
+     * @return a budget for the annotations and triples of one ContentItem.
+     */
+    AnnotationBudget newBudget() {
+        return new AnnotationBudget(fMaxAnnotations, fMaxTriples);
+    }
+
+    /**
+     * Registers an enhancement as a user of this state.
+     *
+     * @return <code>false</code> if the state has been replaced and closed in the meantime: the caller should
+     * use the current one instead.
+     */
+    boolean acquire() {
+        while (true) {
+            int users = fUsers.get();
+            if (users == 0) {
+                return false;
+            }
+            if (fUsers.compareAndSet(users, users + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unregisters a user of this state, closing it if it was the last one.
+     */
+    void release() {
+        if (fUsers.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Called by the engine when this state is replaced: it is closed once the enhancements still using it are
+     * over.
+     */
+    void retire() {
+        release();
+    }
+
+    /**
+     * Closes this state right away, whether it is still used or not.
+     */
+    void close() {
+        if (!fClosed.compareAndSet(false, true)) {
+            return;
+        }
+        fClient.close();
+    }
+
+    /**
+     * @return <code>true</code> if the properties have the same values in this state and in the previous one.
+     */
+    private boolean unchanged(EngineState previous, String... names) {
+        for (String name : names) {
+            if (!Objects.deepEquals(fProperties.get(name), previous.fProperties.get(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the translator of the configured output ontology or, if several are configured, a
+     * {@link CompositeTranslator} writing all of them from the same response.
+     */
+    private static ITranslator outputOntology(Dictionary<String, Object> properties, TranslationSupport support)
+            throws ConfigurationException {
+        Set<OutputOntology> ontologies = EnumSet.noneOf(OutputOntology.class);
+        for (String s : new PropertyHelper(properties).getStrings(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY)) {
+            try {
+                ontologies.add(OutputOntology.valueOf(s.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                throw new ConfigurationException(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY,
+                        "Unknown output ontology " + s, ex);
+            }
+        }
+        if (ontologies.isEmpty()) {
+            ontologies.add(OutputOntology.FAM);
+        }
+
+        List<ITranslator> translators = new ArrayList<>();
+        for (OutputOntology outputOntology : ontologies) {
+            switch (outputOntology) {
+                case FISE:
+                    translators.add(new FiseTranslator(support));
+                    break;
+                case FAM:
+                    translators.add(new FamTranslator(support));
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+        return translators.size() == 1 ? translators.get(0) : new CompositeTranslator(support, translators);
+    }
+
+}
@@ -0,0 +1,53 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.CacheConnector;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ClientRegistry;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+
+/**
+ * {@link SharedClientRegistry} publishes a {@link ClientRegistry} as an OSGi service, so that all the
+ * {@link DatatxtNexEngine} configurations using the same endpoints and credentials share endpoint statistics,
+ * quotas, caches and in-flight requests. If a {@link CacheConnector} service is available, the engines configured
+ * with a cluster cache node id share their response caches with the other nodes of the cluster too.
+ */
+@Component(immediate = true,
+        label = "dataTXT-NEX: shared client resources",
+        description = "Endpoints, quotas, response caches and in-flight requests shared by all the dataTXT-NEX "
+                + "engine configurations.")
+@Service(ClientRegistry.class)
+@Reference(name = "connector",
+        referenceInterface = CacheConnector.class,
+        cardinality = ReferenceCardinality.OPTIONAL_UNARY,
+        policy = ReferencePolicy.DYNAMIC,
+        bind = "bindConnector",
+        unbind = "unbindConnector")
+public class SharedClientRegistry extends ClientRegistry {
+
+    /**
+     * The caches are not closed here: engines may still be using them, and each one is closed when its last user
+     * gives it back.
+     */
+    @Deactivate
+    protected void deactivate() {
+        setConnector(null);
+    }
+
+    protected void bindConnector(CacheConnector connector) {
+        setConnector(connector);
+    }
+
+    /**
+     * The cluster caches already running keep using the connector until they are released.
+     */
+    protected void unbindConnector(CacheConnector connector) {
+        if (getConnector() == connector) {
+            setConnector(null);
+        }
+    }
+
+}
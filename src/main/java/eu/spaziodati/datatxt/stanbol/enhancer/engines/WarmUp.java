@@ -0,0 +1,118 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.ITranslator;
+import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.clerezza.rdf.core.impl.SimpleMGraph;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link WarmUp} gets an engine ready for traffic right after its activation, off the activation thread:
+ * <ol>
+ * <li>it opens a connection to each dataTXT endpoint, so that the first requests don't pay for DNS resolution
+ * and the TCP and TLS handshakes;</li>
+ * <li>it loads the most recent responses of a persistent cache in memory;</li>
+ * <li>it parses a bundled, synthetic dataTXT response and translates it into a scratch graph a number of times,
+ * so that classes are loaded and the parser and the translator are compiled by the JIT.</li>
+ * </ol>
+ * Each step is best effort: a failure is logged, and the warm-up goes on.
+ */
+class WarmUp implements Runnable {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(WarmUp.class);
+
+    /**
+     * The text the bundled response annotates.
+     */
+    static final String TEXT = "The Mona Lisa is a half-length portrait painting by Leonardo da Vinci, on display at"
+            + " the Louvre in Paris.";
+
+    static final String RESPONSE = "warmup-response.json";
+
+    private static final UriRef SCRATCH = new UriRef("urn:datatxt:warm-up");
+
+    /**
+     * How many times the bundled response is parsed and translated.
+     */
+    private static final int ROUNDS = 200;
+
+    private final EnhancementEngine fEngine;
+
+    private final DatatxtClient fClient;
+
+    private final ITranslator fTranslator;
+
+    private final CountDownLatch fDone = new CountDownLatch(1);
+
+    WarmUp(EnhancementEngine engine, DatatxtClient client, ITranslator translator) {
+        fEngine = engine;
+        fClient = client;
+        fTranslator = translator;
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        try {
+            int reached = fClient.preconnect();
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            int preloaded = fClient.preloadCache();
+            int rounds = exercise();
+            fLogger.info("Warmed up in {} ms: {} endpoint(s) reached, {} cached response(s) loaded, {} translation "
+                    + "round(s).", new Object[]{System.currentTimeMillis() - start, reached, preloaded, rounds});
+        } catch (RuntimeException ex) {
+            fLogger.warn("Warm-up failed, going on cold.", ex);
+        } finally {
+            fDone.countDown();
+        }
+    }
+
+    /**
+     * @return <code>true</code> once the warm-up is over, successfully or not.
+     */
+    boolean isDone() {
+        return fDone.getCount() == 0;
+    }
+
+    /**
+     * Parses and translates the bundled response into scratch graphs.
+     *
+     * @return the number of rounds done.
+     */
+    private int exercise() {
+        int rounds = 0;
+        try {
+            for (; rounds < ROUNDS && !Thread.currentThread().isInterrupted(); rounds++) {
+                DatatxtResponse response;
+                try (InputStream is = WarmUp.class.getResourceAsStream(RESPONSE)) {
+                    if (is == null) {
+                        fLogger.warn("Bundled warm-up response {} is missing.", RESPONSE);
+                        return rounds;
+                    }
+                    Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+                    response = fClient.parse(reader);
+                }
+                response.text = TEXT;
+                fTranslator.translate(new ImmutablePair<UriRef, MGraph>(SCRATCH, new SimpleMGraph()), fEngine,
+                        TEXT, response);
+            }
+        } catch (Exception ex) {
+            fLogger.warn("Cannot parse and translate the bundled warm-up response.", ex);
+        }
+        return rounds;
+    }
+
+}
@@ -0,0 +1,30 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.io.IOException;
+
+/**
+ * A {@link CacheConnector} is the transport between the members of a {@link ClusterResponseCache}: it serves the
+ * share of the local node to the other members, and reaches theirs. It can be plugged in as an OSGi service, and
+ * is then used by the caches of all the engines sharing a {@link ClientRegistry}.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface CacheConnector {
+
+    /**
+     * Makes the share of the local node available to the other members under its id.
+     */
+    void serve(CacheNode local) throws IOException;
+
+    /**
+     * Stops serving the share of the local node.
+     */
+    void stop(CacheNode local);
+
+    /**
+     * @return the node with the given id. Connecting may be lazy: an unreachable node may only fail when used.
+     * @throws IOException if the node id cannot be resolved at all.
+     */
+    CacheNode connect(String id) throws IOException;
+
+}
@@ -0,0 +1,29 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.io.IOException;
+
+/**
+ * A {@link CacheNode} is a member of a {@link ClusterResponseCache}, holding a share of the cached responses.
+ * Responses travel between nodes as {@link ResponseCodec} payloads.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface CacheNode {
+
+    /**
+     * @return the id of the node in the cluster membership.
+     */
+    String getId();
+
+    /**
+     * @return the payload cached by the node for the key, or <code>null</code>.
+     * @throws IOException if the node cannot be reached.
+     */
+    byte[] get(String key) throws IOException;
+
+    /**
+     * @throws IOException if the node cannot be reached.
+     */
+    void put(String key, byte[] payload) throws IOException;
+
+}
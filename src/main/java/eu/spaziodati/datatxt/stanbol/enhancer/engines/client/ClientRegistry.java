@@ -0,0 +1,279 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ClientRegistry} holds the resources {@link DatatxtClient}s can share: {@link Endpoint}s, with their
+ * live statistics, and {@link Quota}s, per endpoint and credentials; in-memory response caches, per set of
+ * endpoints, and persistent ones, per directory; and one {@link SingleFlight} table. Clients created with the same
+ * registry thus see the same endpoint health, draw from the same quota and memory budget, and don't make the same
+ * request twice at the same time, while keeping their own thresholds and options. Clients tell the responses of
+ * different endpoints apart by their {@link #scope(Collection)}, which is part of the keys they cache and collapse
+ * requests by.
+ * <p/>
+ * Caches are reference counted: each one handed out must be given back with {@link #release(ResponseCache)}, and
+ * is closed when nobody uses it any longer.
+ * <p/>
+ * With a {@link CacheConnector}, the registry can also spread the caches of the local node over a cluster, with
+ * {@link #cluster(ResponseCache, String, Collection, int, int)}.
+ */
+public class ClientRegistry implements Closeable {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(ClientRegistry.class);
+
+    private static class Lease {
+
+        private final ResponseCache fCache;
+
+        private final String fKey;
+
+        private int fCount;
+
+        private Lease(String key, ResponseCache cache) {
+            fKey = key;
+            fCache = cache;
+        }
+    }
+
+    private final Map<String, Endpoint> fEndpoints = new HashMap<>();
+
+    private final Map<String, Quota> fQuotas = new HashMap<>();
+
+    private final Map<String, Lease> fCaches = new HashMap<>();
+
+    private final Map<ResponseCache, List<ResponseCache>> fTiers = new IdentityHashMap<>();
+
+    /**
+     * The share each cluster cache keeps locally, released with the cluster.
+     */
+    private final Map<ResponseCache, ResponseCache> fShares = new IdentityHashMap<>();
+
+    /**
+     * The settings each cluster cache was created with: the caches of its share, its replicas and near-cache size.
+     */
+    private final Map<ResponseCache, List<Object>> fClusterSettings = new IdentityHashMap<>();
+
+    private final SingleFlight fSingleFlight = new SingleFlight();
+
+    private volatile CacheConnector fConnector;
+
+    /**
+     * @return the endpoint for a URL and credentials. The weight and quota limit of the first request win.
+     */
+    public synchronized Endpoint endpoint(URL url, String appId, String appKey, int weight, long dailyLimit) {
+        String key = url.toExternalForm() + '|' + appId + '|' + appKey;
+        Endpoint endpoint = fEndpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Endpoint(url, appId, appKey, weight, quota(appId, dailyLimit));
+            fEndpoints.put(key, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * @return the quota of an application id. The limit of the first request wins.
+     */
+    public synchronized Quota quota(String appId, long dailyLimit) {
+        Quota quota = fQuotas.get(appId);
+        if (quota == null) {
+            quota = new Quota(appId, dailyLimit);
+            fQuotas.put(appId, quota);
+        }
+        return quota;
+    }
+
+    /**
+     * @return a fingerprint of a set of endpoints and their credentials, whatever their order.
+     */
+    public static String scope(Collection<Endpoint> endpoints) {
+        List<String> keys = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            keys.add(endpoint.getUrl().toExternalForm() + '|' + endpoint.getAppId() + '|' + endpoint.getAppKey());
+        }
+        Collections.sort(keys);
+        Fingerprint fingerprint = new Fingerprint();
+        for (String key : keys) {
+            fingerprint.add(key);
+        }
+        return fingerprint.toHex();
+    }
+
+    public SingleFlight getSingleFlight() {
+        return fSingleFlight;
+    }
+
+    /**
+     * Sets the transport for cluster caches. Clusters already running keep the connector they were created with.
+     *
+     * @param connector the connector, or <code>null</code> to disable new cluster caches.
+     */
+    public void setConnector(CacheConnector connector) {
+        fConnector = connector;
+    }
+
+    public CacheConnector getConnector() {
+        return fConnector;
+    }
+
+    /**
+     * Spreads a cache over a cluster. There is one cluster cache per local node id, which all the requests for it
+     * must configure alike: same share, replicas and near-cache size. The members are updated by every request,
+     * the latest configuration being the one which knows the current cluster.
+     *
+     * @param share    a cache obtained from {@link #cache(String, int, File, long)}, to keep the share of the local node.
+     *                 It now belongs to the cluster cache, and must not be released by the caller.
+     * @param nodeId   the id of the local node.
+     * @param members  the ids of the members of the cluster.
+     * @param replicas how many nodes store each response.
+     * @param nearSize the number of responses kept in the near-cache, or <code>0</code> for none.
+     * @return the cluster cache, to be given back with {@link #release(ResponseCache)}.
+     * @throws IllegalStateException if there is no connector, or the node id is already in use with other
+     *                               settings. The share is then left to the caller.
+     */
+    public synchronized ResponseCache cluster(ResponseCache share, String nodeId, Collection<String> members,
+                                              int replicas, int nearSize) throws IOException {
+        CacheConnector connector = fConnector;
+        if (connector == null) {
+            throw new IllegalStateException("No cache connector");
+        }
+
+        String key = "cluster|" + nodeId;
+        List<Object> settings = new ArrayList<Object>(tiers(share));
+        settings.add(Math.max(1, replicas));
+        settings.add(nearSize);
+        Lease lease = fCaches.get(key);
+        if (lease == null) {
+            lease = new Lease(key, new ClusterResponseCache(nodeId, share, connector, replicas, nearSize));
+            fCaches.put(key, lease);
+            fShares.put(lease.fCache, share);
+            fClusterSettings.put(lease.fCache, settings);
+        } else if (!settings.equals(fClusterSettings.get(lease.fCache))) {
+            throw new IllegalStateException("Cache node " + nodeId
+                    + " is already in use with another cache, replicas or near-cache size.");
+        } else {
+            // the cluster has its share already.
+            release(share);
+        }
+        ((ClusterResponseCache) lease.fCache).setMembers(members);
+        lease.fCount++;
+        return lease.fCache;
+    }
+
+    /**
+     * @param scope         the {@link #scope(Collection)} of the endpoints the cached responses come from.
+     * @param size          the number of responses kept in memory, or <code>0</code> for none. The size of the
+     *                      first request for a scope wins.
+     * @param directory     the directory of the persistent cache, or <code>null</code> for none.
+     * @param directorySize the maximum size of the persistent cache, in bytes.
+     * @return the response cache for this configuration, or <code>null</code> if it has no cache.
+     */
+    public synchronized ResponseCache cache(String scope, int size, File directory, long directorySize)
+            throws IOException {
+        ResponseCache memory = size > 0 ? acquire("memory|" + scope, size, null, 0) : null;
+        ResponseCache disk;
+        try {
+            disk = directory != null ? acquire("disk|" + directory.getCanonicalPath(), 0, directory,
+                    directorySize)
+                    : null;
+        } catch (IOException ex) {
+            release(memory);
+            throw ex;
+        }
+
+        if (memory == null || disk == null) {
+            return memory != null ? memory : disk;
+        }
+        ResponseCache tiered = new TieredResponseCache(memory, disk);
+        List<ResponseCache> tiers = new ArrayList<>();
+        tiers.add(memory);
+        tiers.add(disk);
+        fTiers.put(tiered, tiers);
+        return tiered;
+    }
+
+    /**
+     * Gives back a cache obtained from {@link #cache(String, int, File, long)}.
+     */
+    public synchronized void release(ResponseCache cache) {
+        if (cache == null) {
+            return;
+        }
+        List<ResponseCache> tiers = fTiers.remove(cache);
+        if (tiers != null) {
+            for (ResponseCache tier : tiers) {
+                release(tier);
+            }
+            return;
+        }
+
+        for (Lease lease : fCaches.values()) {
+            if (lease.fCache == cache) {
+                if (--lease.fCount == 0) {
+                    fCaches.remove(lease.fKey);
+                    close(lease.fCache);
+                    fClusterSettings.remove(lease.fCache);
+                    release(fShares.remove(lease.fCache));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes all the caches, whether still in use or not.
+     */
+    @Override
+    public synchronized void close() {
+        for (Lease lease : fCaches.values()) {
+            close(lease.fCache);
+        }
+        fCaches.clear();
+        fTiers.clear();
+        fShares.clear();
+        fClusterSettings.clear();
+    }
+
+    /**
+     * @return the leased caches a cache obtained from {@link #cache(String, int, File, long)} is made of.
+     */
+    private List<ResponseCache> tiers(ResponseCache cache) {
+        List<ResponseCache> tiers = fTiers.get(cache);
+        return tiers != null ? tiers : Collections.singletonList(cache);
+    }
+
+    private ResponseCache acquire(String key, int size, File directory, long directorySize) throws IOException {
+        Lease lease = fCaches.get(key);
+        if (lease == null) {
+            ResponseCache cache = directory != null ? new MappedResponseCache(directory, directorySize)
+                    : new MemoryResponseCache(size);
+            lease = new Lease(key, cache);
+            fCaches.put(key, lease);
+        }
+        lease.fCount++;
+        return lease.fCache;
+    }
+
+    private void close(ResponseCache cache) {
+        if (cache instanceof Closeable) {
+            try {
+                ((Closeable) cache).close();
+            } catch (IOException ex) {
+                fLogger.warn("Error closing a response cache.", ex);
+            }
+        }
+    }
+
+}
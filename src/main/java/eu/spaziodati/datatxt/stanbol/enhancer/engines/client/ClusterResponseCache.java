@@ -0,0 +1,387 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ResponseCache} spread over the nodes of a cluster, so that a response fetched by any node is a hit for
+ * all the others. Keys are assigned to nodes by consistent hashing: each key is stored by its first
+ * <code>replicas</code> owners on a ring of virtual nodes, and a change of membership only moves the keys of the
+ * nodes joining or leaving.
+ * <p/>
+ * The local node keeps its share in a local {@link ResponseCache}, and the most recently used responses in a small
+ * near-cache in front of the cluster. The other members are reached through a {@link CacheConnector}; an
+ * unreachable member is a miss, not an error, and is left alone for a while, so that a member which is down
+ * or hanging costs a request at most one connector timeout in that time.
+ * <p/>
+ * A response found on an owner after a miss on the ones before it is written back to them. Keys moved by a
+ * change of membership are thus repaired on their first use, and with at least two replicas no response is lost
+ * when a single node joins or leaves.
+ */
+public class ClusterResponseCache implements ResponseCache, Closeable {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(ClusterResponseCache.class);
+
+    /**
+     * The points of each node on the ring: the more, the more even the shares.
+     */
+    private static final int VIRTUAL_NODES = 128;
+
+    /**
+     * How long a member is skipped after a failed call, in milliseconds.
+     */
+    private static final long FAILURE_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The members of a cluster, and their points on the ring.
+     */
+    private static class Ring {
+
+        private final Map<String, CacheNode> fNodes;
+
+        private final TreeMap<Long, CacheNode> fPoints = new TreeMap<>();
+
+        private Ring(Map<String, CacheNode> nodes) {
+            fNodes = nodes;
+            for (CacheNode node : nodes.values()) {
+                for (int i = 0; i < VIRTUAL_NODES; i++) {
+                    fPoints.put(hash(node.getId() + '#' + i), node);
+                }
+            }
+        }
+
+        /**
+         * @return the first <code>count</code> distinct nodes met walking the ring clockwise from the key.
+         */
+        private List<CacheNode> owners(String key, int count) {
+            count = Math.min(count, fNodes.size());
+            List<CacheNode> owners = new ArrayList<>(count);
+            long hash = hash(key);
+            Iterator<CacheNode> tail = fPoints.tailMap(hash).values().iterator();
+            Iterator<CacheNode> head = fPoints.headMap(hash).values().iterator();
+            while (owners.size() < count) {
+                CacheNode node = tail.hasNext() ? tail.next() : head.next();
+                if (!owners.contains(node)) {
+                    owners.add(node);
+                }
+            }
+            return owners;
+        }
+    }
+
+    /**
+     * The share of the local node, as served to the other members.
+     */
+    private class LocalNode implements CacheNode {
+
+        @Override
+        public String getId() {
+            return fId;
+        }
+
+        @Override
+        public byte[] get(String key) {
+            DatatxtResponse response = fShare.get(key);
+            return response != null ? ResponseCodec.encode(response) : null;
+        }
+
+        @Override
+        public void put(String key, byte[] payload) throws IOException {
+            try {
+                fShare.put(key, ResponseCodec.decode(payload));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid payload for key " + key, ex);
+            }
+        }
+    }
+
+    private final String fId;
+
+    private final ResponseCache fShare;
+
+    private final MemoryResponseCache fNear;
+
+    private final CacheConnector fConnector;
+
+    private final int fReplicas;
+
+    private final CacheNode fLocal = new LocalNode();
+
+    private volatile Ring fRing;
+
+    /**
+     * Until when each member which failed is skipped.
+     */
+    private final ConcurrentMap<String, Long> fSkippedUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong fNearHits = new AtomicLong();
+
+    private final AtomicLong fHits = new AtomicLong();
+
+    private final AtomicLong fMisses = new AtomicLong();
+
+    private final AtomicLong fErrors = new AtomicLong();
+
+    /**
+     * Creates a cluster with the local node only, and serves its share through the connector.
+     *
+     * @param id        the id of the local node.
+     * @param share     the cache holding the share of the local node.
+     * @param connector the transport to the other members.
+     * @param replicas  how many nodes store each response.
+     * @param nearSize  the number of responses kept in the near-cache, or <code>0</code> for none.
+     */
+    public ClusterResponseCache(String id, ResponseCache share, CacheConnector connector, int replicas,
+                                int nearSize) throws IOException {
+        fId = id;
+        fShare = share;
+        fConnector = connector;
+        fReplicas = Math.max(1, replicas);
+        fNear = nearSize > 0 ? new MemoryResponseCache(nearSize) : null;
+        fRing = new Ring(Collections.singletonMap(id, fLocal));
+        connector.serve(fLocal);
+    }
+
+    /**
+     * Sets the members of the cluster. The local node is always one of them; members which cannot be connected
+     * are left out.
+     */
+    public synchronized void setMembers(Collection<String> ids) {
+        Map<String, CacheNode> nodes = new HashMap<>();
+        nodes.put(fId, fLocal);
+        for (String id : ids) {
+            if (nodes.containsKey(id)) {
+                continue;
+            }
+            CacheNode node = fRing.fNodes.get(id);
+            if (node == null) {
+                try {
+                    node = fConnector.connect(id);
+                } catch (IOException ex) {
+                    fLogger.warn("Cannot connect to cache node {}, leaving it out.", id, ex);
+                    continue;
+                }
+            }
+            nodes.put(id, node);
+        }
+        fRing = new Ring(nodes);
+        fLogger.info("Cache node {} sees members {}.", fId, new TreeSet<>(nodes.keySet()));
+    }
+
+    public synchronized void join(String id) {
+        Set<String> members = getMembers();
+        members.add(id);
+        setMembers(members);
+    }
+
+    public synchronized void leave(String id) {
+        Set<String> members = getMembers();
+        members.remove(id);
+        setMembers(members);
+    }
+
+    /**
+     * @return the ids of the members, the local node included.
+     */
+    public Set<String> getMembers() {
+        return new TreeSet<>(fRing.fNodes.keySet());
+    }
+
+    public String getId() {
+        return fId;
+    }
+
+    /**
+     * @return the ids of the nodes storing a key, the first one being its primary owner.
+     */
+    public List<String> getOwners(String key) {
+        List<String> ids = new ArrayList<>();
+        for (CacheNode node : fRing.owners(key, fReplicas)) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public DatatxtResponse get(String key) {
+        DatatxtResponse response = fNear != null ? fNear.get(key) : null;
+        if (response != null) {
+            fNearHits.incrementAndGet();
+            return response;
+        }
+
+        List<CacheNode> missed = null;
+        for (CacheNode node : fRing.owners(key, fReplicas)) {
+            if (isSkipped(node)) {
+                continue;
+            }
+            try {
+                response = get(node, key);
+            } catch (IOException ex) {
+                failed(node);
+                fLogger.debug("Cache node {} failed, trying the next owner of {}.", new Object[]{node.getId(), key, ex});
+                continue;
+            }
+            if (response != null) {
+                if (missed != null) {
+                    repair(missed, key, response);
+                }
+                if (fNear != null) {
+                    fNear.put(key, response);
+                }
+                fHits.incrementAndGet();
+                return response;
+            }
+            if (missed == null) {
+                missed = new ArrayList<>(fReplicas);
+            }
+            missed.add(node);
+        }
+
+        fMisses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void put(String key, DatatxtResponse response) {
+        if (fNear != null) {
+            fNear.put(key, response);
+        }
+        store(fRing.owners(key, fReplicas), key, response);
+    }
+
+    /**
+     * Writes back a response to the owners that missed it, typically because the key moved to them.
+     */
+    private void repair(List<CacheNode> missed, String key, DatatxtResponse response) {
+        fLogger.debug("Repairing {} on {} node(s).", key, missed.size());
+        store(missed, key, response);
+    }
+
+    private void store(List<CacheNode> nodes, String key, DatatxtResponse response) {
+        byte[] payload = null;
+        for (CacheNode node : nodes) {
+            if (node == fLocal) {
+                fShare.put(key, response);
+                continue;
+            }
+            if (isSkipped(node)) {
+                continue;
+            }
+            if (payload == null) {
+                payload = ResponseCodec.encode(response);
+            }
+            try {
+                node.put(key, payload);
+            } catch (IOException ex) {
+                failed(node);
+                fLogger.debug("Cannot store {} on cache node {}.", new Object[]{key, node.getId(), ex});
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a member failed too recently to be called again.
+     */
+    private boolean isSkipped(CacheNode node) {
+        Long until = fSkippedUntil.get(node.getId());
+        if (until == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < until) {
+            return true;
+        }
+        fSkippedUntil.remove(node.getId(), until);
+        return false;
+    }
+
+    private void failed(CacheNode node) {
+        fErrors.incrementAndGet();
+        fSkippedUntil.put(node.getId(), System.currentTimeMillis() + FAILURE_BACKOFF);
+    }
+
+    private DatatxtResponse get(CacheNode node, String key) throws IOException {
+        if (node == fLocal) {
+            return fShare.get(key);
+        }
+        byte[] payload = node.get(key);
+        try {
+            return payload != null ? ResponseCodec.decode(payload) : null;
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid payload from cache node " + node.getId(), ex);
+        }
+    }
+
+    /**
+     * @return the lookups answered by the near-cache.
+     */
+    public long getNearHits() {
+        return fNearHits.get();
+    }
+
+    /**
+     * @return the lookups answered by an owner, local or remote.
+     */
+    public long getHits() {
+        return fHits.get();
+    }
+
+    public long getMisses() {
+        return fMisses.get();
+    }
+
+    /**
+     * @return the calls to other members which failed. Members are not called for a while after a failure.
+     */
+    public long getErrors() {
+        return fErrors.get();
+    }
+
+    /**
+     * Stops serving the share of the local node. The share itself belongs to the caller.
+     */
+    @Override
+    public void close() {
+        fConnector.stop(fLocal);
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ClusterResponseCache{%s, members=%s, near hits=%d, hits=%d, misses=%d, errors=%d}",
+                fId, getMembers(), fNearHits.get(), fHits.get(), fMisses.get(), fErrors.get());
+    }
+
+}
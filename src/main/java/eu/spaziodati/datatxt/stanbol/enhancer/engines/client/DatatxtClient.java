@@ -2,59 +2,289 @@ package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
 
 import com.google.gson.GsonBuilder;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtProperties;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.osgi.service.cm.ConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.DataOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.Arrays;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author Gaetano Prestia  <prestia@netseven.it>
  * @author Giuliano Mega    <mega@spaziodati.eu>
  */
-public class DatatxtClient implements DatatxtProperties {
+public class DatatxtClient implements DatatxtProperties, Closeable {
 
     private static final Logger fLogger = LoggerFactory.getLogger(DatatxtClient.class);
 
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int MAX_LOGGED_VALUE = 200;
+
+    /**
+     * The units a request cost, the units left and when they are reset, as reported by dataTXT.
+     */
+    private static final String UNITS_HEADER = "X-DL-units";
+
+    private static final String UNITS_LEFT_HEADER = "X-DL-units-left";
+
+    private static final String UNITS_RESET_HEADER = "X-DL-units-reset";
+
+    /**
+     * The quota units reserved for a request, before dataTXT tells what it cost.
+     */
+    private static final long REQUEST_UNITS = 1;
+
+    /**
+     * Projected quota exhaustions are logged at most this often.
+     */
+    private static final long QUOTA_WARNING_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * What we ask for when descriptions come from the {@link EntityStore}: ids, titles and offsets only.
+     */
+    private static final String LEAN_INCLUDE = "";
+
+    /**
+     * Characters of context kept around each spot of a new entity when fetching its description.
+     */
+    private static final int EXCERPT_CONTEXT = 200;
+
     public static DatatxtClient newClient(Dictionary<String, Object> properties) throws ConfigurationException {
         PropertyHelper p = new PropertyHelper(properties);
-        return new DatatxtClient(p.getString(DATATXT_NEX_URL),
-                p.getString(DATATXT_APP_ID),
-                p.getString(DATATXT_APP_KEY),
+        return newClient(properties, EnumSet.allOf(ResponseField.class),
+                entityStore(p.getInt(DATATXT_ENTITY_STORE_SIZE, DEFAULT_ENTITY_STORE_SIZE, 0, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * @param fields   the optional fields to request and parse, typically those the active translator uses.
+     * @param entities the store describing entities, if responses should carry descriptions only for new ones, or
+     *                 <code>null</code>.
+     */
+    public static DatatxtClient newClient(Dictionary<String, Object> properties, Set<ResponseField> fields,
+                                          EntityStore entities) throws ConfigurationException {
+        return newClient(properties, fields, entities, null);
+    }
+
+    /**
+     * @param registry the registry of the resources shared with other clients, or <code>null</code> if this
+     *                 client shares nothing.
+     */
+    public static DatatxtClient newClient(Dictionary<String, Object> properties, Set<ResponseField> fields,
+                                          EntityStore entities, ClientRegistry registry)
+            throws ConfigurationException {
+        PropertyHelper p = new PropertyHelper(properties);
+        boolean ownsRegistry = registry == null;
+        if (ownsRegistry) {
+            registry = new ClientRegistry();
+        }
+
+        List<Endpoint> endpoints;
+        try {
+            endpoints = endpoints(p, registry);
+        } catch (ConfigurationException | RuntimeException ex) {
+            if (ownsRegistry) {
+                registry.close();
+            }
+            throw ex;
+        }
+        ResponseCache cache = cache(p, registry, ClientRegistry.scope(endpoints));
+        try {
+            return newClient(p, fields, entities, registry, ownsRegistry, endpoints, cache);
+        } catch (ConfigurationException | RuntimeException ex) {
+            registry.release(cache);
+            if (ownsRegistry) {
+                registry.close();
+            }
+            throw ex;
+        }
+    }
+
+    private static DatatxtClient newClient(PropertyHelper p, Set<ResponseField> fields, EntityStore entities,
+                                           ClientRegistry registry, boolean ownsRegistry, List<Endpoint> endpoints,
+                                           ResponseCache cache) throws ConfigurationException {
+        return new DatatxtClient(new EndpointBalancer(endpoints,
+                        p.getInt(DATATXT_INTERACTIVE_RESERVE, DEFAULT_INTERACTIVE_RESERVE, 0, 100) / 100f),
                 p.getFloat(DATATXT_MIN_CONFIDENCE, DEFAULT_MIN_CONFIDENCE, 0f, 1f),
                 p.getInt(DATATXT_MIN_LENGTH, DEFAULT_MIN_LENGTH, 0, Integer.MAX_VALUE),
+                p.getFloat(DATATXT_FETCH_MIN_CONFIDENCE, DEFAULT_FETCH_MIN_CONFIDENCE, -1f, 1f),
+                p.getInt(DATATXT_FETCH_MIN_LENGTH, DEFAULT_FETCH_MIN_LENGTH, -1, Integer.MAX_VALUE),
                 p.getString(DATATXT_EXTRA_TYPES, null),
                 p.getString(DATATXT_COUNTRY, null),
-                p.getString(DATATXT_CUSTOM_SPOTS, null)
+                p.getString(DATATXT_CUSTOM_SPOTS, null),
+                p.getBoolean(DATATXT_REQUEST_COMPRESSION, DEFAULT_REQUEST_COMPRESSION),
+                p.getBoolean(DATATXT_QUOTA_PACING, DEFAULT_QUOTA_PACING),
+                new UnmanagedLanguageCache(p.getStrings(DATATXT_SUPPORTED_LANGUAGES),
+                        p.getInt(DATATXT_UNMANAGED_LANGUAGE_TTL, DEFAULT_UNMANAGED_LANGUAGE_TTL, 0,
+                                Integer.MAX_VALUE) * 1000L),
+                registry, ownsRegistry, cache,
+                p.getInt(DATATXT_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT, 0, Integer.MAX_VALUE),
+                p.getInt(DATATXT_READ_TIMEOUT, DEFAULT_READ_TIMEOUT, 0, Integer.MAX_VALUE),
+                p.getInt(DATATXT_REQUEST_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, 0, Integer.MAX_VALUE),
+                new SlowCallLog(p.getInt(DATATXT_SLOW_CALL_THRESHOLD, DEFAULT_SLOW_CALL_THRESHOLD, 0,
+                        Integer.MAX_VALUE),
+                        p.getFloat(DATATXT_SLOW_CALL_SAMPLE_RATE, DEFAULT_SLOW_CALL_SAMPLE_RATE, 0f, 1f)),
+                p.getInt(DATATXT_MAX_ANNOTATIONS, DEFAULT_MAX_ANNOTATIONS, 0, Integer.MAX_VALUE - 1),
+                fields, entities
         );
     }
 
+    /**
+     * Parses {@link #DATATXT_ENDPOINTS}, falling back to the single endpoint given by {@link #DATATXT_NEX_URL},
+     * {@link #DATATXT_APP_ID} and {@link #DATATXT_APP_KEY}. Endpoints come from the registry, so that they are
+     * shared with other clients; endpoints sharing an application id share a {@link Quota}.
+     */
+    private static List<Endpoint> endpoints(PropertyHelper p, ClientRegistry registry)
+            throws ConfigurationException {
+        List<Endpoint> endpoints = new ArrayList<>();
+
+        List<String> specs = p.getStrings(DATATXT_ENDPOINTS);
+        for (int i = 0; i < specs.size(); i++) {
+            String[] fields = specs.get(i).split("\\|", -1);
+            if (fields.length < 3 || fields.length > 5) {
+                // don't echo the spec, it contains the application key.
+                throw new ConfigurationException(DATATXT_ENDPOINTS, String.format("Invalid endpoint #%d: expected "
+                        + "url|app_id|app_key[|weight[|daily_units]]", i + 1));
+            }
+            String appId = fields[1].trim();
+            long limit = fields.length > 4 ? parseLong(fields[4], 0) : 0;
+            endpoints.add(registry.endpoint(url(fields[0].trim()), appId, fields[2].trim(),
+                    fields.length > 3 ? (int) parseLong(fields[3], 1) : 1, limit));
+        }
+
+        if (endpoints.isEmpty()) {
+            String appId = p.getString(DATATXT_APP_ID);
+            endpoints.add(registry.endpoint(url(p.getString(DATATXT_NEX_URL)), appId, p.getString(DATATXT_APP_KEY),
+                    1, 0));
+        }
+
+        return endpoints;
+    }
+
+    private static ResponseCache cache(PropertyHelper p, ClientRegistry registry, String scope)
+            throws ConfigurationException {
+        String directory = p.getString(DATATXT_CACHE_DIRECTORY, null);
+        boolean persistent = directory != null && !directory.trim().isEmpty();
+        ResponseCache cache;
+        try {
+            cache = registry.cache(scope, p.getInt(DATATXT_CACHE_SIZE, DEFAULT_CACHE_SIZE, 0, Integer.MAX_VALUE),
+                    persistent ? new File(directory.trim()) : null,
+                    p.getInt(DATATXT_CACHE_DIRECTORY_SIZE, DEFAULT_CACHE_DIRECTORY_SIZE, 1, Integer.MAX_VALUE)
+                            * 1024L * 1024L);
+        } catch (IOException ex) {
+            throw new ConfigurationException(DATATXT_CACHE_DIRECTORY, "Cannot open response cache", ex);
+        }
+
+        String nodeId = p.getString(DATATXT_CACHE_NODE_ID, "").trim();
+        if (nodeId.isEmpty()) {
+            return cache;
+        }
+        if (cache == null || registry.getConnector() == null) {
+            fLogger.warn("The cluster response cache needs a local cache and a cache connector, keeping the cache"
+                    + " local.");
+            return cache;
+        }
+        try {
+            return registry.cluster(cache, nodeId, p.getStrings(DATATXT_CACHE_NODES),
+                    p.getInt(DATATXT_CACHE_REPLICAS, DEFAULT_CACHE_REPLICAS, 1, Integer.MAX_VALUE),
+                    p.getInt(DATATXT_CACHE_NEAR_SIZE, DEFAULT_CACHE_NEAR_SIZE, 0, Integer.MAX_VALUE));
+        } catch (IOException | IllegalStateException ex) {
+            fLogger.warn("Cannot join the cluster response cache, keeping the cache local.", ex);
+            return cache;
+        }
+    }
+
+    public static EntityStore entityStore(int size) {
+        return size > 0 ? new EntityStore(size) : null;
+    }
+
+    private static long parseLong(String value, long defaultValue) throws ConfigurationException {
+        value = value.trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new ConfigurationException(DATATXT_ENDPOINTS, "Invalid number " + value, ex);
+        }
+    }
+
+    private static URL url(String url) throws ConfigurationException {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException ex) {
+            throw new ConfigurationException("Invalid URL", url, ex);
+        }
+    }
+
     // ------------------------------------------------------------------------
 
-    private URL fNexUrl;
-    private String fAppId;
-    private String fAppKey;
+    private EndpointBalancer fBalancer;
     private float fMinConfidence;
     private int fMinLength;
+    private float fFetchMinConfidence;
+    private int fFetchMinLength;
     private String fExtraTypes;
     private String fCountry;
     private String fCustomSpots;
+    private boolean fCompressRequests;
+    private boolean fPacing;
+    private volatile long fLastQuotaWarning;
+    private UnmanagedLanguageCache fUnmanagedLanguages;
+    private ClientRegistry fRegistry;
+    private volatile boolean fOwnsRegistry;
+    private SingleFlight fSingleFlight;
+    private String fScope;
+    private ResponseCache fCache;
+    private EntityStore fEntities;
+    private String fInclude;
+    private int fConnectTimeout;
+    private int fReadTimeout;
+    private int fRequestTimeout;
+    private SlowCallLog fSlowCalls;
+    private int fMaxAnnotations;
+    private ResponseReader fReader;
 
-    private DatatxtClient(String nexUrl, String appId, String appKey, float minConfidence, int minLength, String extraTypes,
-                          String country, String customSpots) throws ConfigurationException {
+    private DatatxtClient(EndpointBalancer balancer, float minConfidence, int minLength, float fetchMinConfidence,
+                          int fetchMinLength, String extraTypes, String country, String customSpots, boolean compressRequests,
+                          boolean pacing,
+                          UnmanagedLanguageCache unmanagedLanguages, ClientRegistry registry, boolean ownsRegistry,
+                          ResponseCache cache, int connectTimeout, int readTimeout, int requestTimeout, SlowCallLog slowCalls,
+                          int maxAnnotations, Set<ResponseField> fields, EntityStore entities)
+            throws ConfigurationException {
         // check country
         if (extraTypes != null && !extraTypes.isEmpty()) {
             if (country != null) country = country.trim().toUpperCase();
@@ -64,22 +294,164 @@ public class DatatxtClient implements DatatxtProperties {
             }
         }
 
-        fNexUrl = url(nexUrl);
-
-        fAppId = appId;
-        fAppKey = appKey;
+        fBalancer = balancer;
         fMinConfidence = minConfidence;
         fMinLength = minLength;
+        // When fetching at a floor threshold, annotations are filtered locally, so the same response serves any
+        // min_confidence/min_length at or above the floor. Spots are only fetched shorter than min_length if asked
+        // to, as they would be filtered out every time otherwise.
+        if (fetchMinConfidence >= 0 && fetchMinConfidence <= minConfidence) {
+            fFetchMinConfidence = fetchMinConfidence;
+            fFetchMinLength = fetchMinLength >= 0 ? Math.min(fetchMinLength, minLength) : minLength;
+        } else {
+            fFetchMinConfidence = minConfidence;
+            fFetchMinLength = minLength;
+        }
         fExtraTypes = extraTypes;
         fCountry = country;
         fCustomSpots = customSpots;
+        fCompressRequests = compressRequests;
+        fPacing = pacing;
+        fUnmanagedLanguages = unmanagedLanguages;
+        fRegistry = registry;
+        fOwnsRegistry = ownsRegistry;
+        fSingleFlight = registry.getSingleFlight();
+        fScope = ClientRegistry.scope(balancer.getEndpoints());
+        fCache = cache;
+        fConnectTimeout = connectTimeout;
+        fReadTimeout = readTimeout;
+        fRequestTimeout = requestTimeout;
+        fSlowCalls = slowCalls;
+        fInclude = ResponseField.include(fields);
+        fMaxAnnotations = maxAnnotations;
+        // one more annotation than kept, so that a response over the limit can be told from one which just fits.
+        fReader = new ResponseReader(fields, maxAnnotations > 0 ? maxAnnotations + 1 : 0, minLength);
+        fEntities = entities;
+    }
+
+    /**
+     * @return <code>true</code> if the language is known not to be supported by dataTXT, either because it is not
+     * among the configured {@link #DATATXT_SUPPORTED_LANGUAGES} or because dataTXT recently reported it as
+     * unmanaged. {@link #doRequest(String, String)} would fail for such a language without contacting dataTXT.
+     */
+    public boolean isUnmanaged(String language) {
+        return fUnmanagedLanguages.isUnmanaged(language);
     }
 
     public DatatxtResponse doRequest(final String contentText, final String contentLang)
             throws DatatxtException {
+        return doRequest(contentText, contentLang, newContext());
+    }
+
+    /**
+     * @return a context with the configured {@link #DATATXT_REQUEST_TIMEOUT} budget, to be shared by all the
+     * requests made for one unit of work.
+     */
+    public RequestContext newContext() {
+        return newContext(null);
+    }
+
+    /**
+     * Same as {@link #newContext()}, with the calls made recorded in a {@link Trace}.
+     */
+    public RequestContext newContext(Trace trace) {
+        return newContext(trace, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Same as {@link #newContext(Trace)}, for work running in the given lane.
+     */
+    public RequestContext newContext(Trace trace, Priority priority) {
+        return newContext(trace, priority, null);
+    }
+
+    /**
+     * Same as {@link #newContext(Trace, Priority)}, for work done on behalf of a ContentItem.
+     *
+     * @param document the URI of the ContentItem, recorded in the {@link EngineEvent}s of the requests.
+     */
+    public RequestContext newContext(Trace trace, Priority priority, String document) {
+        return new RequestContext(fRequestTimeout, trace, priority, document);
+    }
+
+    /**
+     * Same as {@link #doRequest(String, String)}, within the time budget of a {@link RequestContext}.
+     *
+     * @throws DeadlineException if the context expires, or is cancelled, before the request completes.
+     */
+    public DatatxtResponse doRequest(String contentText, String contentLang, RequestContext context)
+            throws DatatxtException {
+
+        if (isUnmanaged(contentLang)) {
+            throw new UnmanagedLanguageException(contentLang);
+        }
+
+        EngineEvent event = EngineEvent.begin(EngineEvent.Type.REQUEST)
+                .set(EngineEvent.Field.CONTENT_ITEM, context.getDocument())
+                .set(EngineEvent.Field.TEXT_LENGTH, contentText.length());
+        try {
+            // while the store is cold, lean annotations would mostly need a second call to describe them.
+            boolean lean = fEntities != null && fEntities.isWarm();
+            DatatxtResponse response = fetch(contentText, contentLang, lean ? LEAN_INCLUDE : fInclude, context,
+                    event);
+
+            response = response.filter(fMinConfidence, fMinLength);
+            response.text = contentText;
+
+            if (lean) {
+                describe(response, contentLang, context);
+            } else if (fEntities != null) {
+                learn(response);
+            }
+            event.set(EngineEvent.Field.LANGUAGE, contentLang != null ? contentLang : response.lang)
+                    .set(EngineEvent.Field.ANNOTATIONS, response.annotations != null ? response.annotations.size() : 0);
+            return response;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the store holding entity descriptions, or <code>null</code> if responses carry them in full.
+     */
+    public EntityStore getEntityStore() {
+        return fEntities;
+    }
+
+    /**
+     * @return the unfiltered response to a request, from the cache if possible. The response may be shared, and
+     * its text is not set.
+     *
+     * @param event the event of the request, told the outcome of the cache lookup.
+     */
+    private DatatxtResponse fetch(final String contentText, final String contentLang, final String include,
+                                  final RequestContext context, EngineEvent event) throws DatatxtException {
+        final String key = key(contentText, contentLang, include);
+        DatatxtResponse response = fCache != null ? fCache.get(key) : null;
+        if (fCache != null && context.getTrace() != null) {
+            context.getTrace().start("cache").attr("hit", response != null).end();
+        }
+        event.set(EngineEvent.Field.CACHE, fCache == null ? "none" : response != null ? "hit" : "miss");
 
+        if (response == null) {
+            // identical requests in flight, from this client or others sharing the registry, make a single call.
+            response = fSingleFlight.execute(key, new Callable<DatatxtResponse>() {
+                @Override
+                public DatatxtResponse call() throws DatatxtException {
+                    return request(contentText, contentLang, include, context, key);
+                }
+            }, context);
+        } else {
+            fLogger.debug("Cache hit for request {}", key);
+        }
+
+        return response;
+    }
+
+    private DatatxtResponse request(String contentText, String contentLang, String include, RequestContext context,
+                                    String key) throws DatatxtException {
         //TODO add permission check.
-        final RequestHelper helper = new RequestHelper(contentText, contentLang);
+        final RequestHelper helper = new RequestHelper(contentText, contentLang, include, context);
 
         AccessController.doPrivileged(new PrivilegedAction<Object>() {
             @Override
@@ -89,122 +461,512 @@ public class DatatxtClient implements DatatxtProperties {
             }
         });
 
-        return helper.get();
+        DatatxtResponse response = helper.get();
+        // don't keep the text alive in the cache.
+        response.text = null;
+        if (fCache != null) {
+            fCache.put(key, response);
+        }
+        return response;
     }
 
-    private URL url(String url) throws ConfigurationException {
-        try {
-            return new URL(url);
-        } catch (MalformedURLException ex) {
-            throw new ConfigurationException("Invalid URL", url, ex);
+    /**
+     * Stores the descriptions of the entities of a full response.
+     */
+    private void learn(DatatxtResponse response) {
+        if (response.annotations == null) {
+            return;
         }
+        int known = 0;
+        int total = 0;
+        for (Annotation annotation : response.annotations) {
+            if (annotation.uri != null) {
+                known += fEntities.contains(annotation.uri) ? 1 : 0;
+                total++;
+                fEntities.learn(annotation);
+            }
+        }
+        fEntities.observe(known, total);
     }
 
-    private String query(String text, String lang) throws DatatxtException {
+    /**
+     * Makes sure the {@link EntityStore} describes the entities of a lean response. Excerpts around the spots of
+     * the entities not in the store are sent again with abstracts, images and types included, so we pay for
+     * descriptions once per entity rather than once per mention. Failing that, the annotations are still good:
+     * they just go without descriptions.
+     */
+    private void describe(DatatxtResponse response, String contentLang, RequestContext context) {
+        if (response.annotations == null) {
+            return;
+        }
+
+        String text = response.text;
+        List<int[]> windows = new ArrayList<>();
+        int total = 0;
+        for (Annotation annotation : response.annotations) {
+            if (annotation.uri != null) {
+                total++;
+                if (!fEntities.contains(annotation.uri)) {
+                    windows.add(new int[]{Math.max(0, annotation.start - EXCERPT_CONTEXT),
+                            Math.min(text.length(), annotation.end + EXCERPT_CONTEXT)});
+                }
+            }
+        }
+        // too many new entities turn the store cold again, and the next requests full.
+        fEntities.observe(total - windows.size(), total);
+        if (windows.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(windows, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+
+        StringBuilder excerpt = new StringBuilder();
+        int start = windows.get(0)[0];
+        int end = windows.get(0)[1];
+        for (int[] window : windows) {
+            if (window[0] > end) {
+                excerpt.append(text, start, end).append("\n\n");
+                start = window[0];
+            }
+            end = Math.max(end, window[1]);
+        }
+        excerpt.append(text, start, end);
+
         try {
-            return new QueryData()
-                    .add("$app_id", fAppId).add("$app_key", fAppKey)
-                    .add("lang", lang)
-                    .add("min_confidence", String.valueOf(fMinConfidence))
-                    .add("min_length", String.valueOf(fMinLength))
-                    .add("extra_types", fExtraTypes).add("country", fCountry)
-                    .add("custom_spots", fExtraTypes)
-                    .add("include", "types,image,abstract")
-                    .add("text", text)
-                    .toString();
-        } catch (UnsupportedEncodingException e) {
-            throw new DatatxtException("Cannot prepare query data for the HttpRequest", e);
+            DatatxtResponse full = fetch(excerpt.toString(), contentLang, fInclude, context, EngineEvent.NONE);
+            if (full.annotations != null) {
+                for (Annotation annotation : full.annotations) {
+                    fEntities.learn(annotation);
+                }
+            }
+        } catch (DatatxtException ex) {
+            fLogger.warn(String.format("Could not fetch the descriptions of %d new entities.", windows.size()), ex);
+        }
+    }
+
+    /**
+     * @return the fingerprint of the parameters which determine the response to a request. Credentials and
+     * endpoint are not part of it, nor are the local filtering thresholds.
+     */
+    private String key(String text, String lang, String include) {
+        // responses of other endpoints or accounts are not ours to serve, whether cached or in flight.
+        Fingerprint fingerprint = new Fingerprint()
+                .add(fScope)
+                .add(lang)
+                .add(String.valueOf(fFetchMinConfidence))
+                .add(String.valueOf(fFetchMinLength))
+                .add(fExtraTypes).add(fCountry).add(fCustomSpots)
+                .add(include);
+        // responses bounded at parse time are not what unbounded clients expect, and depend on the spots they drop.
+        // Unbounded keys stay as they were.
+        if (fMaxAnnotations > 0) {
+            fingerprint.add(String.valueOf(fMaxAnnotations)).add(String.valueOf(fMinLength));
+        }
+        return fingerprint.add(text).toHex();
+    }
+
+    /**
+     * Releases the resources held by this client, such as the files of a persistent cache, unless other clients
+     * still share them.
+     */
+    @Override
+    public void close() {
+        fRegistry.release(fCache);
+        if (fOwnsRegistry) {
+            fRegistry.close();
+        }
+    }
+
+    /**
+     * Creates a client for a new configuration, sharing the registry of this one: as long as the endpoints,
+     * credentials and cache settings are the same, the new client uses the same {@link Endpoint}s, {@link Quota}s
+     * and caches. If this client owns its registry, the new one takes it over, so that closing this client only
+     * gives back its cache.
+     */
+    public DatatxtClient reconfigure(Dictionary<String, Object> properties, Set<ResponseField> fields,
+                                     EntityStore entities) throws ConfigurationException {
+        DatatxtClient client = newClient(properties, fields, entities, fRegistry);
+        if (fOwnsRegistry) {
+            fOwnsRegistry = false;
+            client.fOwnsRegistry = true;
+        }
+        return client;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return fBalancer.getEndpoints();
+    }
+
+    /**
+     * Opens a connection to each endpoint, so that DNS resolution, the TCP and TLS handshakes are done and the
+     * connections are in the keep-alive pool before the first request. No credentials are sent.
+     *
+     * @return the number of endpoints which could be reached.
+     */
+    public int preconnect() {
+        int reached = 0;
+        for (Endpoint endpoint : fBalancer.getEndpoints()) {
+            HttpURLConnection connection = null;
+            boolean completed = false;
+            try {
+                connection = (HttpURLConnection) endpoint.getUrl().openConnection();
+                connection.setConnectTimeout(fConnectTimeout);
+                connection.setReadTimeout(fReadTimeout);
+                connection.setRequestMethod("HEAD");
+                connection.setUseCaches(false);
+                int responseCode = connection.getResponseCode();
+                // drain whatever came back, so that the connection can be reused.
+                try (InputStream is = responseCode < 400 ? connection.getInputStream()
+                        : connection.getErrorStream()) {
+                    if (is != null) {
+                        IOUtils.copy(is, new NullOutputStream());
+                    }
+                }
+                completed = true;
+                reached++;
+                fLogger.debug("Pre-connected to {} ({}).", endpoint.getUrl(), responseCode);
+            } catch (IOException ex) {
+                fLogger.warn("Cannot pre-connect to {}.", endpoint.getUrl(), ex);
+            } finally {
+                if (connection != null && !completed) {
+                    connection.disconnect();
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Loads the most recent responses of a persistent cache into its in-memory tier, if there is one.
+     *
+     * @return the number of responses loaded.
+     */
+    public int preloadCache() {
+        return fCache instanceof TieredResponseCache ? ((TieredResponseCache) fCache).preload() : 0;
+    }
+
+    private QueryData query(Endpoint endpoint, String text, String lang, String include) {
+        return new QueryData()
+                .add("$app_id", endpoint.getAppId()).add("$app_key", endpoint.getAppKey())
+                .add("lang", lang)
+                .add("min_confidence", String.valueOf(fFetchMinConfidence))
+                .add("min_length", String.valueOf(fFetchMinLength))
+                .add("extra_types", fExtraTypes).add("country", fCountry)
+                .add("custom_spots", fCustomSpots)
+                .add("include", include)
+                .add("text", text);
+    }
+
+    private void writeQuery(HttpURLConnection connection, QueryData query) throws IOException {
+        if (fCompressRequests) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+        } else {
+            connection.setFixedLengthStreamingMode(query.contentLength());
+        }
+
+        try (OutputStream out = fCompressRequests ? new GZIPOutputStream(connection.getOutputStream(), CHUNK_SIZE)
+                : connection.getOutputStream()) {
+            query.writeTo(out);
+        }
+    }
+
+    private InputStream responseStream(HttpURLConnection connection, int responseCode) throws IOException {
+        InputStream is = responseCode / 100 != 2 ? connection.getErrorStream() : connection.getInputStream();
+        if (is != null && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            is = new GZIPInputStream(is);
         }
+        return is;
     }
     /**
      * 
      * @param contentText
      * @param contentLang
+     * @param reserved    the quota units reserved for the request when the endpoint was selected.
      * @return
      * @throws UnmanagedLanguageException if the language of the parsed content is not
      * supported by DataTXT
      * @throws DatatxtException on any other error while calling the DataTXT service
      */
-    private DatatxtResponse performRequest(String contentText, String contentLang) throws UnmanagedLanguageException, DatatxtException {
+    private DatatxtResponse performRequest(Endpoint endpoint, String contentText, String contentLang,
+                                           String include, long reserved, RequestContext context)
+            throws UnmanagedLanguageException, DatatxtException {
 
-        fLogger.info(String.format("DatatxtAnnotator POSTing remote service: endpoint=%s", fNexUrl));
+        URL nexUrl = endpoint.getUrl();
+        fLogger.info(String.format("DatatxtAnnotator POSTing remote service: endpoint=%s", nexUrl));
 
         // https://api.dandelion.eu/datatxt/nex/v1/?$app_id=APP_ID&$app_key=APP_KEY&include=types&text=THE_TEXT
         // Prepare query data
-        String query = query(contentText, contentLang);
+        QueryData query = query(endpoint, contentText, contentLang, include);
 
         if (fLogger.isDebugEnabled()) {
-            fLogger.debug(String.format("*** nexUrl: %s", fNexUrl));
-            fLogger.debug(String.format("*** query : %s", query));
+            fLogger.debug(String.format("*** nexUrl: %s", nexUrl));
+            fLogger.debug(String.format("*** query : %s", query.toString(MAX_LOGGED_VALUE)));
         }
 
         // java HttpURLConnection, instead of third-part http library...
         HttpURLConnection connection = null;
         String responseContent = null;
-        int responseCode;
+        DatatxtResponse response = null;
+        int responseCode = -1;
+        boolean completed = false;
+
+        Trace trace = context.getTrace();
+        Trace.Span span = trace != null ? trace.start("http") : null;
+        boolean slowCalls = fSlowCalls.isEnabled();
+        EngineEvent event = EngineEvent.begin(EngineEvent.Type.HTTP_CALL)
+                .set(EngineEvent.Field.CONTENT_ITEM, context.getDocument());
+        MeteredInputStream meter = null;
+        long start = System.currentTimeMillis();
 
         try {
-            connection = (HttpURLConnection) fNexUrl.openConnection();
+            connection = (HttpURLConnection) nexUrl.openConnection();
+            connection.setConnectTimeout(timeout(fConnectTimeout, context));
+            connection.setReadTimeout(timeout(fReadTimeout, context));
+            context.attach(connection);
             connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
             connection.setDoInput(true);
             connection.setDoOutput(true);
             connection.setUseCaches(false);
             connection.setAllowUserInteraction(false);
 
-            try (DataOutputStream out = new DataOutputStream(connection.getOutputStream())) {
-                out.writeBytes(query.toString());
-                out.flush();
-            }
+            writeQuery(connection, query);
 
             // Get response code
             responseCode = connection.getResponseCode();
             fLogger.info(String.format("*** responseCode: %d", responseCode));
+            observeUnits(endpoint, connection, responseCode, reserved);
 
-            // Read response content
-            InputStream is;
-            if (responseCode / 100 != 2) {
-                is = connection.getErrorStream();
-            } else {
-                is = connection.getInputStream();
+            // Read response content. Successful responses are parsed straight from the stream unless
+            // we have to log them.
+            try (InputStream stream = responseStream(connection, responseCode)) {
+                InputStream is = stream;
+                if (is != null && (span != null || slowCalls || event != EngineEvent.NONE)) {
+                    is = meter = new MeteredInputStream(is, SlowCallLog.EXCERPT_LENGTH);
+                }
+                if (responseCode / 100 == 2 && !fLogger.isDebugEnabled()) {
+                    response = parse(new InputStreamReader(is, StandardCharsets.UTF_8), context);
+                } else {
+                    responseContent = is == null ? "" : IOUtils.toString(is, StandardCharsets.UTF_8.name());
+                }
             }
-            responseContent = IOUtils.toString(is, StandardCharsets.UTF_8.name());
-            is.close();
             if (responseCode / 100 != 2) {
                 fLogger.warn(String.format("*** responseCode: %d, responseContent: %s", responseCode, responseContent));
             }
             if (fLogger.isDebugEnabled()) {
                 fLogger.debug(String.format("*** responseContent: %s", responseContent));
             }
+            completed = true;
+        } catch (DatatxtException e) {
+            throw e;
+        } catch (IOException e) {
+            if (responseCode < 0) {
+                // no response: dataTXT did not charge the request, whether it failed or was given up.
+                endpoint.getQuota().release(reserved);
+            }
+            // a cancelled or expired request is not the endpoint's fault.
+            context.check();
+            throw new EndpointException("Http Request could not be completed. Error: " + e.getMessage(), e);
         } catch (Exception e) {
             throw new DatatxtException("Http Request could not be completed. Error: " + e.getMessage(), e);
         } finally {
             if (connection != null) {
-                connection.disconnect();
+                context.detach(connection);
+                // a connection whose response was read in full goes back to the keep-alive pool.
+                if (!completed) {
+                    connection.disconnect();
+                }
+            }
+            if (span != null) {
+                span.attr("endpoint", nexUrl).attr("code", responseCode).attr("sent", query.contentLength())
+                        .attr("received", meter != null ? meter.getCount() : 0).end();
+            }
+            event.set(EngineEvent.Field.ENDPOINT, nexUrl).set(EngineEvent.Field.STATUS, responseCode)
+                    .set(EngineEvent.Field.BYTES_SENT, query.contentLength())
+                    .set(EngineEvent.Field.BYTES_RECEIVED, meter != null ? meter.getCount() : 0)
+                    .commit();
+            if (slowCalls) {
+                fSlowCalls.completed(endpoint, System.currentTimeMillis() - start, responseCode, query, meter);
             }
         }
 
         // Parse the response
+        if (EndpointException.isEndpointFailure(responseCode)) {
+            throw new EndpointException("Endpoint failure: Code=" + responseCode + ", Response=" + responseContent);
+        }
+
         if (responseCode / 100 != 2) {
             // try detect {code: "error.unmanagedLanguage", message: "Unmanaged language [zz]"}
-            DatatxtResponse response = new GsonBuilder().create().fromJson(responseContent, DatatxtResponse.class);
-            if (response.error && response.code.contains(".unmanagedLanguage")) {
-                Matcher matcher = Pattern.compile("\\[(.*?)\\]").matcher(response.message);
+            DatatxtResponse error = new GsonBuilder().create().fromJson(responseContent, DatatxtResponse.class);
+            if (error != null && error.error && error.code != null && error.code.contains(".unmanagedLanguage")) {
+                Matcher matcher = Pattern.compile("\\[(.*?)\\]").matcher(error.message);
                 String unmanagedLanguage = matcher.find() ? matcher.group(1) : null;
                 throw new UnmanagedLanguageException(unmanagedLanguage);
             }
 
-            throw new DatatxtException("Invalid Response: Code=" + responseCode + ", Response=" + responseContent + ", Request=" + query, null);
+            throw new DatatxtException("Invalid Response: Code=" + responseCode + ", Response=" + responseContent
+                    + ", Request=" + query.toString(MAX_LOGGED_VALUE), null);
+        }
+
+        if (response == null) {
+            response = parse(new StringReader(responseContent), context);
+        }
+        response.text = contentText;
+        return response;
+    }
+
+    /**
+     * Feeds the unit headers of a response to the quota of its endpoint. The units reserved for a request that
+     * failed on the endpoint are given back, since such a request costs at most what dataTXT reports.
+     */
+    private void observeUnits(Endpoint endpoint, HttpURLConnection connection, int responseCode, long reserved) {
+        Quota quota = endpoint.getQuota();
+        if (EndpointException.isEndpointFailure(responseCode)) {
+            quota.release(reserved);
+            reserved = 0;
+        }
+
+        long units = parseUnits(connection.getHeaderField(UNITS_HEADER), true);
+        long left = parseUnits(connection.getHeaderField(UNITS_LEFT_HEADER), false);
+        long resetAt = parseTime(connection.getHeaderField(UNITS_RESET_HEADER));
+        if (units < 0 && left < 0 && resetAt == 0) {
+            return;
+        }
+
+        quota.observe(reserved, units, left, resetAt);
+
+        long now = System.currentTimeMillis();
+        long exhaustion = quota.getProjectedExhaustion();
+        if (resetAt > 0 && exhaustion < resetAt && now - fLastQuotaWarning > QUOTA_WARNING_INTERVAL) {
+            fLastQuotaWarning = now;
+            fLogger.warn("At the current rate, the dataTXT units of {} run out in {} minutes, {} minutes before "
+                    + "they are reset ({}).", new Object[]{quota.getAppId(),
+                    TimeUnit.MILLISECONDS.toMinutes(exhaustion - now),
+                    TimeUnit.MILLISECONDS.toMinutes(resetAt - exhaustion), quota});
+        }
+    }
+
+    /**
+     * @param roundUp round fractional units up (costs) rather than down (units left).
+     * @return the units in a header, or <code>-1</code> if it is missing or malformed.
+     */
+    static long parseUnits(String value, boolean roundUp) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            double units = Double.parseDouble(value.trim());
+            return units < 0 ? -1 : (long) (roundUp ? Math.ceil(units) : Math.floor(units));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the time in a header, either a date (e.g. <code>2015-06-10 00:00:00 +0000</code>) or seconds since
+     * the epoch, or <code>0</code> if it is missing or malformed.
+     */
+    static long parseTime(String value) {
+        if (value == null) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException ex) {
+            // a date, then.
+        }
+        for (String pattern : new String[]{"yyyy-MM-dd HH:mm:ss Z", "yyyy-MM-dd'T'HH:mm:ssZ"}) {
+            try {
+                return new SimpleDateFormat(pattern, Locale.ROOT).parse(value).getTime();
+            } catch (ParseException ex) {
+                // try the next one.
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * With {@link #DATATXT_QUOTA_PACING}, waits for the time slot of a bulk request on the endpoint selected for it.
+     * While waiting, the request gives back the units reserved on the endpoint and doesn't count as outstanding
+     * there, and takes them again afterwards.
+     *
+     * @param units the units reserved for the request.
+     * @return <code>false</code> if the units ran out while waiting. The endpoint is then no longer reserved, as
+     * it is not if an exception is thrown.
+     * @throws DatatxtException if the request would have to wait past its deadline.
+     */
+    private boolean pace(Endpoint endpoint, long units, RequestContext context) throws DatatxtException {
+        if (!fPacing || context.getPriority() != Priority.BULK) {
+            return true;
+        }
+        long wait = endpoint.getQuota().pace(units, context.remaining());
+        if (wait == 0) {
+            return true;
+        }
+        fBalancer.release(endpoint, units);
+        if (wait < 0) {
+            throw new DatatxtException("The dataTXT units left for " + endpoint.getAppId()
+                    + " do not allow another bulk request before its deadline.");
         }
 
+        Trace trace = context.getTrace();
+        Trace.Span span = trace != null ? trace.start("pacing").attr("wait", wait) : null;
         try {
-            DatatxtResponse response = new GsonBuilder().create().fromJson(responseContent, DatatxtResponse.class);
-            response.text = contentText;
+            Thread.sleep(wait);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (span != null) {
+                span.end();
+            }
+        }
+        context.check();
+        return fBalancer.reacquire(endpoint, units, context.getPriority());
+    }
+
+    /**
+     * @return the timeout for a blocking operation: the configured one, capped by the time left to the context.
+     */
+    private static int timeout(int configured, RequestContext context) throws DeadlineException {
+        context.check();
+        long remaining = context.remaining();
+        if (remaining == Long.MAX_VALUE) {
+            return configured;
+        }
+        // 0 would mean no timeout at all.
+        return (int) Math.max(1, Math.min(configured > 0 ? configured : Integer.MAX_VALUE, remaining));
+    }
+
+    /**
+     * Parses a response as received from dataTXT, keeping the fields the client was configured with.
+     */
+    public DatatxtResponse parse(Reader reader) throws DatatxtException {
+        return parse(reader, null);
+    }
+
+    /**
+     * @param context the context of the request the response is for, or <code>null</code> if there is none.
+     */
+    private DatatxtResponse parse(Reader reader, RequestContext context) throws DatatxtException {
+        EngineEvent event = EngineEvent.begin(EngineEvent.Type.PARSE)
+                .set(EngineEvent.Field.CONTENT_ITEM, context != null ? context.getDocument() : null);
+        try {
+            DatatxtResponse response = fReader.read(reader);
+            event.set(EngineEvent.Field.ANNOTATIONS, response.annotations != null ? response.annotations.size() : 0);
             return response;
         } catch (Exception e) {
             throw new DatatxtException("JSON Response could not be parsed. Error: " + e.getMessage(), e);
+        } finally {
+            event.commit();
         }
-
     }
 
     private class RequestHelper {
@@ -217,14 +979,54 @@ public class DatatxtClient implements DatatxtProperties {
 
         private final String fLang;
 
-        public RequestHelper(String text, String lang) {
+        private final String fInclude;
+
+        private final RequestContext fContext;
+
+        public RequestHelper(String text, String lang, String include, RequestContext context) {
             fLang = lang;
             fText = text;
+            fInclude = include;
+            fContext = context;
         }
 
         public void doRequest() {
+            Set<Endpoint> failed = new HashSet<>();
             try {
-                fResponse = performRequest(fText, fLang);
+                while (true) {
+                    fContext.check();
+                    long units = REQUEST_UNITS;
+                    Endpoint endpoint = fBalancer.select(failed, units, fContext.getPriority());
+                    if (endpoint == null) {
+                        // fException holds the failure of the last endpoint tried.
+                        return;
+                    }
+                    if (!pace(endpoint, units, fContext)) {
+                        failed.add(endpoint);
+                        fException = new DatatxtException("The dataTXT units left for " + endpoint.getAppId()
+                                + " ran out while waiting for a bulk request slot.");
+                        continue;
+                    }
+                    long start = System.currentTimeMillis();
+                    try {
+                        fResponse = performRequest(endpoint, fText, fLang, fInclude, units, fContext);
+                        endpoint.succeeded(System.currentTimeMillis() - start);
+                        fException = null;
+                        return;
+                    } catch (EndpointException ex) {
+                        endpoint.failed();
+                        failed.add(endpoint);
+                        fException = ex;
+                        fLogger.warn(String.format("Request to %s failed, trying another endpoint if available.",
+                                endpoint.getUrl()), ex);
+                    } catch (Exception ex) {
+                        endpoint.completed();
+                        throw ex;
+                    }
+                }
+            } catch (UnmanagedLanguageException ex) {
+                fUnmanagedLanguages.unmanaged(ex.getLanguage() != null ? ex.getLanguage() : fLang);
+                fException = ex;
             } catch (Exception ex) {
                 fException = ex;
             }
@@ -248,78 +1050,4 @@ public class DatatxtClient implements DatatxtProperties {
 
     }
 
-    private static class PropertyHelper {
-
-        private Dictionary<String, Object> properties;
-
-        public PropertyHelper(Dictionary<String, Object> properties) {
-            this.properties = properties;
-        }
-
-        public String getString(String name) throws ConfigurationException {
-            return assertNonNull(name, getString(name, null));
-        }
-
-        public String getString(String name, String defaultValue) {
-            Object value = properties.get(name);
-            if (value == null) {
-                return defaultValue;
-            }
-
-            String result;
-            if (value instanceof String) {
-                result = (String) value;
-            } else if (value instanceof String[]) {
-                // format as CSV
-                result = Arrays.asList((String[]) value).toString().replaceAll(", ", ",").replaceAll("^\\[|\\]$", "");
-            } else {
-                // TODO: manage Object[] and iterable?
-                result = value.toString();
-            }
-
-            return result;
-        }
-
-        public int getInt(String name, int defaultValue, int min, int max) throws ConfigurationException {
-            Object value = properties.get(name);
-            int result = defaultValue;
-            if (value != null) {
-                try {
-                    result = Integer.parseInt(value.toString());
-                } catch (NumberFormatException e) {
-                    fLogger.warn(String.format("Unable to parse Integer property '%s' from configured value '%s'! Use default '%d' instead.", name, value, defaultValue), e);
-                }
-            }
-            if (result < min || result > max) {
-                throw new ConfigurationException(name, String.format("Value %d falls outside of [%d, %d]", result, min, max));
-            }
-            return result;
-        }
-
-        public float getFloat(String name, float defaultValue, float min, float max) {
-            Object value = properties.get(name);
-            float result = defaultValue;
-            if (value != null) {
-                try {
-                    result = Float.parseFloat(value.toString());
-                } catch (NumberFormatException e) {
-                    fLogger.warn(String.format("Unable to parse Float property '%s' from configured value '%s'! Use default '%d' instead.", name, value, defaultValue), e);
-                }
-            }
-            if (result < min || result > max) {
-                fLogger.warn(String.format("Configured '%s=%d' is invalid (value MUST BE IN [%d..%d]). Use default '%d' instead.", name, result, min, max, defaultValue));
-                result = defaultValue;
-            }
-            return result;
-        }
-
-        private <T> T assertNonNull(String key, T value) throws ConfigurationException {
-            if (value == null) {
-                throw new ConfigurationException(key, "cannot be null");
-            }
-            return value;
-        }
-
-    }
-
 }
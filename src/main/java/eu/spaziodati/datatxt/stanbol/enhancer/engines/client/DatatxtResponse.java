@@ -2,7 +2,9 @@ package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public class DatatxtResponse {
 
@@ -19,6 +21,67 @@ public class DatatxtResponse {
     // include the request text for convenience.
     public transient String text;
 
+    /**
+     * @return a shallow copy of this response holding only the annotations with at least the given confidence and
+     * spot length. This response is left untouched.
+     */
+    public DatatxtResponse filter(float minConfidence, int minLength) {
+        DatatxtResponse copy = new DatatxtResponse();
+        copy.time = time;
+        copy.lang = lang;
+        copy.langConfidence = langConfidence;
+        copy.error = error;
+        copy.message = message;
+        copy.code = code;
+        copy.text = text;
+        if (annotations != null) {
+            copy.annotations = new ArrayList<>();
+            for (Annotation annotation : annotations) {
+                if (annotation.confidence >= minConfidence
+                        && (annotation.spot == null || annotation.spot.length() >= minLength)) {
+                    copy.annotations.add(annotation);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return a shallow copy of this response with the offsets of its annotations shifted by <code>delta</code>
+     * characters. This response is left untouched.
+     */
+    public DatatxtResponse shift(int delta) {
+        DatatxtResponse copy = filter(Float.NEGATIVE_INFINITY, 0);
+        if (copy.annotations != null && delta != 0) {
+            List<Annotation> shifted = new ArrayList<>(copy.annotations.size());
+            for (Annotation annotation : copy.annotations) {
+                shifted.add(annotation.shift(delta));
+            }
+            copy.annotations = shifted;
+        }
+        return copy;
+    }
+
+    /**
+     * @return a shallow copy of this response holding only its <code>count</code> most confident annotations, in
+     * the order of their offsets. This response is left untouched.
+     */
+    public DatatxtResponse top(int count) {
+        DatatxtResponse copy = filter(Float.NEGATIVE_INFINITY, 0);
+        if (copy.annotations != null && copy.annotations.size() > count) {
+            if (count <= 0) {
+                copy.annotations = new ArrayList<>();
+            } else {
+                TopAnnotations top = new TopAnnotations(count);
+                for (Annotation annotation : copy.annotations) {
+                    top.offer(annotation);
+                }
+                copy.annotations = top.toList();
+            }
+        }
+        return copy;
+    }
+
     @Override
     public String toString() {
         return String.format("DatatxtResponse{%s, %f, %s}", lang, langConfidence, annotations);
@@ -38,6 +101,23 @@ public class DatatxtResponse {
         public Collection<String> types;
         public Image image;
 
+        /**
+         * @return a copy of this annotation with its offsets shifted by <code>delta</code> characters.
+         */
+        public Annotation shift(int delta) {
+            Annotation copy = new Annotation();
+            copy.start = start + delta;
+            copy.end = end + delta;
+            copy.spot = spot;
+            copy.confidence = confidence;
+            copy.title = title;
+            copy.uri = uri;
+            copy.summary = summary;
+            copy.types = types;
+            copy.image = image;
+            return copy;
+        }
+
         @Override
         public String toString() {
             return String.format("Annotation{%s, %f, %s, %d, %d}", title, confidence, spot, start, end);
@@ -0,0 +1,25 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+/**
+ * Signals that a request ran out of its time budget, or was cancelled, before completing. Unlike an
+ * {@link EndpointException}, it says nothing about the health of the endpoint, and retrying elsewhere is pointless.
+ */
+public class DeadlineException extends DatatxtException {
+
+    private static final long serialVersionUID = -2779104186334462337L;
+
+    private final boolean fCancelled;
+
+    public DeadlineException(String message, boolean cancelled) {
+        super(message);
+        fCancelled = cancelled;
+    }
+
+    /**
+     * @return <code>true</code> if the request was cancelled, <code>false</code> if its deadline expired.
+     */
+    public boolean isCancelled() {
+        return fCancelled;
+    }
+
+}
@@ -0,0 +1,130 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Endpoint} is a dataTXT NEX URL together with the credentials used to call it. Besides its
+ * configuration, it keeps the live statistics {@link EndpointBalancer} uses to pick an endpoint for each request:
+ * the number of outstanding requests, an exponentially weighted moving average (EWMA) of the latency, and a
+ * back-off window after failures.
+ */
+public class Endpoint {
+
+    /**
+     * Weight of the latest sample in the latency EWMA.
+     */
+    private static final double ALPHA = 0.3;
+
+    private static final long MIN_BACKOFF = 1000;
+
+    private static final long MAX_BACKOFF = 60000;
+
+    private final URL fUrl;
+
+    private final String fAppId;
+
+    private final String fAppKey;
+
+    private final int fWeight;
+
+    private final Quota fQuota;
+
+    private final AtomicInteger fOutstanding = new AtomicInteger();
+
+    private volatile double fLatency;
+
+    private volatile int fFailures;
+
+    private volatile long fUnavailableUntil;
+
+    public Endpoint(URL url, String appId, String appKey, int weight, Quota quota) {
+        fUrl = url;
+        fAppId = appId;
+        fAppKey = appKey;
+        fWeight = Math.max(1, weight);
+        fQuota = quota;
+    }
+
+    public URL getUrl() {
+        return fUrl;
+    }
+
+    public String getAppId() {
+        return fAppId;
+    }
+
+    public String getAppKey() {
+        return fAppKey;
+    }
+
+    public int getWeight() {
+        return fWeight;
+    }
+
+    public Quota getQuota() {
+        return fQuota;
+    }
+
+    public int getOutstanding() {
+        return fOutstanding.get();
+    }
+
+    /**
+     * @return the EWMA of the latency of successful requests, in milliseconds.
+     */
+    public double getLatency() {
+        return fLatency;
+    }
+
+    /**
+     * @return <code>true</code> if the endpoint is not backing off after failures.
+     */
+    public boolean isAvailable(long now) {
+        return fUnavailableUntil <= now;
+    }
+
+    long getUnavailableUntil() {
+        return fUnavailableUntil;
+    }
+
+    /**
+     * @return the selection cost of this endpoint: lower is better.
+     */
+    double cost() {
+        return (fLatency + 1) * (fOutstanding.get() + 1) / fWeight;
+    }
+
+    void started() {
+        fOutstanding.incrementAndGet();
+    }
+
+    synchronized void succeeded(long latency) {
+        fOutstanding.decrementAndGet();
+        fLatency = fLatency == 0 ? latency : ALPHA * latency + (1 - ALPHA) * fLatency;
+        fFailures = 0;
+        fUnavailableUntil = 0;
+    }
+
+    /**
+     * The request completed, but the outcome says nothing about the health of the endpoint (e.g. an invalid
+     * request).
+     */
+    void completed() {
+        fOutstanding.decrementAndGet();
+    }
+
+    synchronized void failed() {
+        fOutstanding.decrementAndGet();
+        int failures = ++fFailures;
+        long backoff = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures - 1, 16));
+        fUnavailableUntil = System.currentTimeMillis() + backoff;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Endpoint{%s, %s, weight=%d, outstanding=%d, latency=%.1fms}", fUrl, fAppId, fWeight,
+                fOutstanding.get(), fLatency);
+    }
+
+}
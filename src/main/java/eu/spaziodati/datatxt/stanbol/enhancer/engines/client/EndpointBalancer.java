@@ -0,0 +1,136 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link EndpointBalancer} spreads requests over a list of {@link Endpoint}s. Each request goes to the available
+ * endpoint with the lowest cost, where the cost grows with the latency EWMA and the number of outstanding requests
+ * and shrinks with the configured weight. Endpoints backing off after failures, or whose {@link Quota} is
+ * exhausted, are skipped; if every endpoint is backing off, the one recovering first is tried anyway.
+ * <p/>
+ * {@link Priority#BULK} requests leave a share of each quota in reserve for {@link Priority#INTERACTIVE} ones.
+ */
+public class EndpointBalancer {
+
+    private final List<Endpoint> fEndpoints;
+
+    private final float fInteractiveReserve;
+
+    public EndpointBalancer(List<Endpoint> endpoints) {
+        this(endpoints, 0);
+    }
+
+    /**
+     * @param interactiveReserve the share, between 0 and 1, of each quota that bulk requests leave to interactive
+     *                           ones.
+     */
+    public EndpointBalancer(List<Endpoint> endpoints, float interactiveReserve) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required.");
+        }
+        fEndpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        fInteractiveReserve = interactiveReserve;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return fEndpoints;
+    }
+
+    /**
+     * Selects an endpoint and reserves quota for the request on it. If the request then fails on the endpoint, the
+     * units are to be given back with {@link Quota#release(long)}.
+     *
+     * @param excluded endpoints that already failed for this request.
+     * @param units    the quota units the request is expected to consume.
+     * @return the selected endpoint, or <code>null</code> if there is no endpoint left to try.
+     * @throws DatatxtException if every remaining endpoint has exhausted its quota.
+     */
+    public Endpoint select(Set<Endpoint> excluded, long units) throws DatatxtException {
+        return select(excluded, units, Priority.INTERACTIVE);
+    }
+
+    /**
+     * As {@link #select(Set, long)}, leaving the interactive reserve of each quota alone for bulk requests.
+     */
+    public Endpoint select(Set<Endpoint> excluded, long units, Priority priority) throws DatatxtException {
+        long now = System.currentTimeMillis();
+        Set<Endpoint> skipped = new HashSet<>(excluded);
+        boolean exhausted = false;
+
+        while (true) {
+            Endpoint best = null;
+            Endpoint recovering = null;
+            for (Endpoint endpoint : fEndpoints) {
+                if (skipped.contains(endpoint)) {
+                    continue;
+                }
+                if (endpoint.getQuota().isExhausted(reserve(endpoint, priority))) {
+                    exhausted = true;
+                    continue;
+                }
+                if (!endpoint.isAvailable(now)) {
+                    if (recovering == null || endpoint.getUnavailableUntil() < recovering.getUnavailableUntil()) {
+                        recovering = endpoint;
+                    }
+                    continue;
+                }
+                if (best == null || endpoint.cost() < best.cost()) {
+                    best = endpoint;
+                }
+            }
+
+            Endpoint selected = best != null ? best : recovering;
+            if (selected == null) {
+                if (exhausted) {
+                    throw new DatatxtException(priority == Priority.BULK && fInteractiveReserve > 0
+                            ? "The quota left on every configured dataTXT key is reserved for interactive requests."
+                            : "The quota of every configured dataTXT key is exhausted.");
+                }
+                return null;
+            }
+
+            // Another request may have taken the last units in the meantime.
+            if (selected.getQuota().tryAcquire(units, reserve(selected, priority))) {
+                selected.started();
+                return selected;
+            }
+            skipped.add(selected);
+            exhausted = true;
+        }
+    }
+
+    /**
+     * Gives back what {@link #select(Set, long, Priority)} took for a request which is not sent yet: the units
+     * reserved on the quota of the endpoint, and its place among the outstanding requests there.
+     */
+    void release(Endpoint endpoint, long units) {
+        endpoint.getQuota().release(units);
+        endpoint.completed();
+    }
+
+    /**
+     * Takes again, for a request given back with {@link #release(Endpoint, long)}, what
+     * {@link #select(Set, long, Priority)} took on the same endpoint.
+     *
+     * @return <code>false</code> if the quota of the endpoint has run out in the meantime.
+     */
+    boolean reacquire(Endpoint endpoint, long units, Priority priority) {
+        if (!endpoint.getQuota().tryAcquire(units, reserve(endpoint, priority))) {
+            return false;
+        }
+        endpoint.started();
+        return true;
+    }
+
+    /**
+     * @return the units of the quota of an endpoint a request of the given priority must leave alone.
+     */
+    private long reserve(Endpoint endpoint, Priority priority) {
+        return priority == Priority.BULK ? (long) Math.ceil(endpoint.getQuota().getBudget() * fInteractiveReserve) : 0;
+    }
+
+}
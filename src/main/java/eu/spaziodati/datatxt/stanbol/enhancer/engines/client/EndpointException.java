@@ -0,0 +1,27 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+/**
+ * Signals a failure that is specific to the {@link Endpoint} a request was sent to (transport errors, throttling,
+ * server errors, rejected credentials), so that the request may succeed on another endpoint.
+ */
+public class EndpointException extends DatatxtException {
+
+    private static final long serialVersionUID = 4046412093470335291L;
+
+    public EndpointException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public EndpointException(String message) {
+        super(message);
+    }
+
+    /**
+     * @return <code>true</code> if an HTTP response code denotes a failure of the endpoint or of its credentials,
+     * rather than of the request itself.
+     */
+    public static boolean isEndpointFailure(int responseCode) {
+        return responseCode == 401 || responseCode == 403 || responseCode == 429 || responseCode / 100 == 5;
+    }
+
+}
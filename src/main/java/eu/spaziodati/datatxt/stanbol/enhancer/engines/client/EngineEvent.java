@@ -0,0 +1,119 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+/**
+ * An {@link EngineEvent} is a timed step of the engine (an enhancement, a dataTXT request, an HTTP call, the
+ * parsing of a response, a translation) recorded as a JDK Flight Recorder event, so that a profile of a node tells
+ * which documents the time, the socket reads and the allocations went to. Events are created with
+ * {@link #begin(Type)}, given their {@link Field}s and committed once the step is over.
+ * <p/>
+ * Flight Recorder is looked up at runtime: on a JVM without it, or when no recording enables the event,
+ * {@link #begin(Type)} returns {@link #NONE}, which records nothing.
+ */
+public abstract class EngineEvent {
+
+    /**
+     * The values an event can carry. Each {@link Type} has its own subset of them.
+     */
+    public enum Field {
+
+        CONTENT_ITEM("contentItem", "ContentItem", String.class),
+        PRIORITY("priority", "Priority", String.class),
+        LANGUAGE("language", "Language", String.class),
+        TEXT_LENGTH("textLength", "Text Length", int.class),
+        ANNOTATIONS("annotations", "Annotations", int.class),
+        CACHE("cache", "Cache Outcome", String.class),
+        ENDPOINT("endpoint", "Endpoint", String.class),
+        STATUS("status", "Status", int.class),
+        BYTES_SENT("bytesSent", "Bytes Sent", long.class),
+        BYTES_RECEIVED("bytesReceived", "Bytes Received", long.class);
+
+        final String fName;
+
+        final String fLabel;
+
+        final Class<?> fType;
+
+        Field(String name, String label, Class<?> type) {
+            fName = name;
+            fLabel = label;
+            fType = type;
+        }
+    }
+
+    public enum Type {
+
+        ENHANCEMENT("Enhancement", "The enhancement of a ContentItem",
+                Field.CONTENT_ITEM, Field.PRIORITY, Field.LANGUAGE, Field.TEXT_LENGTH),
+        REQUEST("Request", "A dataTXT request, from the cache or not",
+                Field.CONTENT_ITEM, Field.LANGUAGE, Field.TEXT_LENGTH, Field.ANNOTATIONS, Field.CACHE),
+        HTTP_CALL("HTTP Call", "An HTTP call to a dataTXT endpoint",
+                Field.CONTENT_ITEM, Field.ENDPOINT, Field.STATUS, Field.BYTES_SENT, Field.BYTES_RECEIVED),
+        PARSE("Response Parsing", "The parsing of a dataTXT response",
+                Field.CONTENT_ITEM, Field.ANNOTATIONS),
+        TRANSLATION("Translation", "The translation of a dataTXT response into RDF",
+                Field.CONTENT_ITEM, Field.TEXT_LENGTH, Field.ANNOTATIONS);
+
+        final String fLabel;
+
+        final String fDescription;
+
+        final Field[] fFields;
+
+        Type(String label, String description, Field... fields) {
+            fLabel = label;
+            fDescription = description;
+            fFields = fields;
+        }
+
+        /**
+         * @return the name of the event type in recordings.
+         */
+        public String getEventName() {
+            return "eu.spaziodati.datatxt." + fLabel.replace(" ", "");
+        }
+
+        int indexOf(Field field) {
+            for (int i = 0; i < fFields.length; i++) {
+                if (fFields[i] == field) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The event recording nothing.
+     */
+    public static final EngineEvent NONE = new EngineEvent() {
+        @Override
+        public EngineEvent set(Field field, Object value) {
+            return this;
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    /**
+     * Starts timing an event.
+     *
+     * @return the event, or {@link #NONE} if it is not being recorded.
+     */
+    public static EngineEvent begin(Type type) {
+        return JfrEvents.begin(type);
+    }
+
+    /**
+     * Sets a field of the event. Fields not carried by its {@link Type}, and <code>null</code> values, are
+     * ignored.
+     */
+    public abstract EngineEvent set(Field field, Object value);
+
+    /**
+     * Ends the event and writes it to the recordings.
+     */
+    public abstract void commit();
+
+}
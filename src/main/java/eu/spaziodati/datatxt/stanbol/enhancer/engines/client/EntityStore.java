@@ -0,0 +1,120 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Image;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link EntityStore} keeps the descriptions (abstract, image and types) of the entities dataTXT returned, keyed by
+ * entity URI, so that they need not be requested again with every mention. It is an LRU map holding up to a fixed
+ * number of entities.
+ * <p/>
+ * The store also follows how many of the entities of recent responses it already knew: until it is
+ * {@link #isWarm() warm}, asking dataTXT for lean annotations would mostly mean asking again for the descriptions.
+ */
+public class EntityStore {
+
+    /**
+     * The description of an entity. Any field may be <code>null</code> if dataTXT has none.
+     */
+    public static class Description {
+
+        public final String summary;
+
+        public final Image image;
+
+        public final Collection<String> types;
+
+        public Description(String summary, Image image, Collection<String> types) {
+            this.summary = summary;
+            this.image = image;
+            this.types = types;
+        }
+    }
+
+    /**
+     * The share of known entities above which the store is warm.
+     */
+    static final double WARM_RATIO = 0.9;
+
+    /**
+     * The weight of each response in the moving average of known entities.
+     */
+    private static final double RATIO_WEIGHT = 0.1;
+
+    private final Map<String, Description> fDescriptions;
+
+    /**
+     * The share of the entities of recent responses which were in the store, as a moving average.
+     */
+    private double fKnownRatio;
+
+    public EntityStore(final int capacity) {
+        fDescriptions = new LinkedHashMap<String, Description>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Description> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Records the description carried by an annotation obtained with abstracts, images and types included.
+     */
+    public void learn(Annotation annotation) {
+        if (annotation.uri == null) {
+            return;
+        }
+        Description description = new Description(annotation.summary, annotation.image, annotation.types);
+        synchronized (fDescriptions) {
+            fDescriptions.put(annotation.uri, description);
+        }
+    }
+
+    /**
+     * @return the description of an entity, or <code>null</code> if it is not known.
+     */
+    public Description get(String uri) {
+        synchronized (fDescriptions) {
+            return fDescriptions.get(uri);
+        }
+    }
+
+    /**
+     * Records how many of the entities of a response were in the store.
+     *
+     * @param known the entities found in the store.
+     * @param total the entities of the response.
+     */
+    public void observe(int known, int total) {
+        if (total <= 0) {
+            return;
+        }
+        synchronized (fDescriptions) {
+            fKnownRatio += RATIO_WEIGHT * ((double) known / total - fKnownRatio);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the store knew most of the entities of recent responses.
+     */
+    public boolean isWarm() {
+        synchronized (fDescriptions) {
+            return fKnownRatio >= WARM_RATIO;
+        }
+    }
+
+    public boolean contains(String uri) {
+        return get(uri) != null;
+    }
+
+    public int size() {
+        synchronized (fDescriptions) {
+            return fDescriptions.size();
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link Fingerprint} computes a SHA-1 digest over a sequence of strings, without copying or encoding them as a
+ * whole. Each string is length-prefixed, so that different sequences never produce the same input.
+ */
+public class Fingerprint {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest fDigest;
+
+    private final byte[] fBuffer = new byte[4096];
+
+    public Fingerprint() {
+        try {
+            fDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-1 is required to be available on every JVM.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the hex fingerprint of a region of a string.
+     */
+    public static String of(String value, int start, int end) {
+        return new Fingerprint().add(value, start, end).toHex();
+    }
+
+    public Fingerprint add(String value) {
+        return value == null ? add(null, 0, 0) : add(value, 0, value.length());
+    }
+
+    public Fingerprint add(String value, int start, int end) {
+        int length = value == null ? -1 : end - start;
+        int position = 0;
+        fBuffer[position++] = (byte) (length >> 24);
+        fBuffer[position++] = (byte) (length >> 16);
+        fBuffer[position++] = (byte) (length >> 8);
+        fBuffer[position++] = (byte) length;
+
+        for (int i = start; i < end; i++) {
+            if (position + 2 > fBuffer.length) {
+                fDigest.update(fBuffer, 0, position);
+                position = 0;
+            }
+            char c = value.charAt(i);
+            fBuffer[position++] = (byte) (c >> 8);
+            fBuffer[position++] = (byte) c;
+        }
+        fDigest.update(fBuffer, 0, position);
+        return this;
+    }
+
+    public byte[] toBytes() {
+        return fDigest.digest();
+    }
+
+    public String toHex() {
+        byte[] hash = toBytes();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0x0F];
+            hex[2 * i + 1] = HEX[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+}
@@ -0,0 +1,171 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records {@link EngineEvent}s with JDK Flight Recorder. The event types are defined at runtime through
+ * <code>jdk.jfr.EventFactory</code>, by reflection, so that the bundle still runs on JVMs without Flight Recorder:
+ * there, no type is defined and every event is {@link EngineEvent#NONE}.
+ */
+class JfrEvents {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(JfrEvents.class);
+
+    private static final String CATEGORY = "dataTXT";
+
+    /**
+     * The factories of the event types, by {@link EngineEvent.Type#ordinal()}, or <code>null</code> if Flight
+     * Recorder is not available.
+     */
+    private static final Object[] fFactories;
+
+    /**
+     * The <code>jdk.jfr.EventType</code>s, telling whether a recording enables them.
+     */
+    private static final Object[] fTypes;
+
+    private static Method fNewEvent;
+
+    private static Method fIsEnabled;
+
+    private static Method fBegin;
+
+    private static Method fSet;
+
+    private static Method fCommit;
+
+    static {
+        Object[] factories = null;
+        Object[] types = null;
+        try {
+            factories = new Object[EngineEvent.Type.values().length];
+            types = new Object[factories.length];
+            define(factories, types);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            fLogger.debug("Flight Recorder not available, engine events will not be recorded.", ex);
+            factories = null;
+            types = null;
+        }
+        fFactories = factories;
+        fTypes = types;
+    }
+
+    private static void define(Object[] factories, Object[] types) throws ReflectiveOperationException {
+        // jdk.jfr is not exported to bundles: it is reached through the system class loader.
+        ClassLoader loader = ClassLoader.getSystemClassLoader();
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", true, loader);
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", true, loader);
+        Class<?> event = Class.forName("jdk.jfr.Event", true, loader);
+        Class<?> name = Class.forName("jdk.jfr.Name", true, loader);
+        Class<?> label = Class.forName("jdk.jfr.Label", true, loader);
+        Class<?> description = Class.forName("jdk.jfr.Description", true, loader);
+        Class<?> category = Class.forName("jdk.jfr.Category", true, loader);
+
+        Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+        Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        Method create = eventFactory.getMethod("create", List.class, List.class);
+        Method getEventType = eventFactory.getMethod("getEventType");
+
+        for (EngineEvent.Type type : EngineEvent.Type.values()) {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(newAnnotation.newInstance(name, type.getEventName()));
+            annotations.add(newAnnotation.newInstance(label, "dataTXT " + type.fLabel));
+            annotations.add(newAnnotation.newInstance(description, type.fDescription));
+            annotations.add(newAnnotation.newInstance(category, new String[]{CATEGORY}));
+
+            List<Object> fields = new ArrayList<>();
+            for (EngineEvent.Field field : type.fFields) {
+                fields.add(newValue.newInstance(field.fType, field.fName,
+                        Collections.singletonList(newAnnotation.newInstance(label, field.fLabel))));
+            }
+
+            Object factory = create.invoke(null, annotations, fields);
+            factories[type.ordinal()] = factory;
+            types[type.ordinal()] = getEventType.invoke(factory);
+        }
+
+        fNewEvent = eventFactory.getMethod("newEvent");
+        fIsEnabled = Class.forName("jdk.jfr.EventType", true, loader).getMethod("isEnabled");
+        fBegin = event.getMethod("begin");
+        fSet = event.getMethod("set", int.class, Object.class);
+        fCommit = event.getMethod("commit");
+    }
+
+    /**
+     * @return <code>true</code> if events can be recorded on this JVM.
+     */
+    static boolean isAvailable() {
+        return fFactories != null;
+    }
+
+    static EngineEvent begin(EngineEvent.Type type) {
+        if (fFactories == null) {
+            return EngineEvent.NONE;
+        }
+        try {
+            if (!(Boolean) fIsEnabled.invoke(fTypes[type.ordinal()])) {
+                return EngineEvent.NONE;
+            }
+            Object event = fNewEvent.invoke(fFactories[type.ordinal()]);
+            fBegin.invoke(event);
+            return new JfrEvent(type, event);
+        } catch (ReflectiveOperationException ex) {
+            fLogger.debug("Cannot begin {} event.", type, ex);
+            return EngineEvent.NONE;
+        }
+    }
+
+    private static class JfrEvent extends EngineEvent {
+
+        private final Type fType;
+
+        private final Object fEvent;
+
+        private JfrEvent(Type type, Object event) {
+            fType = type;
+            fEvent = event;
+        }
+
+        @Override
+        public EngineEvent set(Field field, Object value) {
+            int index = fType.indexOf(field);
+            if (index < 0 || value == null) {
+                return this;
+            }
+            try {
+                fSet.invoke(fEvent, index, convert(field, value));
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                fLogger.debug("Cannot set {} of {} event.", new Object[]{field, fType, ex});
+            }
+            return this;
+        }
+
+        @Override
+        public void commit() {
+            try {
+                fCommit.invoke(fEvent);
+            } catch (ReflectiveOperationException ex) {
+                fLogger.debug("Cannot commit {} event.", fType, ex);
+            }
+        }
+
+        private static Object convert(Field field, Object value) {
+            if (field.fType == int.class) {
+                return ((Number) value).intValue();
+            }
+            if (field.fType == long.class) {
+                return ((Number) value).longValue();
+            }
+            return value.toString();
+        }
+    }
+
+}
@@ -0,0 +1,610 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link MappedResponseCache} is a disk-backed {@link ResponseCache} which survives restarts. It is made of:
+ * <ul>
+ * <li>an append-only <em>log</em> of records, each holding a request key and the response, encoded with
+ * {@link ResponseCodec};</li>
+ * <li>an <em>index</em>, an open-addressing hash table of (key hash, log offset) slots, memory-mapped so that
+ * lookups never copy it on the heap.</li>
+ * </ul>
+ * When the log grows beyond the configured size, or the index gets too full, the cache is compacted into a new
+ * <em>generation</em>: the most recent records, up to half the maximum size, are copied to a new log with a new
+ * (possibly larger) index, and the <code>CURRENT</code> file is switched to it.
+ * <p/>
+ * Several caches, in one or more processes, may share a directory: the first one to lock it becomes the writer,
+ * the others open it read-only, ignore {@link #put(String, DatatxtResponse)}, and follow the writer to new
+ * generations. The files of a superseded generation are only deleted one compaction (or one restart) later, since
+ * readers may still have them mapped.
+ */
+public class MappedResponseCache implements ResponseCache, Closeable {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(MappedResponseCache.class);
+
+    // "DTXC"
+    private static final int MAGIC = 0x44545843;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 16;
+
+    private static final int SLOT = 16;
+
+    private static final int INITIAL_SLOTS = 4096;
+
+    private static final double MAX_LOAD = 0.7;
+
+    private static final String CURRENT = "CURRENT";
+
+    /**
+     * How long a reader waits for the writer to initialize a new cache directory, in milliseconds.
+     */
+    private static final long INIT_TIMEOUT = 5000;
+
+    private static final long INIT_POLL = 50;
+
+    /**
+     * Orders (hash, offset) index entries by decreasing log offset, i.e. newest first.
+     */
+    private static final Comparator<long[]> NEWEST_FIRST = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] e1, long[] e2) {
+            return e1[1] == e2[1] ? 0 : (e1[1] > e2[1] ? -1 : 1);
+        }
+    };
+
+    private final File fDirectory;
+
+    private final long fMaxBytes;
+
+    private final FileChannel fLockChannel;
+
+    private final FileLock fLock;
+
+    private Generation fGeneration;
+
+    private volatile boolean fClosed;
+
+    /**
+     * @param directory the directory holding the cache files. It is created if needed.
+     * @param maxBytes  the maximum size of the log, in bytes.
+     */
+    public MappedResponseCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        fDirectory = directory;
+        fMaxBytes = maxBytes;
+
+        FileChannel lockChannel = null;
+        FileLock lock = null;
+        try {
+            lockChannel = new RandomAccessFile(new File(directory, "lock"), "rw").getChannel();
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Another cache in this JVM is the writer.
+        } catch (IOException ex) {
+            fLogger.warn("Cannot lock cache directory {}, opening it read-only.", directory, ex);
+        }
+
+        if (lock == null && lockChannel != null) {
+            lockChannel.close();
+            lockChannel = null;
+        }
+        fLockChannel = lockChannel;
+        fLock = lock;
+
+        synchronized (this) {
+            long current = readCurrent();
+            if (current < 0 && isWriter()) {
+                fGeneration = Generation.create(directory, 1, INITIAL_SLOTS);
+                writeCurrent(1);
+            } else {
+                if (current < 0) {
+                    // The writer may be initializing the directory right now.
+                    current = awaitCurrent();
+                }
+                fGeneration = Generation.open(directory, current, isWriter());
+                if (isWriter()) {
+                    purge(current - 1);
+                }
+            }
+        }
+
+        fLogger.info("Opened response cache {} ({}, generation {}, {} entries).", new Object[]{directory,
+                isWriter() ? "read-write" : "read-only", fGeneration.fNumber, fGeneration.fCount});
+    }
+
+    public boolean isWriter() {
+        return fLock != null;
+    }
+
+    @Override
+    public DatatxtResponse get(String key) {
+        return get(key, hash(key));
+    }
+
+    @Override
+    public void put(String key, DatatxtResponse response) {
+        put(key, hash(key), response);
+    }
+
+    /**
+     * {@link #get(String)} with the hash of the key given, so that tests can make keys collide.
+     */
+    DatatxtResponse get(String key, long hash) {
+        if (fClosed) {
+            return null;
+        }
+        try {
+            byte[] payload;
+            synchronized (this) {
+                follow();
+                payload = fGeneration.get(key, hash);
+            }
+            return payload == null ? null : ResponseCodec.decode(payload);
+        } catch (Exception ex) {
+            fLogger.warn("Cannot read from response cache {}.", fDirectory, ex);
+            return null;
+        }
+    }
+
+    /**
+     * {@link #put(String, DatatxtResponse)} with the hash of the key given, so that tests can make keys collide.
+     */
+    void put(String key, long hash, DatatxtResponse response) {
+        if (fClosed || !isWriter()) {
+            return;
+        }
+        byte[] payload = ResponseCodec.encode(response);
+        try {
+            synchronized (this) {
+                fGeneration.put(key, hash, payload);
+                if (fGeneration.logSize() > fMaxBytes || fGeneration.fCount > fGeneration.fSlots * MAX_LOAD) {
+                    compact();
+                }
+            }
+        } catch (IOException ex) {
+            fLogger.warn("Cannot write to response cache {}.", fDirectory, ex);
+        }
+    }
+
+    /**
+     * Copies the most recent responses into another cache, typically the in-memory tier in front of this one, and
+     * loads the index in memory. The most recent responses are copied last, so that they are also the most
+     * recently used ones in an LRU cache.
+     *
+     * @param into the cache to fill.
+     * @param max  the maximum number of responses to copy.
+     * @return the number of responses copied.
+     */
+    public int preload(ResponseCache into, int max) {
+        if (fClosed) {
+            return 0;
+        }
+        List<Object[]> records = new ArrayList<>();
+        try {
+            Generation generation;
+            List<long[]> entries;
+            synchronized (this) {
+                follow();
+                generation = fGeneration;
+                entries = generation.entries();
+            }
+
+            // the slow part runs on the snapshot, without holding back get and put.
+            generation.fIndex.load();
+            Collections.sort(entries, NEWEST_FIRST);
+            for (long[] entry : entries.subList(0, Math.min(max, entries.size()))) {
+                try {
+                    records.add(generation.record(entry[1] - 1));
+                } catch (ClosedChannelException ex) {
+                    // compacted in the meantime: the records read so far will do.
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            fLogger.warn("Cannot preload response cache {}.", fDirectory, ex);
+            return 0;
+        }
+
+        int loaded = 0;
+        for (int i = records.size() - 1; i >= 0; i--) {
+            try {
+                into.put((String) records.get(i)[0], ResponseCodec.decode((byte[]) records.get(i)[1]));
+                loaded++;
+            } catch (RuntimeException ex) {
+                fLogger.warn("Skipping unreadable record of response cache {}.", fDirectory, ex);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the number of responses in the cache.
+     */
+    public synchronized int size() {
+        return fGeneration.fCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        fClosed = true;
+        fGeneration.close();
+        if (fLock != null) {
+            fLock.release();
+            fLockChannel.close();
+        }
+    }
+
+    /**
+     * Readers switch to the generation the writer moved to, if any.
+     */
+    private void follow() throws IOException {
+        if (!isWriter() && fGeneration.isSuperseded()) {
+            Generation previous = fGeneration;
+            fGeneration = Generation.open(fDirectory, readCurrent(), false);
+            previous.close();
+        }
+    }
+
+    private void compact() throws IOException {
+        Generation old = fGeneration;
+        List<long[]> entries = old.entries();
+
+        // Newest records first: keep them until half the maximum size is reached.
+        Collections.sort(entries, NEWEST_FIRST);
+
+        // Only drop records if the log is too large: a full index alone just needs more slots.
+        long budget = old.logSize() > fMaxBytes ? fMaxBytes / 2 : Long.MAX_VALUE;
+        List<long[]> kept = new ArrayList<>();
+        long size = 0;
+        for (long[] entry : entries) {
+            long length = old.recordLength(entry[1]);
+            if (size + length > budget) {
+                break;
+            }
+            size += length;
+            kept.add(entry);
+        }
+
+        int slots = INITIAL_SLOTS;
+        while (kept.size() > slots * MAX_LOAD / 2) {
+            slots *= 2;
+        }
+
+        // Re-append in log order, so that offsets still reflect recency.
+        Collections.reverse(kept);
+        Generation next = Generation.create(fDirectory, old.fNumber + 1, slots);
+        for (long[] entry : kept) {
+            next.copy(old, entry[0], entry[1]);
+        }
+        next.sync();
+        writeCurrent(next.fNumber);
+        old.supersede();
+        old.close();
+        fGeneration = next;
+        // Readers may still have the old generation mapped: only delete the ones before it.
+        purge(old.fNumber);
+
+        fLogger.info("Compacted response cache {}: kept {} of {} entries in generation {}.",
+                new Object[]{fDirectory, kept.size(), entries.size(), next.fNumber});
+    }
+
+    private long readCurrent() throws IOException {
+        File current = new File(fDirectory, CURRENT);
+        if (!current.exists()) {
+            return -1;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(current, "r")) {
+            return Long.parseLong(file.readLine().trim());
+        }
+    }
+
+    private long awaitCurrent() throws IOException {
+        long deadline = System.currentTimeMillis() + INIT_TIMEOUT;
+        long current;
+        while ((current = readCurrent()) < 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException("Cache directory " + fDirectory + " has not been initialized by a writer.");
+            }
+            try {
+                Thread.sleep(INIT_POLL);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for cache directory " + fDirectory + ".", ex);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Deletes the files of the generations before the given one. Files which cannot be deleted yet (e.g. still
+     * mapped, on platforms which forbid that) are left for the next time.
+     */
+    private void purge(long before) {
+        File[] files = fDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long number = Generation.numberOf(file.getName());
+            if (number > 0 && number < before && !file.delete()) {
+                fLogger.debug("Cannot delete {} yet, will retry after the next compaction.", file);
+            }
+        }
+    }
+
+    private void writeCurrent(long generation) throws IOException {
+        File temp = new File(fDirectory, CURRENT + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            file.write(String.valueOf(generation).getBytes(StandardCharsets.US_ASCII));
+            file.getFD().sync();
+        }
+        File current = new File(fDirectory, CURRENT);
+        if (!temp.renameTo(current)) {
+            // Not atomic on every platform, but the writer is the only one updating CURRENT.
+            if (!current.delete() || !temp.renameTo(current)) {
+                throw new IOException("Cannot update " + current);
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a key. Zero is reserved for empty slots.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * One generation of the cache: a log file and its index.
+     */
+    private static class Generation {
+
+        private final long fNumber;
+
+        private final File fLogFile;
+
+        private final File fIndexFile;
+
+        private final FileChannel fLog;
+
+        private final FileChannel fIndexChannel;
+
+        private final MappedByteBuffer fIndex;
+
+        private final int fSlots;
+
+        private int fCount;
+
+        private Generation(File directory, long number, boolean writable, int slots) throws IOException {
+            fNumber = number;
+            fLogFile = new File(directory, "log-" + number);
+            fIndexFile = new File(directory, "index-" + number);
+            String mode = writable ? "rw" : "r";
+            fLog = new RandomAccessFile(fLogFile, mode).getChannel();
+            RandomAccessFile index = new RandomAccessFile(fIndexFile, mode);
+            fIndexChannel = index.getChannel();
+
+            if (slots > 0) {
+                // A fresh, zero-filled (i.e. empty) table.
+                index.setLength(0);
+                index.setLength(HEADER + (long) slots * SLOT);
+            }
+            fIndex = fIndexChannel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, fIndexChannel.size());
+
+            if (slots > 0) {
+                fIndex.putInt(0, MAGIC);
+                fIndex.putInt(4, VERSION);
+                fIndex.putInt(8, slots);
+                fIndex.putInt(12, 0);
+            } else if (fIndex.getInt(0) != MAGIC || fIndex.getInt(4) != VERSION) {
+                throw new IOException("Not a response cache index: " + fIndexFile);
+            }
+            fSlots = fIndex.getInt(8);
+
+            for (int slot = 0; slot < fSlots; slot++) {
+                if (fIndex.getLong(HEADER + slot * SLOT + 8) != 0) {
+                    fCount++;
+                }
+            }
+        }
+
+        static Generation create(File directory, long number, int slots) throws IOException {
+            Generation generation = new Generation(directory, number, true, slots);
+            generation.fLog.truncate(0);
+            return generation;
+        }
+
+        static Generation open(File directory, long number, boolean writable) throws IOException {
+            return new Generation(directory, number, writable, 0);
+        }
+
+        boolean isSuperseded() {
+            return fIndex.getInt(12) != 0;
+        }
+
+        void supersede() {
+            fIndex.putInt(12, 1);
+            fIndex.force();
+        }
+
+        long logSize() throws IOException {
+            return fLog.size();
+        }
+
+        /**
+         * @return the generation number of a log or index file name, or <code>-1</code> for any other file.
+         */
+        static long numberOf(String name) {
+            int dash = name.indexOf('-');
+            if (dash < 0 || !(name.startsWith("log-") || name.startsWith("index-"))) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(name.substring(dash + 1));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+
+        byte[] get(String key, long hash) throws IOException {
+            for (int probe = 0, slot = slot(hash); probe < fSlots; probe++, slot = (slot + 1) % fSlots) {
+                int position = HEADER + slot * SLOT;
+                long offset = fIndex.getLong(position + 8);
+                if (offset == 0) {
+                    return null;
+                }
+                if (fIndex.getLong(position) == hash) {
+                    byte[] payload = read(offset - 1, key);
+                    if (payload != null) {
+                        return payload;
+                    }
+                }
+            }
+            return null;
+        }
+
+        void put(String key, long hash, byte[] payload) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(4 + 4 + keyBytes.length + payload.length);
+            record.putInt(4 + keyBytes.length + payload.length).putInt(keyBytes.length).put(keyBytes).put(payload);
+            record.flip();
+            long offset = append(record);
+            index(hash, key, offset);
+        }
+
+        void copy(Generation from, long hash, long offset) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate((int) from.recordLength(offset));
+            from.read(record, offset - 1);
+            String key = new String(record.array(), 8, record.getInt(4), StandardCharsets.UTF_8);
+            record.flip();
+            index(hash, key, append(record));
+        }
+
+        /**
+         * @return the (hash, offset) pairs in the index.
+         */
+        List<long[]> entries() {
+            List<long[]> entries = new ArrayList<>(fCount);
+            for (int slot = 0; slot < fSlots; slot++) {
+                long offset = fIndex.getLong(HEADER + slot * SLOT + 8);
+                if (offset != 0) {
+                    entries.add(new long[]{fIndex.getLong(HEADER + slot * SLOT), offset});
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * @return the length of the record at an index offset, including its length prefix.
+         */
+        long recordLength(long offset) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            read(length, offset - 1);
+            return 4 + length.getInt(0);
+        }
+
+        void sync() throws IOException {
+            fLog.force(false);
+            fIndex.force();
+        }
+
+        void close() throws IOException {
+            fLog.close();
+            fIndexChannel.close();
+        }
+
+        private long append(ByteBuffer record) throws IOException {
+            long offset = fLog.size();
+            while (record.hasRemaining()) {
+                fLog.write(record, offset + record.position());
+            }
+            return offset + 1;
+        }
+
+        /**
+         * Publishes an index entry: the hash is written first, the offset last, so that concurrent readers never
+         * see an offset for a record which is not in the log yet. An entry is only replaced by one with the same
+         * key: keys whose hashes collide take further slots, as {@link #get(String, long)} expects.
+         */
+        private void index(long hash, String key, long offset) throws IOException {
+            int slot = slot(hash);
+            while (true) {
+                int position = HEADER + slot * SLOT;
+                long existing = fIndex.getLong(position + 8);
+                if (existing == 0 || (fIndex.getLong(position) == hash && key.equals(record(existing - 1)[0]))) {
+                    if (existing == 0) {
+                        fCount++;
+                    }
+                    fIndex.putLong(position, hash);
+                    fIndex.putLong(position + 8, offset);
+                    return;
+                }
+                slot = (slot + 1) % fSlots;
+            }
+        }
+
+        /**
+         * @return the key and the payload of the record at a log position.
+         */
+        Object[] record(long offset) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            read(header, offset);
+            int length = header.getInt(0);
+            int keyLength = header.getInt(4);
+
+            ByteBuffer record = ByteBuffer.allocate(length - 4);
+            read(record, offset + 8);
+            byte[] bytes = record.array();
+            return new Object[]{new String(bytes, 0, keyLength, StandardCharsets.UTF_8),
+                    Arrays.copyOfRange(bytes, keyLength, bytes.length)};
+        }
+
+        private byte[] read(long offset, String key) throws IOException {
+            Object[] record = record(offset);
+            return key.equals(record[0]) ? (byte[]) record[1] : null;
+        }
+
+        private void read(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (fLog.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Truncated response cache log " + fLogFile);
+                }
+            }
+        }
+
+        private int slot(long hash) {
+            return (int) ((hash & Long.MAX_VALUE) % fSlots);
+        }
+    }
+
+}
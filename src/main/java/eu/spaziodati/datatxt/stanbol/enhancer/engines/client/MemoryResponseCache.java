@@ -0,0 +1,43 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-heap, LRU {@link ResponseCache} holding up to a fixed number of responses.
+ */
+public class MemoryResponseCache implements ResponseCache {
+
+    private final Map<String, DatatxtResponse> fResponses;
+
+    private final int fCapacity;
+
+    public MemoryResponseCache(final int capacity) {
+        fCapacity = capacity;
+        fResponses = new LinkedHashMap<String, DatatxtResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DatatxtResponse> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public synchronized DatatxtResponse get(String key) {
+        return fResponses.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, DatatxtResponse response) {
+        fResponses.put(key, response);
+    }
+
+    public synchronized int size() {
+        return fResponses.size();
+    }
+
+    public int getCapacity() {
+        return fCapacity;
+    }
+
+}
@@ -0,0 +1,63 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An {@link InputStream} counting the bytes read through it and keeping a copy of the first few of them, so that
+ * responses parsed straight from the network can still be measured and quoted in logs.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final byte[] fExcerpt;
+
+    private int fExcerptLength;
+
+    private long fCount;
+
+    MeteredInputStream(InputStream in, int excerptLength) {
+        super(in);
+        fExcerpt = new byte[excerptLength];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            record(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            record(b, off, read);
+        }
+        return read;
+    }
+
+    private void record(byte[] b, int off, int len) {
+        fCount += len;
+        int copy = Math.min(len, fExcerpt.length - fExcerptLength);
+        if (copy > 0) {
+            System.arraycopy(b, off, fExcerpt, fExcerptLength, copy);
+            fExcerptLength += copy;
+        }
+    }
+
+    long getCount() {
+        return fCount;
+    }
+
+    /**
+     * @return the first bytes read, decoded as UTF-8 (the last character may be garbled by the cut).
+     */
+    String getExcerpt() {
+        return new String(fExcerpt, 0, fExcerptLength, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,33 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+/**
+ * The lane a unit of work runs in. A share of the concurrency and of the quota is reserved for the
+ * {@link #INTERACTIVE} lane: {@link #BULK} work only gets what is left over.
+ */
+public enum Priority {
+
+    /**
+     * Someone is waiting for the result, e.g. an editor saving a document.
+     */
+    INTERACTIVE,
+    /**
+     * Background work, e.g. re-indexing a collection.
+     */
+    BULK;
+
+    /**
+     * @return the priority named by <code>value</code>, case insensitively, or <code>defaultValue</code> if
+     * <code>value</code> is <code>null</code> or not a priority.
+     */
+    public static Priority parse(String value, Priority defaultValue) {
+        if (value != null) {
+            for (Priority priority : values()) {
+                if (priority.name().equalsIgnoreCase(value.trim())) {
+                    return priority;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+}
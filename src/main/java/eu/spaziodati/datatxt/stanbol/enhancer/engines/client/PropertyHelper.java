@@ -0,0 +1,121 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.osgi.service.cm.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link PropertyHelper} reads typed values out of OSGi component configuration properties.
+ */
+public class PropertyHelper {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(PropertyHelper.class);
+
+    private Dictionary<String, Object> properties;
+
+    public PropertyHelper(Dictionary<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    public String getString(String name) throws ConfigurationException {
+        return assertNonNull(name, getString(name, null));
+    }
+
+    public String getString(String name, String defaultValue) {
+        Object value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        String result;
+        if (value instanceof String) {
+            result = (String) value;
+        } else if (value instanceof String[]) {
+            // format as CSV
+            result = Arrays.asList((String[]) value).toString().replaceAll(", ", ",").replaceAll("^\\[|\\]$", "");
+        } else {
+            // TODO: manage Object[] and iterable?
+            result = value.toString();
+        }
+
+        return result;
+    }
+
+    public List<String> getStrings(String name) {
+        Object value = properties.get(name);
+        List<String> result = new ArrayList<>();
+        if (value instanceof String[]) {
+            result.addAll(Arrays.asList((String[]) value));
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                result.add(String.valueOf(element));
+            }
+        } else if (value != null) {
+            result.addAll(Arrays.asList(value.toString().split(",")));
+        }
+
+        Iterator<String> it = result.iterator();
+        while (it.hasNext()) {
+            if (it.next().trim().isEmpty()) {
+                it.remove();
+            }
+        }
+        return result;
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        Object value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString().trim());
+    }
+
+    public int getInt(String name, int defaultValue, int min, int max) throws ConfigurationException {
+        Object value = properties.get(name);
+        int result = defaultValue;
+        if (value != null) {
+            try {
+                result = Integer.parseInt(value.toString());
+            } catch (NumberFormatException e) {
+                fLogger.warn(String.format("Unable to parse Integer property '%s' from configured value '%s'! Use default '%d' instead.", name, value, defaultValue), e);
+            }
+        }
+        if (result < min || result > max) {
+            throw new ConfigurationException(name, String.format("Value %d falls outside of [%d, %d]", result, min, max));
+        }
+        return result;
+    }
+
+    public float getFloat(String name, float defaultValue, float min, float max) {
+        Object value = properties.get(name);
+        float result = defaultValue;
+        if (value != null) {
+            try {
+                result = Float.parseFloat(value.toString());
+            } catch (NumberFormatException e) {
+                fLogger.warn(String.format("Unable to parse Float property '%s' from configured value '%s'! Use default '%f' instead.", name, value, defaultValue), e);
+            }
+        }
+        if (result < min || result > max) {
+            fLogger.warn(String.format("Configured '%s=%f' is invalid (value MUST BE IN [%f..%f]). Use default '%f' instead.", name, result, min, max, defaultValue));
+            result = defaultValue;
+        }
+        return result;
+    }
+
+    private <T> T assertNonNull(String key, T value) throws ConfigurationException {
+        if (value == null) {
+            throw new ConfigurationException(key, "cannot be null");
+        }
+        return value;
+    }
+
+}
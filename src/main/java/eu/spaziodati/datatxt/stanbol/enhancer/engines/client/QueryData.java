@@ -1,28 +1,180 @@
 package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * {@link QueryData} collects the parameters of an <code>application/x-www-form-urlencoded</code> request body and
+ * streams them, percent-encoded as UTF-8, straight to an {@link OutputStream}. Values are never copied into an
+ * intermediate encoded form, so large texts can be sent without allocating buffers proportional to their size.
+ * <p/>
+ * The encoding is the same as the one performed by {@link java.net.URLEncoder} with UTF-8.
+ */
 class QueryData {
 
-    StringBuilder query = new StringBuilder();
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
 
-    public QueryData add(String key, String value) throws UnsupportedEncodingException {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<String> fKeys = new ArrayList<>();
+
+    private final List<String> fValues = new ArrayList<>();
+
+    public QueryData add(String key, String value) {
         if (value != null) {
             value = value.trim();
             if (!value.isEmpty()) {
-                if (query.length() != 0) query.append("&");
-                query.append(key).append("=").append(URLEncoder.encode(value, StandardCharsets.UTF_8.name()));
+                fKeys.add(key);
+                fValues.add(value);
             }
         }
         return this;
     }
 
+    /**
+     * @return the exact number of bytes {@link #writeTo(OutputStream)} will write.
+     */
+    public long contentLength() {
+        long length = 0;
+        for (int i = 0; i < fKeys.size(); i++) {
+            if (i != 0) length++;
+            length += encodedLength(fKeys.get(i)) + 1 + encodedLength(fValues.get(i));
+        }
+        return length;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out);
+        for (int i = 0; i < fKeys.size(); i++) {
+            if (i != 0) encoder.raw('&');
+            encoder.encode(fKeys.get(i));
+            encoder.raw('=');
+            encoder.encode(fValues.get(i));
+        }
+        encoder.flush();
+    }
+
+    /**
+     * @return the encoded query, with the value of any parameter starting with <code>$</code> (credentials) and of
+     * parameters longer than <code>maxValueLength</code> abbreviated. Meant for logging only.
+     */
+    public String toString(int maxValueLength) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < fKeys.size(); i++) {
+            if (i != 0) query.append('&');
+            String key = fKeys.get(i);
+            String value = fValues.get(i);
+            query.append(key).append('=');
+            if (key.startsWith("$")) {
+                query.append("***");
+            } else if (value.length() > maxValueLength) {
+                query.append(value, 0, maxValueLength).append("...(").append(value.length()).append(" chars)");
+            } else {
+                query.append(value);
+            }
+        }
+        return query.toString();
+    }
+
     @Override
     public String toString() {
-        return query.toString();
+        return toString(Integer.MAX_VALUE);
     }
 
-}
+    private static boolean unreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_' || c == ' ';
+    }
+
+    private static long encodedLength(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (unreserved(c)) {
+                length += 1;
+            } else if (c < 0x80) {
+                length += 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Malformed input, replaced by '?'.
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
 
+    private static class Encoder {
+
+        private final OutputStream fOut;
+
+        private final byte[] fBuffer = new byte[BUFFER_SIZE];
+
+        private int fPosition;
+
+        public Encoder(OutputStream out) {
+            fOut = out;
+        }
+
+        public void encode(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ' ') {
+                    raw('+');
+                } else if (unreserved(c)) {
+                    raw(c);
+                } else if (c < 0x80) {
+                    escape(c);
+                } else if (c < 0x800) {
+                    escape(0xC0 | (c >> 6));
+                    escape(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    escape(0xF0 | (cp >> 18));
+                    escape(0x80 | ((cp >> 12) & 0x3F));
+                    escape(0x80 | ((cp >> 6) & 0x3F));
+                    escape(0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    escape('?');
+                } else {
+                    escape(0xE0 | (c >> 12));
+                    escape(0x80 | ((c >> 6) & 0x3F));
+                    escape(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        public void raw(char c) throws IOException {
+            if (fPosition == fBuffer.length) {
+                drain();
+            }
+            fBuffer[fPosition++] = (byte) c;
+        }
+
+        public void flush() throws IOException {
+            drain();
+            fOut.flush();
+        }
+
+        private void escape(int b) throws IOException {
+            raw('%');
+            raw(HEX[(b >> 4) & 0x0F]);
+            raw(HEX[b & 0x0F]);
+        }
+
+        private void drain() throws IOException {
+            fOut.write(fBuffer, 0, fPosition);
+            fPosition = 0;
+        }
+    }
+
+}
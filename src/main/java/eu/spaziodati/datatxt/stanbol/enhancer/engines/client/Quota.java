@@ -0,0 +1,257 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Quota} tracks the units consumed by one set of dataTXT credentials (application id) over a daily period.
+ * It is shared by all the {@link Endpoint}s using the same credentials. Requests may leave a number of units in
+ * reserve, so that {@link Priority#BULK} work never consumes the units set aside for interactive work.
+ * <p/>
+ * Besides the configured limit, the quota follows what dataTXT reports in the headers of its responses: the units
+ * each request actually cost, the units left and when they are reset. From these it can {@link #pace(long, long)}
+ * requests, spreading the units left evenly until the reset, and project when the units will run out at the
+ * current rate.
+ */
+public class Quota {
+
+    private static final long PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * How many units paced requests may send in a burst, after an idle time.
+     */
+    private static final int PACING_BURST = 10;
+
+    private final String fAppId;
+
+    private final long fLimit;
+
+    private long fPeriodStart;
+
+    private long fUsed;
+
+    /**
+     * The units left according to dataTXT, less those reserved since, or <code>-1</code> if unknown.
+     */
+    private long fLeft = -1;
+
+    /**
+     * When dataTXT resets the units, or <code>0</code> if unknown.
+     */
+    private long fResetAt;
+
+    /**
+     * The units reported as consumed by dataTXT since {@link #fRateSince}.
+     */
+    private long fReported;
+
+    private long fRateSince;
+
+    private long fNextSlot;
+
+    /**
+     * @param appId the application id this quota belongs to.
+     * @param limit the number of units available per day, or <code>0</code> for no limit.
+     */
+    public Quota(String appId, long limit) {
+        fAppId = appId;
+        fLimit = limit;
+        fPeriodStart = periodStart(System.currentTimeMillis());
+        fRateSince = System.currentTimeMillis();
+    }
+
+    public String getAppId() {
+        return fAppId;
+    }
+
+    /**
+     * Reserves units for a request.
+     *
+     * @return <code>false</code> if not enough units are left in the current period.
+     */
+    public boolean tryAcquire(long units) {
+        return tryAcquire(units, 0);
+    }
+
+    /**
+     * Reserves units for a request, as long as at least <code>reserve</code> units are left afterwards.
+     *
+     * @return <code>false</code> if not enough units are left in the current period.
+     */
+    public synchronized boolean tryAcquire(long units, long reserve) {
+        roll();
+        if (fLimit > 0 && fUsed + units > fLimit - reserve) {
+            return false;
+        }
+        if (fLeft >= 0 && fLeft - units < reserve) {
+            return false;
+        }
+        fUsed += units;
+        if (fLeft >= 0) {
+            fLeft -= units;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back units reserved with {@link #tryAcquire(long, long)} for a request dataTXT did not serve (a
+     * transport error, a server error, a throttled or rejected request).
+     */
+    public synchronized void release(long units) {
+        roll();
+        fUsed = Math.max(0, fUsed - units);
+        if (fLeft >= 0) {
+            fLeft += units;
+        }
+    }
+
+    /**
+     * Updates the quota with the unit headers of a dataTXT response.
+     *
+     * @param reserved the units reserved for the request with {@link #tryAcquire(long, long)}.
+     * @param units    the units the request cost, or <code>-1</code> if not reported.
+     * @param left     the units left, or <code>-1</code> if not reported.
+     * @param resetAt  when the units are reset, or <code>0</code> if not reported.
+     */
+    public synchronized void observe(long reserved, long units, long left, long resetAt) {
+        roll();
+        if (units >= 0) {
+            fUsed = Math.max(0, fUsed + units - reserved);
+            fReported += units;
+        }
+        if (resetAt > 0) {
+            if (fResetAt > 0 && resetAt > fResetAt) {
+                // a new period has started.
+                fReported = Math.max(0, units);
+                fRateSince = System.currentTimeMillis();
+            }
+            fResetAt = resetAt;
+        }
+        if (left >= 0) {
+            fLeft = left;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the quota is exhausted for the current period.
+     */
+    public boolean isExhausted() {
+        return isExhausted(0);
+    }
+
+    /**
+     * @return <code>true</code> if no more than <code>reserve</code> units are left in the current period.
+     */
+    public synchronized boolean isExhausted(long reserve) {
+        roll();
+        return (fLimit > 0 && fUsed >= fLimit - reserve) || (fLeft >= 0 && fLeft <= reserve);
+    }
+
+    /**
+     * @return the number of units available per day, or <code>0</code> for no limit.
+     */
+    public long getLimit() {
+        return fLimit;
+    }
+
+    /**
+     * @return the units available in the current period: the configured limit or, without one, the units
+     * consumed so far plus those dataTXT reports as left. <code>0</code> if neither is known.
+     */
+    public synchronized long getBudget() {
+        roll();
+        if (fLimit > 0) {
+            return fLimit;
+        }
+        return fLeft >= 0 ? fUsed + fLeft : 0;
+    }
+
+    /**
+     * @return the units left in the current period, or {@link Long#MAX_VALUE} if there is no limit.
+     */
+    public synchronized long getRemaining() {
+        roll();
+        long remaining = fLimit > 0 ? Math.max(0, fLimit - fUsed) : Long.MAX_VALUE;
+        return fLeft >= 0 ? Math.min(remaining, fLeft) : remaining;
+    }
+
+    /**
+     * @return when dataTXT resets the units, or <code>0</code> if it has not told yet.
+     */
+    public synchronized long getResetAt() {
+        roll();
+        return fResetAt;
+    }
+
+    /**
+     * @return when the units left will run out at the rate they have been consumed so far, or
+     * {@link Long#MAX_VALUE} if they are not expected to.
+     */
+    public synchronized long getProjectedExhaustion() {
+        long remaining = getRemaining();
+        long now = System.currentTimeMillis();
+        long consumed = fReported > 0 ? fReported : fUsed;
+        long elapsed = now - fRateSince;
+        if (remaining == Long.MAX_VALUE || consumed == 0 || elapsed <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return now + (long) (remaining * ((double) elapsed / consumed));
+    }
+
+    /**
+     * Books a time slot for a request, so that the units left last until dataTXT resets them. After an idle time,
+     * a few requests may go through right away.
+     *
+     * @param units   the units the request is expected to consume.
+     * @param maxWait the longest acceptable wait, in milliseconds.
+     * @return how long the request must wait before being sent, in milliseconds, or <code>-1</code> if that is
+     * longer than <code>maxWait</code>, in which case no slot is booked.
+     */
+    public synchronized long pace(long units, long maxWait) {
+        roll();
+        long now = System.currentTimeMillis();
+        if (fLeft < 0 || fResetAt <= now) {
+            // nothing to pace against.
+            return 0;
+        }
+
+        double interval = (double) (fResetAt - now) / Math.max(1, fLeft);
+        long next = Math.max(fNextSlot, now - (long) ((PACING_BURST - 1) * interval));
+        long wait = Math.max(0, next - now);
+        if (wait > maxWait) {
+            return -1;
+        }
+        fNextSlot = next + (long) Math.ceil(units * interval);
+        return wait;
+    }
+
+    private void roll() {
+        long now = System.currentTimeMillis();
+        long start = periodStart(now);
+        if (start != fPeriodStart) {
+            fPeriodStart = start;
+            fUsed = 0;
+            if (fResetAt == 0) {
+                fReported = 0;
+                fRateSince = now;
+            }
+        }
+        if (fResetAt > 0 && now >= fResetAt) {
+            // what dataTXT told is stale: wait for the next response to know more.
+            fLeft = -1;
+            fResetAt = 0;
+            fReported = 0;
+            fRateSince = now;
+            fNextSlot = 0;
+        }
+    }
+
+    private static long periodStart(long time) {
+        return time - (time % PERIOD);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Quota{%s, %d/%d, left=%d}", fAppId, fUsed, fLimit, fLeft);
+    }
+
+}
@@ -0,0 +1,139 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@link RequestContext} carries the time budget of one unit of work (typically the enhancement of a
+ * ContentItem) across all the dataTXT calls it makes: retries on other endpoints, sub-requests and follow-ups.
+ * It can also be cancelled, which aborts the HTTP calls in flight on its behalf. Interrupting the thread doing
+ * the work cancels it as well, at the next check. The context also carries the {@link Priority} of the work, and
+ * the document it is done for.
+ */
+public class RequestContext {
+
+    private final long fDeadline;
+
+    private final Trace fTrace;
+
+    private final Priority fPriority;
+
+    private final String fDocument;
+
+    private final Set<HttpURLConnection> fConnections = new HashSet<>();
+
+    private volatile boolean fCancelled;
+
+    /**
+     * @param timeout the time budget in milliseconds, or <code>0</code> for none.
+     */
+    public RequestContext(long timeout) {
+        this(timeout, null);
+    }
+
+    /**
+     * @param timeout the time budget in milliseconds, or <code>0</code> for none.
+     * @param trace   the trace recording the calls made, or <code>null</code> if tracing is disabled.
+     */
+    public RequestContext(long timeout, Trace trace) {
+        this(timeout, trace, Priority.INTERACTIVE);
+    }
+
+    /**
+     * @param timeout  the time budget in milliseconds, or <code>0</code> for none.
+     * @param trace    the trace recording the calls made, or <code>null</code> if tracing is disabled.
+     * @param priority the lane the work runs in.
+     */
+    public RequestContext(long timeout, Trace trace, Priority priority) {
+        this(timeout, trace, priority, null);
+    }
+
+    /**
+     * @param timeout  the time budget in milliseconds, or <code>0</code> for none.
+     * @param trace    the trace recording the calls made, or <code>null</code> if tracing is disabled.
+     * @param priority the lane the work runs in.
+     * @param document the URI of the ContentItem the work is done for, or <code>null</code> if there is none.
+     */
+    public RequestContext(long timeout, Trace trace, Priority priority, String document) {
+        fDeadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        fTrace = trace;
+        fPriority = priority;
+        fDocument = document;
+    }
+
+    public Priority getPriority() {
+        return fPriority;
+    }
+
+    /**
+     * @return the URI of the ContentItem the work is done for, or <code>null</code> if it is not known.
+     */
+    public String getDocument() {
+        return fDocument;
+    }
+
+    /**
+     * @return the trace of the work, or <code>null</code> if it is not traced.
+     */
+    public Trace getTrace() {
+        return fTrace;
+    }
+
+    /**
+     * @return the milliseconds left, or {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    public long remaining() {
+        return fDeadline == Long.MAX_VALUE ? Long.MAX_VALUE : fDeadline - System.currentTimeMillis();
+    }
+
+    public boolean isCancelled() {
+        return fCancelled || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * @throws DeadlineException if the context was cancelled or its deadline expired.
+     */
+    public void check() throws DeadlineException {
+        if (isCancelled()) {
+            throw new DeadlineException("Request cancelled.", true);
+        }
+        if (remaining() <= 0) {
+            throw new DeadlineException("Request deadline exceeded.", false);
+        }
+    }
+
+    /**
+     * Cancels the work, disconnecting the HTTP calls in flight.
+     */
+    public void cancel() {
+        HttpURLConnection[] connections;
+        synchronized (fConnections) {
+            fCancelled = true;
+            connections = fConnections.toArray(new HttpURLConnection[fConnections.size()]);
+            fConnections.clear();
+        }
+        for (HttpURLConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Registers a connection to be disconnected on cancellation.
+     *
+     * @throws DeadlineException if the context is already cancelled or expired.
+     */
+    void attach(HttpURLConnection connection) throws DeadlineException {
+        synchronized (fConnections) {
+            check();
+            fConnections.add(connection);
+        }
+    }
+
+    void detach(HttpURLConnection connection) {
+        synchronized (fConnections) {
+            fConnections.remove(connection);
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+/**
+ * A {@link ResponseCache} stores dataTXT responses by request fingerprint. Cached responses are shared, and must
+ * not be modified by their users.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface ResponseCache {
+
+    /**
+     * @return the response cached for the key, or <code>null</code>.
+     */
+    DatatxtResponse get(String key);
+
+    void put(String key, DatatxtResponse response);
+
+}
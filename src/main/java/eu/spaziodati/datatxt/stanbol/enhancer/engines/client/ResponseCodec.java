@@ -0,0 +1,318 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ResponseCodec} is a compact binary encoding of {@link DatatxtResponse}s, much smaller and faster to decode
+ * than their JSON form. An encoded response is made of:
+ * <ul>
+ * <li>a format byte ({@link #FORMAT}), which never starts a JSON document;</li>
+ * <li>a <em>string table</em>: every distinct string of the response (language, spots, titles, URIs, types...)
+ * is written once, with its longest {@link #PREFIXES prefix} from a fixed dictionary of common URI prefixes
+ * replaced by the prefix number;</li>
+ * <li>the response fields and annotations, with integers written as varints, strings as references to the
+ * table, and annotation offsets as deltas from the previous annotation.</li>
+ * </ul>
+ * The request text is not encoded, just like in the JSON form. Decoding is done field by field, without
+ * reflection.
+ */
+public final class ResponseCodec {
+
+    /**
+     * The first byte of every encoded response. Changing the layout or the dictionary requires a new value.
+     */
+    public static final byte FORMAT = (byte) 0xD1;
+
+    /**
+     * The dictionary of common URI prefixes. Entries may only be appended, and only together with a new
+     * {@link #FORMAT}.
+     */
+    private static final String[] PREFIXES = {
+            "",
+            "http://dbpedia.org/ontology/",
+            "http://dbpedia.org/resource/",
+            "http://schema.org/",
+            "http://www.wikidata.org/entity/",
+            "http://xmlns.com/foaf/0.1/",
+            "http://en.wikipedia.org/wiki/",
+            "http://it.wikipedia.org/wiki/",
+            "http://de.wikipedia.org/wiki/",
+            "http://fr.wikipedia.org/wiki/",
+            "http://es.wikipedia.org/wiki/",
+            "http://pt.wikipedia.org/wiki/",
+            "https://commons.wikimedia.org/wiki/Special:FilePath/",
+            "http://commons.wikimedia.org/wiki/Special:FilePath/",
+            "http://upload.wikimedia.org/wikipedia/commons/",
+            "https://upload.wikimedia.org/wikipedia/commons/"
+    };
+
+    private static final int ERROR = 1;
+
+    private static final int ANNOTATIONS = 2;
+
+    private ResponseCodec() {
+    }
+
+    /**
+     * @return <code>true</code> if <code>data</code> looks like an encoded response rather than, e.g., JSON.
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length > 0 && data[0] == FORMAT;
+    }
+
+    public static byte[] encode(DatatxtResponse response) {
+        Encoder encoder = new Encoder();
+
+        // Fields first, in a scratch buffer: the string table is only known at the end.
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        int flags = (response.error ? ERROR : 0) | (response.annotations != null ? ANNOTATIONS : 0);
+        writeVarint(body, flags);
+        writeVarint(body, response.time);
+        writeFloat(body, response.langConfidence);
+        encoder.writeString(body, response.lang);
+        encoder.writeString(body, response.message);
+        encoder.writeString(body, response.code);
+
+        if (response.annotations != null) {
+            writeVarint(body, response.annotations.size());
+            int previous = 0;
+            for (DatatxtResponse.Annotation annotation : response.annotations) {
+                writeVarint(body, zigzag(annotation.start - previous));
+                writeVarint(body, zigzag(annotation.end - annotation.start));
+                previous = annotation.start;
+                writeFloat(body, annotation.confidence);
+                encoder.writeString(body, annotation.spot);
+                encoder.writeString(body, annotation.title);
+                encoder.writeString(body, annotation.uri);
+                encoder.writeString(body, annotation.summary);
+                encoder.writeStrings(body, annotation.types);
+                if (annotation.image == null) {
+                    writeVarint(body, 0);
+                } else {
+                    writeVarint(body, 1);
+                    encoder.writeString(body, annotation.image.full);
+                    encoder.writeString(body, annotation.image.thumbnail);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + encoder.fTableSize + 16);
+        out.write(FORMAT);
+        writeVarint(out, encoder.fStrings.size());
+        for (String string : encoder.fStrings) {
+            int prefix = prefix(string);
+            byte[] bytes = string.substring(PREFIXES[prefix].length()).getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, prefix);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(body.toByteArray(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>data</code> is not a valid encoded response.
+     */
+    public static DatatxtResponse decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes the response starting at the position of <code>buffer</code>, which is left after its end.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a valid encoded response.
+     */
+    public static DatatxtResponse decode(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != FORMAT) {
+                throw new IllegalArgumentException("Not an encoded dataTXT response.");
+            }
+
+            int size = readVarint(buffer);
+            if (size < 0 || size > buffer.remaining()) {
+                throw new IllegalArgumentException("Corrupted string table.");
+            }
+            String[] strings = new String[size];
+            for (int i = 0; i < strings.length; i++) {
+                int prefix = readVarint(buffer);
+                int length = readVarint(buffer);
+                if (prefix < 0 || prefix >= PREFIXES.length || length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Corrupted string table.");
+                }
+                String suffix;
+                if (buffer.hasArray()) {
+                    suffix = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                            StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    suffix = new String(bytes, StandardCharsets.UTF_8);
+                }
+                strings[i] = prefix == 0 ? suffix : PREFIXES[prefix].concat(suffix);
+            }
+
+            DatatxtResponse response = new DatatxtResponse();
+            int flags = readVarint(buffer);
+            response.error = (flags & ERROR) != 0;
+            response.time = readVarint(buffer);
+            response.langConfidence = readFloat(buffer);
+            response.lang = readString(buffer, strings);
+            response.message = readString(buffer, strings);
+            response.code = readString(buffer, strings);
+
+            if ((flags & ANNOTATIONS) != 0) {
+                int count = readVarint(buffer);
+                List<DatatxtResponse.Annotation> annotations = new ArrayList<>(Math.min(count, buffer.remaining()));
+                int previous = 0;
+                for (int i = 0; i < count; i++) {
+                    DatatxtResponse.Annotation annotation = new DatatxtResponse.Annotation();
+                    annotation.start = previous + unzigzag(readVarint(buffer));
+                    annotation.end = annotation.start + unzigzag(readVarint(buffer));
+                    previous = annotation.start;
+                    annotation.confidence = readFloat(buffer);
+                    annotation.spot = readString(buffer, strings);
+                    annotation.title = readString(buffer, strings);
+                    annotation.uri = readString(buffer, strings);
+                    annotation.summary = readString(buffer, strings);
+                    annotation.types = readStrings(buffer, strings);
+                    if (readVarint(buffer) != 0) {
+                        annotation.image = new DatatxtResponse.Image();
+                        annotation.image.full = readString(buffer, strings);
+                        annotation.image.thumbnail = readString(buffer, strings);
+                    }
+                    annotations.add(annotation);
+                }
+                response.annotations = annotations;
+            }
+            return response;
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated encoded dataTXT response.", ex);
+        }
+    }
+
+    /**
+     * @return the number of the longest dictionary prefix of <code>string</code>, or <code>0</code>.
+     */
+    private static int prefix(String string) {
+        int best = 0;
+        for (int i = 1; i < PREFIXES.length; i++) {
+            if (PREFIXES[i].length() > PREFIXES[best].length() && string.startsWith(PREFIXES[i])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int reference = readVarint(buffer);
+        if (reference < 0 || reference > strings.length) {
+            throw new IllegalArgumentException("Invalid string reference " + reference + ".");
+        }
+        return reference == 0 ? null : strings[reference - 1];
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer, String[] strings) {
+        int count = readVarint(buffer);
+        if (count == 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(Math.min(count - 1, buffer.remaining()));
+        for (int i = 1; i < count; i++) {
+            list.add(readString(buffer, strings));
+        }
+        return list;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    private static float readFloat(ByteBuffer buffer) {
+        int bits = (buffer.get() & 0xFF) << 24 | (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8
+                | (buffer.get() & 0xFF);
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Collects the string table while the fields are written.
+     */
+    private static class Encoder {
+
+        private final Map<String, Integer> fReferences = new HashMap<>();
+
+        private final List<String> fStrings = new ArrayList<>();
+
+        private int fTableSize;
+
+        void writeString(ByteArrayOutputStream out, String string) {
+            if (string == null) {
+                writeVarint(out, 0);
+                return;
+            }
+            Integer reference = fReferences.get(string);
+            if (reference == null) {
+                fStrings.add(string);
+                reference = fStrings.size();
+                fReferences.put(string, reference);
+                fTableSize += string.length() + 2;
+            }
+            writeVarint(out, reference);
+        }
+
+        /**
+         * Collections are written as their size plus one, so that <code>0</code> stands for <code>null</code>.
+         */
+        void writeStrings(ByteArrayOutputStream out, Collection<String> strings) {
+            if (strings == null) {
+                writeVarint(out, 0);
+                return;
+            }
+            writeVarint(out, strings.size() + 1);
+            for (String string : strings) {
+                writeString(out, string);
+            }
+        }
+    }
+
+}
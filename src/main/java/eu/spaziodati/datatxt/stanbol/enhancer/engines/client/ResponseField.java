@@ -0,0 +1,42 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.Set;
+
+/**
+ * The optional parts of a dataTXT annotation, requested through the <code>include</code> parameter. Identifiers,
+ * titles, spots, offsets and confidences are always returned.
+ */
+public enum ResponseField {
+
+    TYPES("types"),
+    IMAGE("image"),
+    ABSTRACT("abstract");
+
+    private final String fName;
+
+    private ResponseField(String name) {
+        fName = name;
+    }
+
+    /**
+     * @return the name of this field, both in the <code>include</code> parameter and in the response.
+     */
+    public String getName() {
+        return fName;
+    }
+
+    /**
+     * @return the value of the <code>include</code> parameter requesting the given fields.
+     */
+    public static String include(Set<ResponseField> fields) {
+        StringBuilder include = new StringBuilder();
+        for (ResponseField field : fields) {
+            if (include.length() > 0) {
+                include.append(',');
+            }
+            include.append(field.fName);
+        }
+        return include.toString();
+    }
+
+}
@@ -0,0 +1,241 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Image;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link ResponseReader} parses dataTXT responses straight from a stream with a {@link JsonReader}. Unlike
+ * binding the whole document with Gson, it skips the members we don't use, and the optional fields outside of its
+ * projection, without building strings or objects for them.
+ * <p/>
+ * The reader can also be bounded to a number of annotations: beyond it, only those with the highest confidence are
+ * kept, in a bounded heap, so that a response with thousands of annotations never holds them all. Spots shorter than
+ * the minimum length are dropped before they are ranked, so that they don't take the place of longer ones.
+ */
+public class ResponseReader {
+
+    private final boolean fTypes;
+
+    private final boolean fImage;
+
+    private final boolean fAbstract;
+
+    private final int fMaxAnnotations;
+
+    private final int fMinLength;
+
+    public ResponseReader() {
+        this(EnumSet.allOf(ResponseField.class));
+    }
+
+    /**
+     * @param fields the optional fields to read. The others are left <code>null</code> even if present.
+     */
+    public ResponseReader(Set<ResponseField> fields) {
+        this(fields, 0);
+    }
+
+    /**
+     * @param fields         the optional fields to read. The others are left <code>null</code> even if present.
+     * @param maxAnnotations the number of annotations kept, at most, or <code>0</code> to keep them all.
+     */
+    public ResponseReader(Set<ResponseField> fields, int maxAnnotations) {
+        this(fields, maxAnnotations, 0);
+    }
+
+    /**
+     * @param fields         the optional fields to read. The others are left <code>null</code> even if present.
+     * @param maxAnnotations the number of annotations kept, at most, or <code>0</code> to keep them all.
+     * @param minLength      the length of the shortest spot kept among the bounded annotations.
+     */
+    public ResponseReader(Set<ResponseField> fields, int maxAnnotations, int minLength) {
+        fTypes = fields.contains(ResponseField.TYPES);
+        fImage = fields.contains(ResponseField.IMAGE);
+        fAbstract = fields.contains(ResponseField.ABSTRACT);
+        fMaxAnnotations = maxAnnotations;
+        fMinLength = minLength;
+    }
+
+    public DatatxtResponse read(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        try {
+            return response(json);
+        } catch (IllegalStateException ex) {
+            // JsonReader reports unexpected tokens this way.
+            throw new IOException("Malformed response: " + ex.getMessage(), ex);
+        }
+    }
+
+    private DatatxtResponse response(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+
+        DatatxtResponse response = new DatatxtResponse();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "time":
+                    response.time = json.nextInt();
+                    break;
+                case "lang":
+                    response.lang = json.nextString();
+                    break;
+                case "langConfidence":
+                    response.langConfidence = (float) json.nextDouble();
+                    break;
+                case "annotations":
+                    response.annotations = annotations(json);
+                    break;
+                case "error":
+                    response.error = json.nextBoolean();
+                    break;
+                case "message":
+                    response.message = json.nextString();
+                    break;
+                case "code":
+                    response.code = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return response;
+    }
+
+    private Collection<Annotation> annotations(JsonReader json) throws IOException {
+        if (fMaxAnnotations > 0) {
+            return top(json);
+        }
+        List<Annotation> annotations = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            annotations.add(annotation(json));
+        }
+        json.endArray();
+        return annotations;
+    }
+
+    /**
+     * @return the {@link #fMaxAnnotations} most confident annotations with a spot of {@link #fMinLength} at least,
+     * in the order of their offsets.
+     */
+    private Collection<Annotation> top(JsonReader json) throws IOException {
+        TopAnnotations top = new TopAnnotations(fMaxAnnotations, fMinLength);
+        json.beginArray();
+        while (json.hasNext()) {
+            top.offer(annotation(json));
+        }
+        json.endArray();
+        return top.toList();
+    }
+
+    private Annotation annotation(JsonReader json) throws IOException {
+        Annotation annotation = new Annotation();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "start":
+                    annotation.start = json.nextInt();
+                    break;
+                case "end":
+                    annotation.end = json.nextInt();
+                    break;
+                case "spot":
+                    annotation.spot = json.nextString();
+                    break;
+                case "confidence":
+                    annotation.confidence = (float) json.nextDouble();
+                    break;
+                case "title":
+                    annotation.title = json.nextString();
+                    break;
+                case "uri":
+                    annotation.uri = json.nextString();
+                    break;
+                case "abstract":
+                    if (fAbstract) {
+                        annotation.summary = json.nextString();
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                case "types":
+                    if (fTypes) {
+                        annotation.types = strings(json);
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                case "image":
+                    if (fImage) {
+                        annotation.image = image(json);
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return annotation;
+    }
+
+    private Collection<String> strings(JsonReader json) throws IOException {
+        List<String> strings = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            strings.add(json.nextString());
+        }
+        json.endArray();
+        return strings;
+    }
+
+    private Image image(JsonReader json) throws IOException {
+        Image image = new Image();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "full":
+                    image.full = json.nextString();
+                    break;
+                case "thumbnail":
+                    image.thumbnail = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return image;
+    }
+
+}
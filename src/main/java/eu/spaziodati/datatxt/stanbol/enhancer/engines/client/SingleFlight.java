@@ -0,0 +1,70 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link SingleFlight} collapses identical requests in flight at the same time into a single dataTXT call: the
+ * first caller for a key makes the call, the others wait for its outcome. A call which runs out of time, or is
+ * cancelled, only fails its own caller: the others make the call again, within their own time budget.
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<String, FutureTask<DatatxtResponse>> fCalls = new ConcurrentHashMap<>();
+
+    /**
+     * @param key     the fingerprint of the request.
+     * @param call    the call to make if no identical request is in flight.
+     * @param context the context of the caller, bounding how long it waits for somebody else's call.
+     * @return the response, possibly shared with other callers.
+     */
+    public DatatxtResponse execute(String key, Callable<DatatxtResponse> call, RequestContext context)
+            throws DatatxtException {
+        while (true) {
+            FutureTask<DatatxtResponse> task = new FutureTask<>(call);
+            FutureTask<DatatxtResponse> inFlight = fCalls.putIfAbsent(key, task);
+            boolean leader = inFlight == null;
+            if (leader) {
+                try {
+                    task.run();
+                } finally {
+                    fCalls.remove(key, task);
+                }
+                inFlight = task;
+            }
+
+            try {
+                long remaining = context.remaining();
+                return remaining == Long.MAX_VALUE ? inFlight.get() : inFlight.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                if (!leader && ex.getCause() instanceof DeadlineException) {
+                    // the deadline, or the cancellation, was the leader's: ours may leave time for a call of our own.
+                    context.check();
+                    continue;
+                }
+                if (ex.getCause() instanceof DatatxtException) {
+                    throw (DatatxtException) ex.getCause();
+                }
+                throw new DatatxtException("Error performing request.", ex.getCause());
+            } catch (TimeoutException ex) {
+                throw new DeadlineException("Request deadline exceeded.", false);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DeadlineException("Request cancelled.", true);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct requests in flight.
+     */
+    public int size() {
+        return fCalls.size();
+    }
+
+}
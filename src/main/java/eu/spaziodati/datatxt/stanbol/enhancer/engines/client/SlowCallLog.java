@@ -0,0 +1,54 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * {@link SlowCallLog} logs a sample of the dataTXT calls slower than a threshold, with truncated excerpts of the
+ * request and of the response. Credentials are never logged. Unlike the debug log, it is meant to stay on in
+ * production.
+ */
+class SlowCallLog {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(SlowCallLog.class);
+
+    /**
+     * Characters kept from each request parameter, and bytes kept from the response.
+     */
+    static final int EXCERPT_LENGTH = 256;
+
+    private final long fThreshold;
+
+    private final float fSampleRate;
+
+    private final Random fRandom = new Random();
+
+    /**
+     * @param threshold  the latency, in milliseconds, above which calls are slow. <code>0</code> disables the log.
+     * @param sampleRate the fraction of slow calls which are logged.
+     */
+    SlowCallLog(long threshold, float sampleRate) {
+        fThreshold = threshold;
+        fSampleRate = sampleRate;
+    }
+
+    boolean isEnabled() {
+        return fThreshold > 0 && fSampleRate > 0 && fLogger.isWarnEnabled();
+    }
+
+    /**
+     * Logs a call if it is slow and sampled.
+     */
+    void completed(Endpoint endpoint, long latency, int responseCode, QueryData query, MeteredInputStream response) {
+        if (latency < fThreshold || fRandom.nextFloat() >= fSampleRate) {
+            return;
+        }
+        fLogger.warn(String.format("Slow dataTXT call: %dms, endpoint=%s, app_id=%s, code=%d, response size=%s, "
+                        + "query=%s, response=%s", latency, endpoint.getUrl(), endpoint.getAppId(), responseCode,
+                response != null ? response.getCount() : "?", query.toString(EXCERPT_LENGTH),
+                response != null ? response.getExcerpt() : ""));
+    }
+
+}
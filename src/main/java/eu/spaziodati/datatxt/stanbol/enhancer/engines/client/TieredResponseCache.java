@@ -0,0 +1,64 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A two-level {@link ResponseCache}: a small, fast cache in front of a larger, slower one. Hits in the second level
+ * are promoted to the first, and new responses are stored in both.
+ */
+public class TieredResponseCache implements ResponseCache, Closeable {
+
+    private final ResponseCache fFirst;
+
+    private final ResponseCache fSecond;
+
+    public TieredResponseCache(ResponseCache first, ResponseCache second) {
+        fFirst = first;
+        fSecond = second;
+    }
+
+    @Override
+    public DatatxtResponse get(String key) {
+        DatatxtResponse response = fFirst.get(key);
+        if (response == null) {
+            response = fSecond.get(key);
+            if (response != null) {
+                fFirst.put(key, response);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public void put(String key, DatatxtResponse response) {
+        fFirst.put(key, response);
+        fSecond.put(key, response);
+    }
+
+    /**
+     * Fills the first level with the most recent responses of the second, if the levels support it.
+     *
+     * @return the number of responses copied.
+     */
+    public int preload() {
+        if (fFirst instanceof MemoryResponseCache && fSecond instanceof MappedResponseCache) {
+            return ((MappedResponseCache) fSecond).preload(fFirst, ((MemoryResponseCache) fFirst).getCapacity());
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fFirst instanceof Closeable) {
+                ((Closeable) fFirst).close();
+            }
+        } finally {
+            if (fSecond instanceof Closeable) {
+                ((Closeable) fSecond).close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the most confident of a stream of annotations in a bounded heap, so that selecting the top <i>k</i> of
+ * <i>n</i> annotations takes <i>O(k)</i> memory whatever <i>n</i>.
+ */
+class TopAnnotations {
+
+    private static final Comparator<Annotation> BY_CONFIDENCE = new Comparator<Annotation>() {
+        @Override
+        public int compare(Annotation a, Annotation b) {
+            return Float.compare(a.confidence, b.confidence);
+        }
+    };
+
+    private static final Comparator<Annotation> BY_START = new Comparator<Annotation>() {
+        @Override
+        public int compare(Annotation a, Annotation b) {
+            return Integer.compare(a.start, b.start);
+        }
+    };
+
+    private final int fCount;
+
+    private final int fMinLength;
+
+    private final PriorityQueue<Annotation> fHeap;
+
+    /**
+     * @param count the number of annotations kept, greater than <code>0</code>.
+     */
+    TopAnnotations(int count) {
+        this(count, 0);
+    }
+
+    /**
+     * @param count     the number of annotations kept, greater than <code>0</code>.
+     * @param minLength the length of the shortest spot kept. Shorter spots don't take a place in the heap.
+     */
+    TopAnnotations(int count, int minLength) {
+        fCount = count;
+        fMinLength = minLength;
+        fHeap = new PriorityQueue<>(count, BY_CONFIDENCE);
+    }
+
+    void offer(Annotation annotation) {
+        if (annotation.spot != null && annotation.spot.length() < fMinLength) {
+            return;
+        }
+        if (fHeap.size() < fCount) {
+            fHeap.add(annotation);
+        } else if (annotation.confidence > fHeap.peek().confidence) {
+            fHeap.poll();
+            fHeap.add(annotation);
+        }
+    }
+
+    /**
+     * @return the annotations kept, in the order of their offsets.
+     */
+    List<Annotation> toList() {
+        List<Annotation> annotations = new ArrayList<>(fHeap);
+        Collections.sort(annotations, BY_START);
+        return annotations;
+    }
+
+}
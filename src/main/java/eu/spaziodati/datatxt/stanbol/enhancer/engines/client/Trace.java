@@ -0,0 +1,94 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Trace} records where the time of one enhancement went, as a list of named, timed {@link Span}s with
+ * attributes (the HTTP calls made, the response sizes, the annotation counts...). It is carried by the
+ * {@link RequestContext} of the enhancement; when tracing is disabled there is no trace at all, and nothing is
+ * recorded.
+ */
+public class Trace {
+
+    /**
+     * A timed step of an enhancement.
+     */
+    public static class Span {
+
+        private final String fName;
+
+        private final long fStart = System.nanoTime();
+
+        private final StringBuilder fAttributes = new StringBuilder();
+
+        private volatile long fDuration = -1;
+
+        private Span(String name) {
+            fName = name;
+        }
+
+        public Span attr(String name, Object value) {
+            synchronized (fAttributes) {
+                fAttributes.append(fAttributes.length() > 0 ? ", " : "").append(name).append('=').append(value);
+            }
+            return this;
+        }
+
+        public void end() {
+            fDuration = System.nanoTime() - fStart;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(fName);
+            synchronized (fAttributes) {
+                if (fAttributes.length() > 0) {
+                    sb.append('[').append(fAttributes).append(']');
+                }
+            }
+            long duration = fDuration;
+            return sb.append('=').append(duration < 0 ? "?" : (duration / 1000000) + "ms").toString();
+        }
+    }
+
+    private final String fId;
+
+    private final long fStart = System.nanoTime();
+
+    private final List<Span> fSpans = new ArrayList<>();
+
+    /**
+     * @param id what is being traced, e.g. the ContentItem URI.
+     */
+    public Trace(String id) {
+        fId = id;
+    }
+
+    public Span start(String name) {
+        Span span = new Span(name);
+        synchronized (fSpans) {
+            fSpans.add(span);
+        }
+        return span;
+    }
+
+    /**
+     * @return the milliseconds elapsed since the trace started.
+     */
+    public long elapsed() {
+        return (System.nanoTime() - fStart) / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(fId).append(' ').append(elapsed()).append("ms:");
+        synchronized (fSpans) {
+            for (int i = 0; i < fSpans.size(); i++) {
+                sb.append(i > 0 ? ", " : " ").append(fSpans.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+}
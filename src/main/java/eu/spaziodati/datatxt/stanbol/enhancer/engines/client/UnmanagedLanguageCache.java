@@ -0,0 +1,78 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link UnmanagedLanguageCache} remembers the languages dataTXT reported as unmanaged, so that requests for them
+ * can be refused locally instead of paying for a round trip that is bound to fail. Entries expire after a
+ * configurable TTL, so languages added on the server side are eventually picked up again.
+ * <p/>
+ * Optionally, a list of supported languages can be configured: any language outside of it is then refused
+ * without ever contacting the service.
+ */
+public class UnmanagedLanguageCache {
+
+    private final Set<String> fSupported;
+
+    private final long fTtl;
+
+    private final ConcurrentMap<String, Long> fUnmanaged = new ConcurrentHashMap<>();
+
+    /**
+     * @param supported the languages known to be supported, or an empty collection if any language should be tried.
+     * @param ttl       how long (in milliseconds) a language reported as unmanaged is remembered.
+     */
+    public UnmanagedLanguageCache(Collection<String> supported, long ttl) {
+        fSupported = new HashSet<>();
+        for (String language : supported) {
+            fSupported.add(normalize(language));
+        }
+        fTtl = ttl;
+    }
+
+    /**
+     * @return <code>true</code> if the language is known not to be supported by dataTXT. A <code>null</code>
+     * language (to be detected by dataTXT itself) is never known to be unsupported.
+     */
+    public boolean isUnmanaged(String language) {
+        if (language == null || language.isEmpty()) {
+            return false;
+        }
+
+        language = normalize(language);
+        if (!fSupported.isEmpty() && !fSupported.contains(language)) {
+            return true;
+        }
+
+        Long expiry = fUnmanaged.get(language);
+        if (expiry == null) {
+            return false;
+        }
+
+        if (expiry < System.currentTimeMillis()) {
+            fUnmanaged.remove(language, expiry);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records that dataTXT reported the language as unmanaged.
+     */
+    public void unmanaged(String language) {
+        if (language != null && !language.isEmpty() && fTtl > 0) {
+            fUnmanaged.put(normalize(language), System.currentTimeMillis() + fTtl);
+        }
+    }
+
+    private String normalize(String language) {
+        return language.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,211 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.gazetteer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm">Aho-Corasick</a> automaton
+ * which finds all the occurrences of a set of patterns in a text in a single, linear pass. Matching is case
+ * insensitive and only reports occurrences delimited by word boundaries.
+ * <p/>
+ * Transitions are stored in flat, per-state sorted arrays, so the automaton takes little memory and can be shared
+ * by any number of threads.
+ */
+public class AhoCorasick {
+
+    /**
+     * An occurrence of a pattern in a text.
+     */
+    public static class Match {
+
+        public final int start;
+
+        public final int end;
+
+        public final int pattern;
+
+        public Match(int start, int end, int pattern) {
+            this.start = start;
+            this.end = end;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Match{%d, %d, %d}", start, end, pattern);
+        }
+    }
+
+    // Transitions of state s are in [fFirst[s], fFirst[s + 1]), sorted by character.
+    private final int[] fFirst;
+    private final char[] fLabel;
+    private final int[] fTarget;
+
+    private final int[] fFail;
+
+    // The pattern recognized in a state (-1 if none), and the next state on the failure chain recognizing one.
+    private final int[] fOutput;
+    private final int[] fDictionary;
+
+    private final int[] fLength;
+
+    /**
+     * @param patterns the patterns to look for. The index of a pattern in the list identifies it in {@link Match}es.
+     */
+    public AhoCorasick(List<String> patterns) {
+        // Build the trie.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> output = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        output.add(-1);
+
+        fLength = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            fLength[p] = pattern.length();
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    output.add(-1);
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (pattern.length() > 0) {
+                output.set(state, p);
+            }
+        }
+
+        // Flatten the transitions.
+        int states = trie.size();
+        int edges = 0;
+        for (TreeMap<Character, Integer> transitions : trie) {
+            edges += transitions.size();
+        }
+        fFirst = new int[states + 1];
+        fLabel = new char[edges];
+        fTarget = new int[edges];
+        fOutput = new int[states];
+        int edge = 0;
+        for (int s = 0; s < states; s++) {
+            fFirst[s] = edge;
+            fOutput[s] = output.get(s);
+            for (Map.Entry<Character, Integer> transition : trie.get(s).entrySet()) {
+                fLabel[edge] = transition.getKey();
+                fTarget[edge] = transition.getValue();
+                edge++;
+            }
+        }
+        fFirst[states] = edge;
+
+        // Compute failure and dictionary links, breadth first.
+        fFail = new int[states];
+        fDictionary = new int[states];
+        Arrays.fill(fDictionary, -1);
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int e = fFirst[0]; e < fFirst[1]; e++) {
+            queue.add(fTarget[e]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = fFirst[state]; e < fFirst[state + 1]; e++) {
+                int child = fTarget[e];
+                int fail = fFail[state];
+                int next;
+                while ((next = next(fail, fLabel[e])) < 0 && fail != 0) {
+                    fail = fFail[fail];
+                }
+                fFail[child] = next < 0 ? 0 : next;
+                int failState = fFail[child];
+                fDictionary[child] = fOutput[failState] >= 0 ? failState : fDictionary[failState];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Finds the occurrences of the patterns in a text which are delimited by word boundaries. Overlapping
+     * occurrences are resolved by preferring the leftmost, then the longest one.
+     */
+    public List<Match> match(String text) {
+        List<Match> matches = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0) {
+                state = fFail[state];
+            }
+            state = next < 0 ? 0 : next;
+
+            if (i + 1 < text.length() && isWordChar(text.charAt(i + 1))) {
+                continue;
+            }
+
+            for (int s = fOutput[state] >= 0 ? state : fDictionary[state]; s >= 0; s = fDictionary[s]) {
+                int pattern = fOutput[s];
+                int start = i + 1 - fLength[pattern];
+                if (start == 0 || !isWordChar(text.charAt(start - 1))) {
+                    matches.add(new Match(start, i + 1, pattern));
+                }
+            }
+        }
+
+        return resolveOverlaps(matches);
+    }
+
+    private List<Match> resolveOverlaps(List<Match> matches) {
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match m1, Match m2) {
+                if (m1.start != m2.start) {
+                    return m1.start < m2.start ? -1 : 1;
+                }
+                return m1.end == m2.end ? 0 : (m1.end > m2.end ? -1 : 1);
+            }
+        });
+
+        List<Match> selected = new ArrayList<>();
+        int end = 0;
+        for (Match match : matches) {
+            if (match.start >= end) {
+                selected.add(match);
+                end = match.end;
+            }
+        }
+        return selected;
+    }
+
+    private int next(int state, char c) {
+        int low = fFirst[state];
+        int high = fFirst[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = fLabel[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return fTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+}
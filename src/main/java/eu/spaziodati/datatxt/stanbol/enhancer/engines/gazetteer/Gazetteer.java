@@ -0,0 +1,302 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.gazetteer;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Gazetteer} is a local annotator built from the annotations dataTXT returned so far. It remembers, for each
+ * language and spot, the entity it was most confidently linked to, and compiles the spots of each language into an
+ * {@link AhoCorasick} automaton which annotates a text in linear time. Annotations produced locally get a reduced
+ * confidence, as they lack the disambiguation dataTXT performs.
+ * <p/>
+ * The automata are rebuilt in the background, at most once per {@link #REBUILD_INTERVAL}, when new spots have been
+ * learned. Texts are annotated with the automaton at hand in the meantime, so that enhancements never wait for a
+ * rebuild.
+ */
+public class Gazetteer {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(Gazetteer.class);
+
+    /**
+     * The factor applied to the confidence of the entities when annotating locally.
+     */
+    public static final float CONFIDENCE_FACTOR = 0.5f;
+
+    /**
+     * Minimum interval, in milliseconds, between two rebuilds of the automaton.
+     */
+    public static final long REBUILD_INTERVAL = 60000;
+
+    private static final int MIN_SPOT_LENGTH = 2;
+
+    /**
+     * Rebuilds the automata of all the gazetteers, on a single thread which goes away when idle.
+     */
+    private static final Executor BUILDER = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "datatxt-gazetteer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final int fCapacity;
+
+    // language|spot (lower case) -> entry; guarded by itself.
+    private final Map<String, Entry> fEntries = new LinkedHashMap<>();
+
+    // language -> automaton.
+    private volatile Map<String, Compiled> fCompiled;
+
+    private volatile boolean fDirty;
+
+    private volatile long fLastBuild;
+
+    private final AtomicBoolean fBuilding = new AtomicBoolean();
+
+    private final Executor fBuilder;
+
+    /**
+     * @param capacity the maximum number of spots to remember.
+     */
+    public Gazetteer(int capacity) {
+        this(capacity, BUILDER);
+    }
+
+    /**
+     * @param builder the executor rebuilding the automaton.
+     */
+    public Gazetteer(int capacity, Executor builder) {
+        fCapacity = capacity;
+        fBuilder = builder;
+    }
+
+    /**
+     * Learns the spots and entities of a dataTXT response, for the language of the response. Responses without a
+     * language teach nothing.
+     */
+    public void learn(DatatxtResponse response) {
+        String lang = response != null ? language(response.lang) : null;
+        if (lang == null || response.annotations == null) {
+            return;
+        }
+
+        synchronized (fEntries) {
+            for (Annotation annotation : response.annotations) {
+                if (annotation.uri == null || annotation.spot == null
+                        || annotation.spot.length() < MIN_SPOT_LENGTH) {
+                    continue;
+                }
+                String spot = lowerCase(annotation.spot);
+                String key = lang + '|' + spot;
+                Entry entry = fEntries.get(key);
+                if (entry == null) {
+                    if (fEntries.size() >= fCapacity) {
+                        continue;
+                    }
+                } else if (entry.fConfidence >= annotation.confidence) {
+                    continue;
+                }
+                fEntries.put(key, new Entry(lang, spot, annotation));
+                fDirty = true;
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * @return the number of spots known to the gazetteer.
+     */
+    public int size() {
+        synchronized (fEntries) {
+            return fEntries.size();
+        }
+    }
+
+    /**
+     * Annotates a text with the spots known in its language.
+     *
+     * @param lang the language of the text, if known. Otherwise, the language the most spots are known in is
+     *             assumed.
+     * @return a response holding the local annotations, with offsets relative to the text.
+     */
+    public DatatxtResponse annotate(String text, String lang) {
+        rebuild();
+        Map<String, Compiled> automata = fCompiled;
+        lang = language(lang);
+        if (lang == null && automata != null) {
+            lang = largest(automata);
+        }
+        Compiled compiled = automata != null && lang != null ? automata.get(lang) : null;
+
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = lang;
+        response.text = text;
+        response.annotations = new ArrayList<>();
+
+        if (compiled != null) {
+            for (AhoCorasick.Match match : compiled.fAutomaton.match(text)) {
+                Annotation annotation = compiled.fEntries.get(match.pattern).fAnnotation.shift(0);
+                annotation.start = match.start;
+                annotation.end = match.end;
+                annotation.spot = text.substring(match.start, match.end);
+                annotation.confidence *= CONFIDENCE_FACTOR;
+                response.annotations.add(annotation);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Schedules a rebuild of the automaton if spots were learned since the last one, it is not too early for
+     * another one and none is running yet.
+     */
+    private void rebuild() {
+        if (!fDirty || (fCompiled != null && System.currentTimeMillis() - fLastBuild < REBUILD_INTERVAL)
+                || !fBuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            fBuilder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        build();
+                    } finally {
+                        fBuilding.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            fBuilding.set(false);
+            fLogger.warn("Cannot rebuild the gazetteer.", ex);
+        }
+    }
+
+    private void build() {
+        List<Entry> entries;
+        synchronized (fEntries) {
+            if (!fDirty) {
+                return;
+            }
+            entries = new ArrayList<>(fEntries.values());
+            fDirty = false;
+            fLastBuild = System.currentTimeMillis();
+        }
+
+        Map<String, List<Entry>> languages = new HashMap<>();
+        for (Entry entry : entries) {
+            List<Entry> language = languages.get(entry.fLang);
+            if (language == null) {
+                language = new ArrayList<>();
+                languages.put(entry.fLang, language);
+            }
+            language.add(entry);
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, Compiled> automata = new HashMap<>();
+        for (Map.Entry<String, List<Entry>> language : languages.entrySet()) {
+            List<String> patterns = new ArrayList<>(language.getValue().size());
+            for (Entry entry : language.getValue()) {
+                patterns.add(entry.fSpot);
+            }
+            automata.put(language.getKey(), new Compiled(new AhoCorasick(patterns), language.getValue()));
+        }
+        fCompiled = automata;
+        fLogger.debug("Compiled gazetteer with {} spots in {} languages in {} ms.", new Object[]{entries.size(),
+                automata.size(), System.currentTimeMillis() - start});
+    }
+
+    /**
+     * @return the language with the most spots.
+     */
+    private static String largest(Map<String, Compiled> automata) {
+        String largest = null;
+        int size = 0;
+        for (Map.Entry<String, Compiled> automaton : automata.entrySet()) {
+            if (automaton.getValue().fEntries.size() > size) {
+                largest = automaton.getKey();
+                size = automaton.getValue().fEntries.size();
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @return the primary subtag of a language tag, in lower case, e.g. <code>en</code> for <code>en-GB</code>, or
+     * <code>null</code> if there is none.
+     */
+    private static String language(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        String lang = tag.trim().toLowerCase(Locale.ROOT);
+        int end = 0;
+        while (end < lang.length() && Character.isLetter(lang.charAt(end))) {
+            end++;
+        }
+        return end > 0 ? lang.substring(0, end) : null;
+    }
+
+    /**
+     * Lower-cases a string char by char, as {@link AhoCorasick} does, so that its length is preserved.
+     */
+    private static String lowerCase(String spot) {
+        char[] chars = spot.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static class Entry {
+
+        private final String fLang;
+
+        private final String fSpot;
+
+        private final float fConfidence;
+
+        private final Annotation fAnnotation;
+
+        public Entry(String lang, String spot, Annotation annotation) {
+            fLang = lang;
+            fSpot = spot;
+            fConfidence = annotation.confidence;
+            fAnnotation = annotation.shift(-annotation.start);
+        }
+    }
+
+    private static class Compiled {
+
+        private final AhoCorasick fAutomaton;
+
+        private final List<Entry> fEntries;
+
+        public Compiled(AhoCorasick automaton, List<Entry> entries) {
+            fAutomaton = automaton;
+            fEntries = entries;
+        }
+    }
+
+}
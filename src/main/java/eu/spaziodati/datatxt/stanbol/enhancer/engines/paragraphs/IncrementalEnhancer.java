@@ -0,0 +1,214 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtException;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link IncrementalEnhancer} re-enhances edited documents by sending to dataTXT only the paragraphs that changed
+ * since the previous enhancement of the same document. The annotations of the unchanged paragraphs are kept from
+ * the previous run, with their offsets shifted to the new paragraph positions.
+ * <p/>
+ * The state of the most recently enhanced documents is kept in a bounded LRU map keyed by document id.
+ */
+public class IncrementalEnhancer {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(IncrementalEnhancer.class);
+
+    /**
+     * If more than this fraction of the text changed, the whole text is sent, so that dataTXT sees the full
+     * context.
+     */
+    private static final double MAX_CHANGED_RATIO = 0.5;
+
+    private static final String SEPARATOR = "\n\n";
+
+    private final Map<String, DocumentState> fDocuments;
+
+    public IncrementalEnhancer(final int capacity) {
+        fDocuments = new LinkedHashMap<String, DocumentState>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DocumentState> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Enhances a document, reusing the annotations from its previous enhancement for the paragraphs that did not
+     * change.
+     *
+     * @param id     a stable identifier of the document (e.g. the ContentItem URI).
+     * @param text   the current text of the document.
+     * @param lang   the language of the text, or <code>null</code> to let dataTXT detect it.
+     * @param client the client used for the paragraphs which have to be sent.
+     */
+    public DatatxtResponse enhance(String id, String text, String lang, DatatxtClient client) throws DatatxtException {
+        return enhance(id, text, lang, client, client.newContext());
+    }
+
+    /**
+     * Same as {@link #enhance(String, String, String, DatatxtClient)}, with all the requests made within the time
+     * budget of a {@link RequestContext}.
+     */
+    public DatatxtResponse enhance(String id, String text, String lang, DatatxtClient client,
+                                   RequestContext context) throws DatatxtException {
+        List<Paragraph> paragraphs = Paragraphs.split(text);
+        DatatxtResponse response;
+        Map<String, List<Annotation>> known;
+
+        DatatxtResponse partial = null;
+        DocumentState previous = state(id);
+        List<Paragraph> changed = previous == null ? paragraphs : changed(paragraphs, previous.fAnnotations);
+        int changedLength = length(changed);
+
+        if (previous == null || changedLength > text.length() * MAX_CHANGED_RATIO) {
+            fLogger.debug("Enhancing {} in full ({} of {} chars changed).",
+                    new Object[]{id, changedLength, text.length()});
+            response = client.doRequest(text, lang, context);
+            known = byFingerprint(paragraphs, Paragraphs.distribute(paragraphs, response.annotations));
+        } else {
+            fLogger.debug("Enhancing {} incrementally ({} of {} chars changed).",
+                    new Object[]{id, changedLength, text.length()});
+            known = new HashMap<>(previous.fAnnotations);
+            if (!changed.isEmpty()) {
+                partial = enhanceChanged(text, changed, lang != null ? lang : previous.fLang, client, context,
+                        known);
+            }
+            response = merge(text, paragraphs, known, previous, partial);
+        }
+
+        // Only keep the paragraphs the document currently has.
+        Map<String, List<Annotation>> current = new HashMap<>();
+        for (Paragraph paragraph : paragraphs) {
+            List<Annotation> annotations = known.get(paragraph.getFingerprint());
+            if (annotations != null) {
+                current.put(paragraph.getFingerprint(), annotations);
+            }
+        }
+
+        synchronized (fDocuments) {
+            fDocuments.put(id, new DocumentState(response.lang, response.langConfidence, current));
+        }
+
+        response.text = text;
+        return response;
+    }
+
+    /**
+     * Forgets the state of a document, so that it will be enhanced in full next time.
+     */
+    public void forget(String id) {
+        synchronized (fDocuments) {
+            fDocuments.remove(id);
+        }
+    }
+
+    private DocumentState state(String id) {
+        synchronized (fDocuments) {
+            return fDocuments.get(id);
+        }
+    }
+
+    /**
+     * Sends the changed paragraphs in a single request, joined by blank lines, and records their annotations.
+     */
+    private DatatxtResponse enhanceChanged(String text, List<Paragraph> changed, String lang, DatatxtClient client,
+                                           RequestContext context, Map<String, List<Annotation>> known)
+            throws DatatxtException {
+        StringBuilder composite = new StringBuilder();
+        List<Paragraph> shifted = new ArrayList<>(changed.size());
+        for (Paragraph paragraph : changed) {
+            if (composite.length() > 0) {
+                composite.append(SEPARATOR);
+            }
+            int start = composite.length();
+            composite.append(text, paragraph.getStart(), paragraph.getEnd());
+            shifted.add(new Paragraph(start, composite.length(), paragraph.getFingerprint()));
+        }
+
+        DatatxtResponse partial = client.doRequest(composite.toString(), lang, context);
+        known.putAll(byFingerprint(shifted, Paragraphs.distribute(shifted, partial.annotations)));
+        return partial;
+    }
+
+    private DatatxtResponse merge(String text, List<Paragraph> paragraphs, Map<String, List<Annotation>> known,
+                                  DocumentState previous, DatatxtResponse partial) {
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = previous.fLang;
+        response.langConfidence = previous.fLangConfidence;
+        if (partial != null) {
+            response.time = partial.time;
+            if (partial.lang != null) {
+                response.lang = partial.lang;
+                response.langConfidence = partial.langConfidence;
+            }
+        }
+
+        response.annotations = new ArrayList<>();
+        for (Paragraph paragraph : paragraphs) {
+            List<Annotation> annotations = known.get(paragraph.getFingerprint());
+            if (annotations != null) {
+                for (Annotation annotation : annotations) {
+                    response.annotations.add(annotation.shift(paragraph.getStart()));
+                }
+            }
+        }
+        return response;
+    }
+
+    private List<Paragraph> changed(List<Paragraph> paragraphs, Map<String, List<Annotation>> known) {
+        List<Paragraph> changed = new ArrayList<>();
+        Map<String, Boolean> seen = new HashMap<>();
+        for (Paragraph paragraph : paragraphs) {
+            String fingerprint = paragraph.getFingerprint();
+            if (!known.containsKey(fingerprint) && seen.put(fingerprint, Boolean.TRUE) == null) {
+                changed.add(paragraph);
+            }
+        }
+        return changed;
+    }
+
+    private Map<String, List<Annotation>> byFingerprint(List<Paragraph> paragraphs,
+                                                        List<List<Annotation>> annotations) {
+        Map<String, List<Annotation>> result = new HashMap<>();
+        for (int i = 0; i < paragraphs.size(); i++) {
+            result.put(paragraphs.get(i).getFingerprint(), annotations.get(i));
+        }
+        return result;
+    }
+
+    private int length(List<Paragraph> paragraphs) {
+        int length = 0;
+        for (Paragraph paragraph : paragraphs) {
+            length += paragraph.length();
+        }
+        return length;
+    }
+
+    private static class DocumentState {
+
+        private final String fLang;
+
+        private final float fLangConfidence;
+
+        private final Map<String, List<Annotation>> fAnnotations;
+
+        public DocumentState(String lang, float langConfidence, Map<String, List<Annotation>> annotations) {
+            fLang = lang;
+            fLangConfidence = langConfidence;
+            fAnnotations = annotations;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+/**
+ * A {@link Paragraph} is a block of a text, delimited by blank lines, identified by a fingerprint of its content.
+ */
+public class Paragraph {
+
+    private final int fStart;
+
+    private final int fEnd;
+
+    private final String fFingerprint;
+
+    public Paragraph(int start, int end, String fingerprint) {
+        fStart = start;
+        fEnd = end;
+        fFingerprint = fingerprint;
+    }
+
+    /**
+     * @return the offset of the first character of the paragraph in the text.
+     */
+    public int getStart() {
+        return fStart;
+    }
+
+    /**
+     * @return the offset following the last character of the paragraph in the text.
+     */
+    public int getEnd() {
+        return fEnd;
+    }
+
+    public int length() {
+        return fEnd - fStart;
+    }
+
+    /**
+     * @return a digest of the paragraph content. Paragraphs with the same content have the same fingerprint.
+     */
+    public String getFingerprint() {
+        return fFingerprint;
+    }
+
+    public boolean contains(int start, int end) {
+        return start >= fStart && end <= fEnd;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Paragraph{%d, %d, %s}", fStart, fEnd, fFingerprint);
+    }
+
+}
@@ -0,0 +1,238 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtException;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ParagraphReuseEnhancer} reuses annotations across documents for the paragraphs they have in common, such
+ * as disclaimers, bylines and footers. The annotations of every paragraph enhanced are stored by fingerprint, in a
+ * bounded LRU map shared by all documents; a paragraph seen before gets the stored annotations, with their offsets
+ * shifted, and only the novel paragraphs are sent to dataTXT, each with some of the surrounding text so that
+ * dataTXT still sees their context.
+ * <p/>
+ * Short paragraphs are always sent: without their context, their annotations could be wrong elsewhere.
+ */
+public class ParagraphReuseEnhancer {
+
+    private static final Logger fLogger = LoggerFactory.getLogger(ParagraphReuseEnhancer.class);
+
+    /**
+     * If more than this fraction of the text is novel, the whole text is sent.
+     */
+    private static final double MAX_NOVEL_RATIO = 0.5;
+
+    /**
+     * Paragraphs shorter than this are never reused.
+     */
+    private static final int MIN_LENGTH = 40;
+
+    /**
+     * The characters of surrounding text sent on either side of a novel paragraph.
+     */
+    private static final int CONTEXT = 300;
+
+    private static final String SEPARATOR = "\n\n";
+
+    private final Map<String, StoredParagraph> fParagraphs;
+
+    private final AtomicLong fReused = new AtomicLong();
+
+    private final AtomicLong fSent = new AtomicLong();
+
+    /**
+     * @param capacity the number of paragraphs whose annotations are stored.
+     */
+    public ParagraphReuseEnhancer(final int capacity) {
+        fParagraphs = new LinkedHashMap<String, StoredParagraph>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredParagraph> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Enhances a text, reusing the stored annotations of the paragraphs seen before.
+     *
+     * @param lang    the language of the text, or <code>null</code> to let dataTXT detect it.
+     * @param client  the client used for the paragraphs which have to be sent.
+     * @param context the time budget of the requests.
+     */
+    public DatatxtResponse enhance(String text, String lang, DatatxtClient client, RequestContext context)
+            throws DatatxtException {
+        List<Paragraph> paragraphs = Paragraphs.split(text);
+        Map<String, StoredParagraph> known = new HashMap<>();
+        List<Paragraph> novel = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Paragraph paragraph : paragraphs) {
+            StoredParagraph stored = lookup(paragraph, lang);
+            if (stored != null) {
+                known.put(paragraph.getFingerprint(), stored);
+            } else if (seen.add(paragraph.getFingerprint())) {
+                novel.add(paragraph);
+            }
+        }
+
+        int novelLength = length(novel);
+        if (known.isEmpty() || novelLength > text.length() * MAX_NOVEL_RATIO) {
+            DatatxtResponse response = client.doRequest(text, lang, context);
+            store(paragraphs, Paragraphs.distribute(paragraphs, response.annotations), response, lang);
+            fSent.addAndGet(paragraphs.size());
+            return response;
+        }
+
+        fLogger.debug("Reusing the annotations of {} of {} paragraphs ({} of {} chars novel).",
+                new Object[]{paragraphs.size() - novel.size(), paragraphs.size(), novelLength, text.length()});
+        fReused.addAndGet(paragraphs.size() - novel.size());
+        fSent.addAndGet(novel.size());
+        DatatxtResponse partial = novel.isEmpty() ? null : enhanceNovel(text, novel, lang, client, context, known);
+        return merge(text, paragraphs, known, lang, partial);
+    }
+
+    /**
+     * @return how many paragraphs got stored annotations so far.
+     */
+    public long getReused() {
+        return fReused.get();
+    }
+
+    /**
+     * @return how many paragraphs were sent to dataTXT so far.
+     */
+    public long getSent() {
+        return fSent.get();
+    }
+
+    /**
+     * Sends the novel paragraphs in a single request, each in a window of its surrounding text, with the windows
+     * joined by blank lines, and stores their annotations.
+     */
+    private DatatxtResponse enhanceNovel(String text, List<Paragraph> novel, String lang, DatatxtClient client,
+                                         RequestContext context, Map<String, StoredParagraph> known)
+            throws DatatxtException {
+        StringBuilder composite = new StringBuilder();
+        List<Paragraph> shifted = new ArrayList<>(novel.size());
+        int next = 0;
+        for (int[] window : Paragraphs.windows(text, novel, CONTEXT)) {
+            if (composite.length() > 0) {
+                composite.append(SEPARATOR);
+            }
+            int delta = composite.length() - window[0];
+            composite.append(text, window[0], window[1]);
+            for (; next < novel.size() && novel.get(next).getEnd() <= window[1]; next++) {
+                Paragraph paragraph = novel.get(next);
+                shifted.add(new Paragraph(paragraph.getStart() + delta, paragraph.getEnd() + delta,
+                        paragraph.getFingerprint()));
+            }
+        }
+
+        DatatxtResponse partial = client.doRequest(composite.toString(), lang, context);
+        known.putAll(store(shifted, Paragraphs.distribute(shifted, partial.annotations), partial, lang));
+        return partial;
+    }
+
+    private DatatxtResponse merge(String text, List<Paragraph> paragraphs, Map<String, StoredParagraph> known,
+                                  String lang, DatatxtResponse partial) {
+        DatatxtResponse response = new DatatxtResponse();
+        if (partial != null) {
+            response.time = partial.time;
+            response.lang = partial.lang;
+            response.langConfidence = partial.langConfidence;
+        }
+
+        response.annotations = new ArrayList<>();
+        for (Paragraph paragraph : paragraphs) {
+            StoredParagraph stored = known.get(paragraph.getFingerprint());
+            if (stored == null) {
+                continue;
+            }
+            if (response.lang == null) {
+                response.lang = lang != null ? lang : stored.fLang;
+                response.langConfidence = stored.fLangConfidence;
+            }
+            for (Annotation annotation : stored.fAnnotations) {
+                response.annotations.add(annotation.shift(paragraph.getStart()));
+            }
+        }
+        response.text = text;
+        return response;
+    }
+
+    /**
+     * @return the stored annotations of a paragraph, if it is long enough to be reused and was enhanced in the
+     * same language, or <code>null</code>.
+     */
+    private StoredParagraph lookup(Paragraph paragraph, String lang) {
+        if (paragraph.length() < MIN_LENGTH) {
+            return null;
+        }
+        StoredParagraph stored;
+        synchronized (fParagraphs) {
+            stored = fParagraphs.get(paragraph.getFingerprint());
+        }
+        return stored != null && (lang == null || lang.equals(stored.fLang)) ? stored : null;
+    }
+
+    /**
+     * Stores the annotations of the paragraphs of a response.
+     *
+     * @param lang the language the request was made in, if the response does not tell.
+     * @return the stored paragraphs, by fingerprint.
+     */
+    private Map<String, StoredParagraph> store(List<Paragraph> paragraphs, List<List<Annotation>> annotations,
+                                               DatatxtResponse response, String lang) {
+        String responseLang = response.lang != null ? response.lang : lang;
+        Map<String, StoredParagraph> stored = new HashMap<>();
+        for (int i = 0; i < paragraphs.size(); i++) {
+            stored.put(paragraphs.get(i).getFingerprint(),
+                    new StoredParagraph(responseLang, response.langConfidence, annotations.get(i)));
+        }
+        synchronized (fParagraphs) {
+            for (int i = 0; i < paragraphs.size(); i++) {
+                if (paragraphs.get(i).length() >= MIN_LENGTH) {
+                    String fingerprint = paragraphs.get(i).getFingerprint();
+                    fParagraphs.put(fingerprint, stored.get(fingerprint));
+                }
+            }
+        }
+        return stored;
+    }
+
+    private int length(List<Paragraph> paragraphs) {
+        int length = 0;
+        for (Paragraph paragraph : paragraphs) {
+            length += paragraph.length();
+        }
+        return length;
+    }
+
+    private static class StoredParagraph {
+
+        private final String fLang;
+
+        private final float fLangConfidence;
+
+        private final List<Annotation> fAnnotations;
+
+        public StoredParagraph(String lang, float langConfidence, List<Annotation> annotations) {
+            fLang = lang;
+            fLangConfidence = langConfidence;
+            fAnnotations = annotations;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Fingerprint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utility methods for splitting texts into {@link Paragraph}s and distributing annotations over them.
+ */
+public class Paragraphs {
+
+    private static final Pattern SEPARATOR = Pattern.compile("\\n[ \\t\\x0B\\f\\r]*\\n\\s*");
+
+    private Paragraphs() {
+    }
+
+    /**
+     * Splits a text into paragraphs separated by one or more blank lines. The separators themselves do not belong
+     * to any paragraph.
+     */
+    public static List<Paragraph> split(String text) {
+        List<Paragraph> paragraphs = new ArrayList<>();
+        Matcher matcher = SEPARATOR.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            add(paragraphs, text, start, matcher.start());
+            start = matcher.end();
+        }
+        add(paragraphs, text, start, text.length());
+        return paragraphs;
+    }
+
+    /**
+     * Assigns annotations to the paragraph containing them, with offsets made relative to the paragraph start.
+     * Annotations spanning more than one paragraph are dropped.
+     *
+     * @return for each paragraph, in order, the list of its annotations.
+     */
+    public static List<List<Annotation>> distribute(List<Paragraph> paragraphs, Collection<Annotation> annotations) {
+        List<List<Annotation>> result = new ArrayList<>(paragraphs.size());
+        for (int i = 0; i < paragraphs.size(); i++) {
+            result.add(new ArrayList<Annotation>());
+        }
+
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                int index = find(paragraphs, annotation.start);
+                if (index >= 0 && paragraphs.get(index).contains(annotation.start, annotation.end)) {
+                    result.get(index).add(annotation.shift(-paragraphs.get(index).getStart()));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the windows of text to send for some paragraphs, each with up to <code>context</code> characters
+     * of the surrounding text on either side, cut at whitespace. Overlapping windows are merged.
+     *
+     * @param paragraphs the paragraphs, in text order.
+     * @return the <code>{start, end}</code> offsets of the windows, in text order.
+     */
+    public static List<int[]> windows(String text, List<Paragraph> paragraphs, int context) {
+        List<int[]> windows = new ArrayList<>();
+        int[] last = null;
+        for (Paragraph paragraph : paragraphs) {
+            int start = Math.max(0, paragraph.getStart() - context);
+            while (start > 0 && start < paragraph.getStart() && !Character.isWhitespace(text.charAt(start - 1))) {
+                start++;
+            }
+            int end = Math.min(text.length(), paragraph.getEnd() + context);
+            while (end < text.length() && end > paragraph.getEnd() && !Character.isWhitespace(text.charAt(end))) {
+                end--;
+            }
+
+            if (last != null && start <= last[1]) {
+                last[1] = Math.max(last[1], end);
+            } else {
+                last = new int[]{start, end};
+                windows.add(last);
+            }
+        }
+        return windows;
+    }
+
+    private static int find(List<Paragraph> paragraphs, int offset) {
+        int low = 0;
+        int high = paragraphs.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Paragraph paragraph = paragraphs.get(mid);
+            if (offset < paragraph.getStart()) {
+                high = mid - 1;
+            } else if (offset >= paragraph.getEnd()) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static void add(List<Paragraph> paragraphs, String text, int start, int end) {
+        if (end > start) {
+            paragraphs.add(new Paragraph(start, end, Fingerprint.of(text, start, end)));
+        }
+    }
+
+}
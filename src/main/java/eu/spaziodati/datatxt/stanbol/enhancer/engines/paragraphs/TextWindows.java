@@ -0,0 +1,266 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link TextWindows} splits a text read from a character stream into windows of bounded size, cut preferably at
+ * blank lines, then at line breaks, then at whitespace, so that texts too large to be held in memory can be
+ * enhanced one window at a time.
+ * <p/>
+ * Offsets refer to the text trimmed like {@link String#trim()}, as the engine does for texts read in full. Since
+ * the trimmed length is only known at the end of the stream, the text is read twice: a first {@link #scan(Reader,
+ * int)} measures it and keeps its head and tail, then a {@link WindowReader} splits it.
+ */
+public class TextWindows {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private TextWindows() {
+    }
+
+    /**
+     * What a first pass over a text learns about it.
+     */
+    public static class Scan {
+
+        /**
+         * The number of leading whitespace characters trimmed away.
+         */
+        public final long leading;
+
+        /**
+         * The length of the trimmed text.
+         */
+        public final int length;
+
+        /**
+         * The first characters of the trimmed text.
+         */
+        public final String head;
+
+        /**
+         * The last characters of the trimmed text.
+         */
+        public final String tail;
+
+        private Scan(long leading, int length, String head, String tail) {
+            this.leading = leading;
+            this.length = length;
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * A piece of the trimmed text, starting at <code>offset</code>.
+     */
+    public static class Window {
+
+        public final int offset;
+
+        public final String text;
+
+        private Window(int offset, String text) {
+            this.offset = offset;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Measures a text, keeping only the head and the tail of the trimmed text.
+     *
+     * @param context the number of characters kept for the head and for the tail.
+     */
+    public static Scan scan(Reader reader, int context) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder head = new StringBuilder(context);
+        // the tail of what we read up to the last non-whitespace character, and the whitespace read after it.
+        Ring tail = new Ring(context);
+        Ring pending = new Ring(context);
+
+        long position = 0;
+        long first = -1;
+        long last = -1;
+
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++, position++) {
+                char c = buffer[i];
+                if (c <= ' ') {
+                    if (first >= 0) {
+                        pending.add(c);
+                        if (head.length() < context) {
+                            head.append(c);
+                        }
+                    }
+                    continue;
+                }
+
+                if (first < 0) {
+                    first = position;
+                }
+                if (head.length() < context) {
+                    head.append(c);
+                }
+                last = position;
+                pending.drainTo(tail);
+                tail.add(c);
+            }
+        }
+
+        if (first < 0) {
+            return new Scan(position, 0, "", "");
+        }
+
+        long length = last - first + 1;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Text too long: " + length + " characters.");
+        }
+
+        // trailing whitespace may have made it into the head of a short text.
+        head.setLength((int) Math.min(head.length(), length));
+        return new Scan(first, (int) length, head.toString(), tail.toString());
+    }
+
+    /**
+     * Reads the windows of a text.
+     */
+    public static class WindowReader {
+
+        private final Reader fReader;
+
+        private final char[] fBuffer;
+
+        private final int fLength;
+
+        private long fSkip;
+
+        private int fFill;
+
+        private int fOffset;
+
+        private int fConsumed;
+
+        /**
+         * @param reader the text, from its very beginning.
+         * @param scan   the scan of the same text.
+         * @param size   the maximum window size, in characters.
+         */
+        public WindowReader(Reader reader, Scan scan, int size) {
+            fReader = reader;
+            fBuffer = new char[size];
+            fLength = scan.length;
+            fSkip = scan.leading;
+        }
+
+        /**
+         * @return the next window, or <code>null</code> at the end of the text.
+         */
+        public Window next() throws IOException {
+            while (fSkip > 0) {
+                long skipped = fReader.skip(fSkip);
+                if (skipped <= 0) {
+                    throw new IOException("Text shorter than scanned.");
+                }
+                fSkip -= skipped;
+            }
+
+            // fill up the buffer, without going past the end of the trimmed text.
+            int limit = (int) Math.min(fBuffer.length, fFill + (long) (fLength - fConsumed));
+            while (fFill < limit) {
+                int read = fReader.read(fBuffer, fFill, limit - fFill);
+                if (read == -1) {
+                    throw new IOException("Text shorter than scanned.");
+                }
+                fFill += read;
+                fConsumed += read;
+            }
+
+            if (fFill == 0) {
+                return null;
+            }
+
+            int cut = fConsumed == fLength ? fFill : cut(fBuffer, fFill);
+            Window window = new Window(fOffset, new String(fBuffer, 0, cut));
+
+            System.arraycopy(fBuffer, cut, fBuffer, 0, fFill - cut);
+            fFill -= cut;
+            fOffset += cut;
+            return window;
+        }
+
+        /**
+         * @return where to cut a full buffer: after the last blank line, line break or whitespace in its second
+         * half, in this order of preference, or at its end.
+         */
+        private static int cut(char[] buffer, int fill) {
+            int min = fill / 2;
+            int line = -1;
+            int space = -1;
+            for (int i = fill - 1; i >= min; i--) {
+                char c = buffer[i];
+                if (c == '\n') {
+                    for (int j = i - 1; j >= min && buffer[j] <= ' '; j--) {
+                        if (buffer[j] == '\n') {
+                            return i + 1;
+                        }
+                    }
+                    if (line < 0) {
+                        line = i + 1;
+                    }
+                } else if (space < 0 && c <= ' ') {
+                    space = i + 1;
+                }
+            }
+            if (line >= 0) {
+                return line;
+            }
+            if (space >= 0) {
+                return space;
+            }
+            // don't split a surrogate pair.
+            return Character.isHighSurrogate(buffer[fill - 1]) ? fill - 1 : fill;
+        }
+    }
+
+    /**
+     * A circular buffer holding the last characters added to it.
+     */
+    private static class Ring {
+
+        private final char[] fChars;
+
+        private long fCount;
+
+        Ring(int capacity) {
+            fChars = new char[capacity];
+        }
+
+        void add(char c) {
+            if (fChars.length > 0) {
+                fChars[(int) (fCount % fChars.length)] = c;
+            }
+            fCount++;
+        }
+
+        void drainTo(Ring other) {
+            int size = (int) Math.min(fCount, fChars.length);
+            for (long i = fCount - size; i < fCount; i++) {
+                other.add(fChars[(int) (i % fChars.length)]);
+            }
+            fCount = 0;
+        }
+
+        @Override
+        public String toString() {
+            int size = (int) Math.min(fCount, fChars.length);
+            StringBuilder sb = new StringBuilder(size);
+            for (long i = fCount - size; i < fCount; i++) {
+                sb.append(fChars[(int) (i % fChars.length)]);
+            }
+            return sb.toString();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
+import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link CompositeTranslator} feeds each {@link DatatxtResponse} to several translators in turn, e.g. to write
+ * annotations in both FISE and FAM from a single dataTXT call. The translators share a {@link TranslationSupport},
+ * which describes each linked entity only once per response, whatever the number of translators, and lets each of
+ * them add its own language annotation.
+ */
+public class CompositeTranslator implements ITranslator {
+
+    private final TranslationSupport fSupport;
+
+    private final List<ITranslator> fTranslators;
+
+    /**
+     * @param support     the support shared by the translators.
+     * @param translators the translators, in the order they write.
+     */
+    public CompositeTranslator(TranslationSupport support, List<ITranslator> translators) {
+        fSupport = support;
+        fTranslators = new ArrayList<>(translators);
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text,
+                          DatatxtResponse datatxtResponse) {
+        translate(item, engine, TextView.of(text), datatxtResponse);
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                          DatatxtResponse datatxtResponse) {
+        fSupport.beginPass(item);
+        try {
+            for (ITranslator translator : fTranslators) {
+                translator.translate(item, engine, text, datatxtResponse);
+            }
+        } finally {
+            fSupport.endPass();
+        }
+    }
+
+    @Override
+    public Set<ResponseField> getRequiredFields() {
+        Set<ResponseField> fields = EnumSet.noneOf(ResponseField.class);
+        for (ITranslator translator : fTranslators) {
+            fields.addAll(translator.getRequiredFields());
+        }
+        return fields;
+    }
+
+}
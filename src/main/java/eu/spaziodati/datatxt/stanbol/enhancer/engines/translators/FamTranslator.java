@@ -3,6 +3,7 @@ package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
 import eu.fusepool.p3.vocab.FAM;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtNexEngine;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
 import org.apache.clerezza.rdf.core.*;
 import org.apache.clerezza.rdf.core.impl.PlainLiteralImpl;
 import org.apache.clerezza.rdf.core.impl.TripleImpl;
@@ -11,7 +12,10 @@ import org.apache.stanbol.enhancer.servicesapi.ContentItem;
 import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 import org.apache.stanbol.enhancer.servicesapi.helper.EnhancementEngineHelper;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
 
 import static eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.AnnotationConstants.*;
 import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.DC_LANGUAGE;
@@ -40,6 +44,12 @@ public class FamTranslator implements ITranslator {
 
     @Override
     public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text, DatatxtResponse response) {
+        translate(item, engine, TextView.of(text), response);
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                          DatatxtResponse response) {
         MGraph graph = item.getValue();
 
         UriRef context = createContext(item);
@@ -51,7 +61,7 @@ public class FamTranslator implements ITranslator {
             fSupport.addEntity(item, rawAnnotation, response.lang);
 
             // Creates FAM annotation.
-            UriRef selector = selector(item, context, response.text, rawAnnotation, language);
+            UriRef selector = selector(item, context, text, rawAnnotation, language);
             UriRef body = body(item, rawAnnotation, selector, language);
             UriRef target = target(item, body, selector);
             annotation(item, body, target);
@@ -60,6 +70,11 @@ public class FamTranslator implements ITranslator {
 
     }
 
+    @Override
+    public Set<ResponseField> getRequiredFields() {
+        return fSupport.getRequiredFields();
+    }
+
     private UriRef body(Pair<UriRef, MGraph> item, DatatxtResponse.Annotation annotation, UriRef selector, Language lang) {
         MGraph graph = item.getValue();
 
@@ -75,8 +90,9 @@ public class FamTranslator implements ITranslator {
         add(graph, body, FAM.selector, selector);
         add(graph, body, FAM.extracted_from, item.getKey());
 
-        if (annotation.types != null) {
-            for (String type : annotation.types) {
+        Collection<String> types = fSupport.getTypes(annotation);
+        if (types != null) {
+            for (String type : types) {
                 add(graph, body, FAM.entity_type, new UriRef(type));
             }
         }
@@ -84,7 +100,7 @@ public class FamTranslator implements ITranslator {
         return body;
     }
 
-    private UriRef selector(Pair<UriRef, MGraph> item, UriRef contextUri, String text,
+    private UriRef selector(Pair<UriRef, MGraph> item, UriRef contextUri, TextView text,
                             DatatxtResponse.Annotation annotation, Language lang) {
         MGraph graph = item.getValue();
         UriRef selector = createRFC5147URI(item.getKey(), annotation.start, annotation.end);
@@ -96,11 +112,11 @@ public class FamTranslator implements ITranslator {
         add(graph, selector, NIF_END_INDEX, literal(annotation.end));
         add(graph, selector, NIF_ANCHOR_OF, literal(annotation.spot, lang));
 
-        add(graph, selector, NIF_HEAD, literal(head(text, 0, SELECTION_HEAD_TAIL), lang));
-        add(graph, selector, NIF_TAIL, literal(tail(text, text.length(), SELECTION_HEAD_TAIL), lang));
+        add(graph, selector, NIF_HEAD, literal(text.head(SELECTION_HEAD_TAIL), lang));
+        add(graph, selector, NIF_TAIL, literal(text.tail(SELECTION_HEAD_TAIL), lang));
 
-        add(graph, selector, NIF_BEFORE, literal(tail(text, annotation.start, SELECTION_PREFIX_SUFFIX), lang));
-        add(graph, selector, NIF_AFTER, literal(head(text, annotation.end, SELECTION_PREFIX_SUFFIX), lang));
+        add(graph, selector, NIF_BEFORE, literal(text.before(annotation.start, SELECTION_PREFIX_SUFFIX), lang));
+        add(graph, selector, NIF_AFTER, literal(text.after(annotation.end, SELECTION_PREFIX_SUFFIX), lang));
 
         add(graph, selector, NIF_REFERENCE_CONTEXT, contextUri);
 
@@ -121,6 +137,10 @@ public class FamTranslator implements ITranslator {
     private Language addLanguage(Pair<UriRef, MGraph> item, DatatxtResponse response) {
         String lang = fSupport.getLanguage(item);
         // If there's already a language, leave it alone.
+        if (lang == null) {
+            // as we left it, when a ContentItem is translated a batch or a window at a time.
+            lang = getLanguage(item);
+        }
         if (lang != null) {
             return new Language(lang);
         }
@@ -142,12 +162,19 @@ public class FamTranslator implements ITranslator {
         return new Language(response.lang);
     }
 
-    private String head(String text, int offset, int length) {
-        return text.substring(offset, Math.min(offset + length, text.length()));
-    }
-
-    private String tail(String text, int offset, int length) {
-        return text.substring(Math.max(0, offset - length), offset);
+    /**
+     * @return the language of the {@link FAM#LanguageAnnotation} extracted from the ContentItem, if any.
+     */
+    private String getLanguage(Pair<UriRef, MGraph> item) {
+        MGraph graph = item.getValue();
+        Iterator<Triple> annotations = graph.filter(null, RDF_TYPE, FAM.LanguageAnnotation);
+        while (annotations.hasNext()) {
+            NonLiteral annotation = annotations.next().getSubject();
+            if (graph.filter(annotation, FAM.extracted_from, item.getKey()).hasNext()) {
+                return EnhancementEngineHelper.getString(graph, annotation, DC_LANGUAGE);
+            }
+        }
+        return null;
     }
 
     private UriRef target(Pair<UriRef, MGraph> item, UriRef body, UriRef selector) {
@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
 
 import org.apache.clerezza.rdf.core.Language;
 import org.apache.clerezza.rdf.core.LiteralFactory;
@@ -19,6 +20,9 @@ import org.apache.stanbol.enhancer.servicesapi.rdf.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Set;
+
 import static eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
 import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.*;
 import static org.apache.stanbol.enhancer.servicesapi.rdf.TechnicalClasses.DCTERMS_LINGUISTIC_SYSTEM;
@@ -44,6 +48,12 @@ public class FiseTranslator implements ITranslator {
     }
 
     public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text, DatatxtResponse datatxtResponse) {
+        translate(item, engine, TextView.of(text), datatxtResponse);
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                          DatatxtResponse datatxtResponse) {
         if(LOG.isDebugEnabled()){
             UriRef id = item != null ? item.getKey() : null;
             LOG.debug(String.format("DatatxtAnnotator: Enhance ContentItem with FISE Annotations: ContentItem=%s, " +
@@ -62,14 +72,24 @@ public class FiseTranslator implements ITranslator {
         }
     }
 
+    @Override
+    public Set<ResponseField> getRequiredFields() {
+        return fSupport.getRequiredFields();
+    }
+
     public static UriRef createTextAnnotation(Pair<UriRef, MGraph> item, EnhancementEngine engine, Annotation a, String text, Language lang) {
+        return createTextAnnotation(item, engine, a, TextView.of(text), lang);
+    }
+
+    public static UriRef createTextAnnotation(Pair<UriRef, MGraph> item, EnhancementEngine engine, Annotation a,
+                                              TextView text, Language lang) {
         MGraph g = item.getValue();
         UriRef textAnnotation = EnhancementEngineHelper.createTextEnhancement(item.getValue(), engine, item.getKey());
         g.add(new TripleImpl(textAnnotation, ENHANCER_START, literalFactory.createTypedLiteral(a.start)));
         g.add(new TripleImpl(textAnnotation, ENHANCER_END, literalFactory.createTypedLiteral(a.end)));
         g.add(new TripleImpl(textAnnotation, ENHANCER_SELECTED_TEXT, new PlainLiteralImpl(a.spot, lang)));
         g.add(new TripleImpl(textAnnotation, Properties.ENHANCER_SELECTION_CONTEXT, 
-                new PlainLiteralImpl(EnhancementEngineHelper.getSelectionContext(text, a.spot, a.start), lang)));
+                new PlainLiteralImpl(text.selectionContext(a.spot, a.start), lang)));
         return textAnnotation;
     }
 
@@ -84,8 +104,9 @@ public class FiseTranslator implements ITranslator {
         g.add(new TripleImpl(entityAnnotation, ENHANCER_ENTITY_REFERENCE, new UriRef(_uri)));
         g.add(new TripleImpl(entityAnnotation, ENHANCER_ENTITY_LABEL, new PlainLiteralImpl(a.title, lang)));
         g.add(new TripleImpl(entityAnnotation, ENHANCER_CONFIDENCE, literalFactory.createTypedLiteral((double) a.confidence)));
-        if (a.types != null) {
-            for (String type : a.types) {
+        Collection<String> types = fSupport.getTypes(a);
+        if (types != null) {
+            for (String type : types) {
                 g.add(new TripleImpl(entityAnnotation, ENHANCER_ENTITY_TYPE, new UriRef(type)));
             }
         }
@@ -1,12 +1,15 @@
 package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
 
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
 import org.apache.clerezza.rdf.core.MGraph;
 import org.apache.clerezza.rdf.core.UriRef;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.stanbol.enhancer.servicesapi.ContentItem;
 import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 
+import java.util.Set;
+
 /**
  * An {@link ITranslator} knows how to translate a {@link DatatxtResponse} into a series of RDF
  * statements using some translation strategy (typically bound to a specific ontology).
@@ -21,4 +24,16 @@ public interface ITranslator {
      */
     void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text, DatatxtResponse datatxtResponse);
 
+    /**
+     * Same as {@link #translate(Pair, EnhancementEngine, String, DatatxtResponse)}, seeing the text through a
+     * {@link TextView}: the annotations of the response must fall within its window.
+     */
+    void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                   DatatxtResponse datatxtResponse);
+
+    /**
+     * @return the optional {@link DatatxtResponse} fields this translator uses. Others need not be requested.
+     */
+    Set<ResponseField> getRequiredFields();
+
 }
@@ -0,0 +1,59 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.EngineEvent;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
+import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+
+import java.util.Set;
+
+/**
+ * A {@link RecordingTranslator} records each translation of another {@link ITranslator} as an
+ * {@link EngineEvent.Type#TRANSLATION} event.
+ */
+public class RecordingTranslator implements ITranslator {
+
+    private final ITranslator fDelegate;
+
+    public RecordingTranslator(ITranslator delegate) {
+        fDelegate = delegate;
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text,
+                          DatatxtResponse datatxtResponse) {
+        EngineEvent event = begin(item, text.length(), datatxtResponse);
+        try {
+            fDelegate.translate(item, engine, text, datatxtResponse);
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                          DatatxtResponse datatxtResponse) {
+        EngineEvent event = begin(item, text.length(), datatxtResponse);
+        try {
+            fDelegate.translate(item, engine, text, datatxtResponse);
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public Set<ResponseField> getRequiredFields() {
+        return fDelegate.getRequiredFields();
+    }
+
+    private static EngineEvent begin(Pair<UriRef, MGraph> item, int length, DatatxtResponse response) {
+        return EngineEvent.begin(EngineEvent.Type.TRANSLATION)
+                .set(EngineEvent.Field.CONTENT_ITEM, item.getLeft().getUnicodeString())
+                .set(EngineEvent.Field.TEXT_LENGTH, length)
+                .set(EngineEvent.Field.ANNOTATIONS, response.annotations != null ? response.annotations.size() : 0);
+    }
+
+}
@@ -0,0 +1,91 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
+
+import org.apache.stanbol.enhancer.servicesapi.helper.EnhancementEngineHelper;
+
+/**
+ * A {@link TextView} is what a translator sees of the text being annotated: its length, its head and its tail,
+ * and the window of text the annotations at hand come from. For texts read in full the window is the whole text;
+ * for texts streamed window by window it is only the current window, so translators never need the whole text in
+ * memory. All positions are offsets in the whole text.
+ */
+public class TextView {
+
+    private final String fHead;
+
+    private final String fTail;
+
+    private final int fLength;
+
+    private final String fWindow;
+
+    private final int fOffset;
+
+    /**
+     * @param head   the beginning of the text, as long as translators need it.
+     * @param tail   the end of the text, as long as translators need it.
+     * @param length the length of the text.
+     * @param window the window of the text the annotations come from.
+     * @param offset the offset of the window in the text.
+     */
+    public TextView(String head, String tail, int length, String window, int offset) {
+        fHead = head;
+        fTail = tail;
+        fLength = length;
+        fWindow = window;
+        fOffset = offset;
+    }
+
+    /**
+     * @return a view of a text held in full.
+     */
+    public static TextView of(String text) {
+        return new TextView(text, text, text.length(), text, 0);
+    }
+
+    public int length() {
+        return fLength;
+    }
+
+    /**
+     * @return up to the first <code>length</code> characters of the text.
+     */
+    public String head(int length) {
+        return fHead.substring(0, Math.min(length, fHead.length()));
+    }
+
+    /**
+     * @return up to the last <code>length</code> characters of the text.
+     */
+    public String tail(int length) {
+        return fTail.substring(Math.max(0, fTail.length() - length));
+    }
+
+    /**
+     * @return up to <code>length</code> characters before <code>position</code>, within the window.
+     */
+    public String before(int position, int length) {
+        int end = local(position);
+        return fWindow.substring(Math.max(0, end - length), end);
+    }
+
+    /**
+     * @return up to <code>length</code> characters after <code>position</code>, within the window.
+     */
+    public String after(int position, int length) {
+        int start = local(position);
+        return fWindow.substring(start, Math.min(start + length, fWindow.length()));
+    }
+
+    /**
+     * @return the selection context of a spot, as in
+     * {@link EnhancementEngineHelper#getSelectionContext(String, String, int)}, within the window.
+     */
+    public String selectionContext(String spot, int start) {
+        return EnhancementEngineHelper.getSelectionContext(fWindow, spot, local(start));
+    }
+
+    private int local(int position) {
+        return Math.max(0, Math.min(position - fOffset, fWindow.length()));
+    }
+
+}
@@ -1,6 +1,8 @@
 package eu.spaziodati.datatxt.stanbol.enhancer.engines.translators;
 
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.EntityStore;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
 import org.apache.clerezza.rdf.core.Language;
 import org.apache.clerezza.rdf.core.MGraph;
 import org.apache.clerezza.rdf.core.NonLiteral;
@@ -17,7 +19,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.*;
 
@@ -30,9 +36,57 @@ public class TranslationSupport {
 
     public final UriRef FOAF_DEPICTION;
 
+    private final EntityStore fEntities;
+
+    private final boolean fAbstracts;
+
+    private final boolean fImages;
+
+    private final int fMaxAbstractLength;
+
+    /**
+     * The current pass of a {@link CompositeTranslator} on this thread, if any.
+     */
+    private final ThreadLocal<Pass> fPass = new ThreadLocal<>();
+
     public TranslationSupport(NamespacePrefixService service) {
+        this(service, null, true, true);
+    }
+
+    public TranslationSupport(NamespacePrefixService service, EntityStore entities, boolean abstracts,
+                              boolean images) {
+        this(service, entities, abstracts, images, 0);
+    }
+
+    /**
+     * @param entities  the store describing the entities of lean responses, or <code>null</code> if responses
+     *                  carry descriptions in full.
+     * @param abstracts whether entity abstracts are added to the enhancements.
+     * @param images    whether entity depictions are added to the enhancements.
+     * @param maxAbstractLength the length entity abstracts are cut to, or <code>0</code> to keep them whole.
+     */
+    public TranslationSupport(NamespacePrefixService service, EntityStore entities, boolean abstracts,
+                              boolean images, int maxAbstractLength) {
         //FIXME should deal with the situation in which getNamespace returns null.
         FOAF_DEPICTION = new UriRef(service.getNamespace("foaf") + "depiction");
+        fEntities = entities;
+        fAbstracts = abstracts;
+        fImages = images;
+        fMaxAbstractLength = maxAbstractLength;
+    }
+
+    /**
+     * @return the optional response fields {@link #addEntity(Pair, DatatxtResponse.Annotation, String)} uses.
+     */
+    public Set<ResponseField> getRequiredFields() {
+        Set<ResponseField> fields = EnumSet.of(ResponseField.TYPES);
+        if (fAbstracts) {
+            fields.add(ResponseField.ABSTRACT);
+        }
+        if (fImages) {
+            fields.add(ResponseField.IMAGE);
+        }
+        return fields;
     }
 
     /**
@@ -40,19 +94,29 @@ public class TranslationSupport {
      */
     public void addEntity(Pair<UriRef, MGraph> item, DatatxtResponse.Annotation a, String lang) {
 
-        MGraph g = item.getValue();
-
         // TODO: uri: gli extra_types non hanno uri! se ne crea una fittizia
         String _uri = a.uri != null ? a.uri : getExtraTypesDummyUri(a.title);
+        Pass pass = fPass.get();
+        if (pass != null && !pass.fDescribed.add(_uri)) {
+            // already described in this pass, by this translator or another one.
+            return;
+        }
+
+        MGraph g = item.getValue();
+        EntityStore.Description description = describe(a);
+        Collection<String> types = a.types != null || description == null ? a.types : description.types;
+        String summary = a.summary != null || description == null ? a.summary : description.summary;
+        DatatxtResponse.Image image = a.image != null || description == null ? a.image : description.image;
+
         UriRef entity = new UriRef(_uri);
-        if (a.types != null) {
-            for (String type : a.types) {
+        if (types != null) {
+            for (String type : types) {
                 g.add(new TripleImpl(entity, RDF_TYPE, new UriRef(type)));
             }
         }
 
-        if (a.summary != null) {
-            g.add(new TripleImpl(entity, RDFS_COMMENT, new PlainLiteralImpl(a.summary, new Language(lang))));
+        if (fAbstracts && summary != null) {
+            g.add(new TripleImpl(entity, RDFS_COMMENT, new PlainLiteralImpl(cut(summary), new Language(lang))));
         }
 
         if (a.title != null) {
@@ -60,16 +124,63 @@ public class TranslationSupport {
         }
 
         // image
-        if (a.image != null) {
-            if (a.image.thumbnail != null) {
-                g.add(new TripleImpl(entity, FOAF_DEPICTION, new UriRef(a.image.thumbnail)));
-            } else if (a.image.full != null) {
-                g.add(new TripleImpl(entity, FOAF_DEPICTION, new UriRef(a.image.full)));
+        if (fImages && image != null) {
+            if (image.thumbnail != null) {
+                g.add(new TripleImpl(entity, FOAF_DEPICTION, new UriRef(image.thumbnail)));
+            } else if (image.full != null) {
+                g.add(new TripleImpl(entity, FOAF_DEPICTION, new UriRef(image.full)));
             }
         }
     }
 
+    /**
+     * Starts a pass of several translators over the same response, on this thread: until {@link #endPass()},
+     * each entity is described only once, and {@link #getLanguage(Pair)} tells the language the ContentItem had
+     * before the pass, so that each translator adds its own language annotation if there was none.
+     */
+    void beginPass(Pair<UriRef, MGraph> item) {
+        fPass.set(new Pass(item.getKey(), getLanguage(item)));
+    }
+
+    void endPass() {
+        fPass.remove();
+    }
+
+    /**
+     * @return the abstract, cut at the last word boundary within {@link #fMaxAbstractLength} characters.
+     */
+    private String cut(String summary) {
+        if (fMaxAbstractLength <= 0 || summary.length() <= fMaxAbstractLength) {
+            return summary;
+        }
+        int end = fMaxAbstractLength;
+        while (end > 0 && !Character.isWhitespace(summary.charAt(end))) {
+            end--;
+        }
+        return summary.substring(0, end > 0 ? end : fMaxAbstractLength).trim() + "\u2026";
+    }
+
+    /**
+     * @return the types of the entity linked by an annotation, taken from the {@link EntityStore} if the
+     * annotation doesn't carry them.
+     */
+    public Collection<String> getTypes(DatatxtResponse.Annotation a) {
+        if (a.types != null) {
+            return a.types;
+        }
+        EntityStore.Description description = describe(a);
+        return description != null ? description.types : null;
+    }
+
+    private EntityStore.Description describe(DatatxtResponse.Annotation a) {
+        return fEntities != null && a.uri != null ? fEntities.get(a.uri) : null;
+    }
+
     public String getLanguage(Pair<UriRef, MGraph> item) {
+        Pass pass = fPass.get();
+        if (pass != null && pass.fItem.equals(item.getKey())) {
+            return pass.fLanguage;
+        }
         List<NonLiteral> langAnnotations = EnhancementEngineHelper.getLanguageAnnotations(item.getValue());
         if(langAnnotations.isEmpty()){ //fallback
             return EnhancementEngineHelper.getString(item.getValue(), item.getKey(), DC_LANGUAGE);
@@ -87,4 +198,21 @@ public class TranslationSupport {
         }
     }
 
+    private static class Pass {
+
+        private final UriRef fItem;
+
+        /**
+         * The language of the ContentItem before the pass, or <code>null</code> if it had none.
+         */
+        private final String fLanguage;
+
+        private final Set<String> fDescribed = new HashSet<>();
+
+        private Pass(UriRef item, String language) {
+            fItem = item;
+            fLanguage = language;
+        }
+    }
+
 }
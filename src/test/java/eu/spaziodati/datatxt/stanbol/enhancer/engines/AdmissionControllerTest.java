@@ -0,0 +1,93 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Priority;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void shedsAfterTheWait() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 10, 20);
+
+        Assert.assertTrue(admission.admit());
+        Assert.assertEquals(1, admission.getInFlight());
+        Assert.assertFalse(admission.admit());
+        Assert.assertEquals(1, admission.getShed());
+
+        admission.release();
+        Assert.assertTrue(admission.admit());
+        Assert.assertEquals(2, admission.getAdmitted());
+    }
+
+    @Test
+    public void shedsWhenTheQueueIsFull() throws Exception {
+        final AdmissionController admission = new AdmissionController(1, 1, 10000);
+        Assert.assertTrue(admission.admit());
+
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    if (admission.admit()) {
+                        admission.release();
+                    }
+                } catch (InterruptedException ex) {
+                    // done.
+                }
+            }
+        };
+        waiter.start();
+        while (admission.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(admission.admit());
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+        admission.release();
+        waiter.join();
+        Assert.assertEquals(2, admission.getAdmitted());
+        Assert.assertEquals(1, admission.getShed());
+    }
+
+    @Test
+    public void admitsWithoutQueueWhileSlotsAreFree() throws Exception {
+        AdmissionController admission = new AdmissionController(2, 0, 10000, 1);
+
+        // no queue: free slots still admit, in both lanes.
+        Assert.assertTrue(admission.admit());
+        Assert.assertTrue(admission.admit(Priority.BULK));
+        Assert.assertEquals(2, admission.getAdmitted());
+
+        // all slots taken: shed at once rather than waiting.
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(admission.admit());
+        Assert.assertFalse(admission.admit(Priority.BULK));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(2, admission.getShed());
+        Assert.assertEquals(0, admission.getQueueDepth());
+
+        admission.release(Priority.BULK);
+        Assert.assertTrue(admission.admit(Priority.BULK));
+    }
+
+    @Test
+    public void reservesSlotsForInteractiveRequests() throws Exception {
+        AdmissionController admission = new AdmissionController(3, 10, 20, 1);
+
+        Assert.assertTrue(admission.admit(Priority.BULK));
+        Assert.assertTrue(admission.admit(Priority.BULK));
+        Assert.assertFalse(admission.admit(Priority.BULK));
+        Assert.assertTrue(admission.admit(Priority.INTERACTIVE));
+        Assert.assertEquals(3, admission.getInFlight());
+
+        // leftover capacity goes to bulk requests again.
+        admission.release(Priority.INTERACTIVE);
+        admission.release(Priority.BULK);
+        Assert.assertTrue(admission.admit(Priority.BULK));
+        Assert.assertEquals(0, admission.getQueueDepth(Priority.BULK));
+    }
+
+}
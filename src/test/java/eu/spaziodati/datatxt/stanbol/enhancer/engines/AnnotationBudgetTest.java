@@ -0,0 +1,193 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.fusepool.p3.vocab.FAM;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseField;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.FamTranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.ITranslator;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TextView;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.TranslationSupport;
+import org.apache.clerezza.rdf.core.LiteralFactory;
+import org.apache.clerezza.rdf.core.MGraph;
+import org.apache.clerezza.rdf.core.Triple;
+import org.apache.clerezza.rdf.core.TypedLiteral;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.clerezza.rdf.core.impl.SimpleMGraph;
+import org.apache.clerezza.rdf.core.impl.TripleImpl;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.apache.stanbol.enhancer.servicesapi.rdf.Properties.RDF_TYPE;
+
+public class AnnotationBudgetTest {
+
+    private static final UriRef DOCUMENT = new UriRef("urn:test:document");
+
+    private static final UriRef CONFIDENCE = new UriRef("urn:test:confidence");
+
+    /**
+     * Adds a fixed number of triples per annotation, the first one telling its confidence.
+     */
+    private static class CountingTranslator implements ITranslator {
+
+        private final int fTriples;
+
+        private CountingTranslator(int triples) {
+            fTriples = triples;
+        }
+
+        @Override
+        public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, String text,
+                              DatatxtResponse response) {
+            translate(item, engine, TextView.of(text), response);
+        }
+
+        @Override
+        public void translate(Pair<UriRef, MGraph> item, EnhancementEngine engine, TextView text,
+                              DatatxtResponse response) {
+            for (DatatxtResponse.Annotation annotation : response.annotations) {
+                UriRef subject = new UriRef("urn:test:annotation-" + annotation.start);
+                item.getValue().add(new TripleImpl(subject, CONFIDENCE,
+                        LiteralFactory.getInstance().createTypedLiteral(annotation.confidence)));
+                for (int i = 1; i < fTriples; i++) {
+                    item.getValue().add(new TripleImpl(subject, new UriRef("urn:test:p" + i), DOCUMENT));
+                }
+            }
+        }
+
+        @Override
+        public Set<ResponseField> getRequiredFields() {
+            return Collections.emptySet();
+        }
+    }
+
+    @Test
+    public void keepsTheMostConfidentAnnotations() {
+        MGraph graph = new SimpleMGraph();
+        AnnotationBudget budget = new AnnotationBudget(10, 0);
+        budget.translate(new CountingTranslator(1), item(graph), null, TextView.of(""), response(100));
+
+        Assert.assertEquals(10, graph.size());
+        Assert.assertTrue(budget.isTruncated());
+        Assert.assertTrue(minConfidence(graph) >= 0.9f);
+    }
+
+    @Test
+    public void stopsWhenTheTriplesAreSpent() {
+        MGraph graph = new SimpleMGraph();
+        AnnotationBudget budget = new AnnotationBudget(0, 100);
+        budget.translate(new CountingTranslator(7), item(graph), null, TextView.of(""), response(100));
+
+        Assert.assertTrue(budget.isTruncated());
+        Assert.assertTrue(String.valueOf(graph.size()), graph.size() > 100 - 7 && graph.size() <= 100);
+        Assert.assertEquals(graph.size() / 7, budget.getAnnotations());
+        Assert.assertTrue(minConfidence(graph) >= 0.86f);
+    }
+
+    @Test
+    public void spansTheWindowsOfADocument() {
+        MGraph graph = new SimpleMGraph();
+        AnnotationBudget budget = new AnnotationBudget(15, 0);
+        budget.translate(new CountingTranslator(1), item(graph), null, TextView.of(""), response(10));
+        Assert.assertFalse(budget.isTruncated());
+        budget.translate(new CountingTranslator(1), item(graph), null, TextView.of(""), response(10).shift(1000));
+
+        Assert.assertTrue(budget.isTruncated());
+        Assert.assertEquals(15, budget.getAnnotations());
+        Assert.assertEquals(15, graph.size());
+    }
+
+    @Test
+    public void recordsTruncationOnlyWhenItHappens() {
+        MGraph graph = new SimpleMGraph();
+        AnnotationBudget budget = new AnnotationBudget(10, 1000);
+        budget.translate(new CountingTranslator(2), item(graph), null, TextView.of(""), response(5));
+        budget.record(item(graph));
+        Assert.assertFalse(graph.filter(DOCUMENT, DatatxtNexEngine.TRUNCATED, null).hasNext());
+
+        budget.translate(new CountingTranslator(2), item(graph), null, TextView.of(""), response(10).shift(1000));
+        budget.record(item(graph));
+        Assert.assertTrue(graph.filter(DOCUMENT, DatatxtNexEngine.TRUNCATED, null).hasNext());
+        Assert.assertTrue(graph.filter(DOCUMENT, DatatxtNexEngine.ANNOTATIONS_KEPT,
+                LiteralFactory.getInstance().createTypedLiteral(10)).hasNext());
+    }
+
+    @Test
+    public void describesTheLanguageOnceAcrossBatches() throws Exception {
+        StringBuilder text = new StringBuilder();
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = "en";
+        response.langConfidence = 0.9f;
+        response.annotations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            DatatxtResponse.Annotation annotation = new DatatxtResponse.Annotation();
+            annotation.spot = "Entity" + i;
+            annotation.start = text.length();
+            annotation.end = annotation.start + annotation.spot.length();
+            annotation.title = annotation.spot;
+            annotation.uri = "http://en.wikipedia.org/wiki/" + annotation.spot;
+            annotation.confidence = i / 20f;
+            response.annotations.add(annotation);
+            text.append(annotation.spot).append(' ');
+        }
+
+        MGraph graph = new SimpleMGraph();
+        AnnotationBudget budget = new AnnotationBudget(0, 200);
+        budget.translate(new FamTranslator(new TranslationSupport(TestUtils.mockPrefixService())), item(graph), null,
+                TextView.of(text.toString()), response);
+
+        Assert.assertTrue(budget.isTruncated());
+        // several batches, a single language annotation.
+        Assert.assertTrue(budget.getAnnotations() > 2);
+        Assert.assertEquals(1, count(graph.filter(null, RDF_TYPE, FAM.LanguageAnnotation)));
+        Assert.assertEquals(budget.getAnnotations(), count(graph.filter(null, RDF_TYPE, FAM.EntityAnnotation)));
+        Assert.assertTrue(String.valueOf(graph.size()), graph.size() <= 200);
+    }
+
+    private static int count(Iterator<Triple> triples) {
+        int count = 0;
+        for (; triples.hasNext(); triples.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Pair<UriRef, MGraph> item(MGraph graph) {
+        return new ImmutablePair<UriRef, MGraph>(DOCUMENT, graph);
+    }
+
+    /**
+     * @return a response with annotations of confidence 0, 0.01, 0.02... in a shuffled order.
+     */
+    private static DatatxtResponse response(int count) {
+        DatatxtResponse response = new DatatxtResponse();
+        response.annotations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DatatxtResponse.Annotation annotation = new DatatxtResponse.Annotation();
+            annotation.start = i * 10;
+            annotation.end = i * 10 + 5;
+            annotation.confidence = (i * 37 % count) / (float) count;
+            response.annotations.add(annotation);
+        }
+        return response;
+    }
+
+    private static float minConfidence(MGraph graph) {
+        float min = Float.MAX_VALUE;
+        for (Iterator<Triple> it = graph.filter(null, CONFIDENCE, null); it.hasNext(); ) {
+            float confidence = LiteralFactory.getInstance().createObject(Float.class,
+                    (TypedLiteral) it.next().getObject());
+            min = Math.min(min, confidence);
+        }
+        return min;
+    }
+
+}
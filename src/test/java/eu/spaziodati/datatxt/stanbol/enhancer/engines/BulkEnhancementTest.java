@@ -0,0 +1,227 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.Priority;
+import org.apache.clerezza.rdf.core.UriRef;
+import org.apache.stanbol.enhancer.servicesapi.ContentItem;
+import org.apache.stanbol.enhancer.servicesapi.EngineException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkEnhancementTest {
+
+    @Test
+    public void keepsAtMostTheParallelismInFlight() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        DatatxtNexEngine engine = new StubEngine() {
+            @Override
+            void enhance(ContentItem ci) throws EngineException {
+                int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+
+        final AtomicInteger pulled = new AtomicInteger();
+        final int count = 40;
+        Iterable<ContentItem> items = new Iterable<ContentItem>() {
+            @Override
+            public Iterator<ContentItem> iterator() {
+                return new Iterator<ContentItem>() {
+                    @Override
+                    public boolean hasNext() {
+                        return pulled.get() < count;
+                    }
+
+                    @Override
+                    public ContentItem next() {
+                        return item("urn:item:" + pulled.incrementAndGet());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            BulkResult result = new BulkEnhancement(engine, executor, 3, null).run(items);
+            Assert.assertEquals(count, result.getEnhanced());
+            Assert.assertEquals(0, result.getFailed());
+            Assert.assertTrue(String.valueOf(maxInFlight.get()), maxInFlight.get() <= 3);
+            Assert.assertTrue(maxInFlight.get() > 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void collectsFailuresAndCarriesOn() throws Exception {
+        DatatxtNexEngine engine = new StubEngine() {
+            @Override
+            void enhance(ContentItem ci) throws EngineException {
+                if (ci.getUri().getUnicodeString().endsWith("2")) {
+                    throw new EngineException("failed " + ci.getUri());
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BulkResult result = new BulkEnhancement(engine, executor, 2, null).run(items("1", "2", "3", "skip", "12"));
+            Assert.assertEquals(2, result.getEnhanced());
+            Assert.assertEquals(1, result.getSkipped());
+            Assert.assertEquals(2, result.getFailed());
+            Assert.assertEquals(new HashSet<>(Arrays.asList(new UriRef("urn:item:2"),
+                    new UriRef("urn:item:12"))), result.getFailures().keySet());
+            Assert.assertTrue(result.getFailures().get(new UriRef("urn:item:2")) instanceof EngineException);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reportsProgressMatchingTheResult() throws Exception {
+        DatatxtNexEngine engine = new StubEngine() {
+            @Override
+            void enhance(ContentItem ci) throws EngineException {
+                if (ci.getUri().getUnicodeString().endsWith("3")) {
+                    throw new EngineException("failed " + ci.getUri());
+                }
+            }
+        };
+
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+        final Set<UriRef> failed = Collections.synchronizedSet(new HashSet<UriRef>());
+        final AtomicInteger skipped = new AtomicInteger();
+        BulkListener listener = new BulkListener() {
+            @Override
+            public void completed(ContentItem ci, boolean enhanced, int done) {
+                if (!enhanced) {
+                    skipped.incrementAndGet();
+                }
+                progress.add(done);
+            }
+
+            @Override
+            public void failed(ContentItem ci, Exception ex, int done) {
+                failed.add(ci.getUri());
+                progress.add(done);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                ids.add(i % 10 == 5 ? "skip" + i : String.valueOf(i));
+            }
+            BulkResult result = new BulkEnhancement(engine, executor, 4, listener)
+                    .run(items(ids.toArray(new String[ids.size()])));
+
+            // every item is reported once, with its own position in the count.
+            List<Integer> sorted = new ArrayList<>(progress);
+            Collections.sort(sorted);
+            for (int i = 0; i < sorted.size(); i++) {
+                Assert.assertEquals(i + 1, (int) sorted.get(i));
+            }
+            Assert.assertEquals(50, sorted.size());
+            Assert.assertEquals(result.getFailures().keySet(), failed);
+            Assert.assertEquals(result.getSkipped(), skipped.get());
+            Assert.assertEquals(50, result.getEnhanced() + result.getSkipped() + result.getFailed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Iterable<ContentItem> items(String... ids) {
+        List<ContentItem> items = new ArrayList<>();
+        for (String id : ids) {
+            items.add(item("urn:item:" + id));
+        }
+        return items;
+    }
+
+    /**
+     * @return a ContentItem with a URI only: the stub engine needs nothing else.
+     */
+    @Test
+    public void refusesItemsOnceDeactivated() throws Exception {
+        try {
+            new DatatxtNexEngine().canEnhance(item("urn:item:1"));
+            Assert.fail("an inactive engine can't enhance");
+        } catch (EngineException ex) {
+            // expected.
+        }
+    }
+
+    private static ContentItem item(String uri) {
+        final UriRef ref = new UriRef(uri);
+        return (ContentItem) Proxy.newProxyInstance(ContentItem.class.getClassLoader(),
+                new Class<?>[]{ContentItem.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getUri":
+                                return ref;
+                            case "getMimeType":
+                                return "text/plain";
+                            case "hashCode":
+                                return ref.hashCode();
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return ref.toString();
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+
+    /**
+     * An engine that skips items whose URI contains "skip" and enhances the others with {@link #enhance}.
+     */
+    private abstract static class StubEngine extends DatatxtNexEngine {
+
+        @Override
+        public int canEnhance(ContentItem ci) {
+            return ci.getUri().getUnicodeString().contains("skip") ? CANNOT_ENHANCE : ENHANCE_SYNCHRONOUS;
+        }
+
+        @Override
+        void computeEnhancements(ContentItem ci, Priority defaultPriority) throws EngineException {
+            Assert.assertEquals(Priority.BULK, defaultPriority);
+            enhance(ci);
+        }
+
+        abstract void enhance(ContentItem ci) throws EngineException;
+
+    }
+
+}
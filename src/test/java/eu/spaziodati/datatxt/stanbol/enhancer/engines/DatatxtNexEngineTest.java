@@ -2,6 +2,7 @@ package eu.spaziodati.datatxt.stanbol.enhancer.engines;
 
 import eu.fusepool.p3.vocab.FAM;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtNexEngine.OutputOntology;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.StubDatatxt;
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.translators.AnnotationConstants;
 
 import org.junit.Assert;
@@ -11,6 +12,7 @@ import org.apache.clerezza.rdf.core.serializedform.SupportedFormat;
 import org.apache.clerezza.rdf.jena.serializer.JenaSerializerProvider;
 import org.apache.stanbol.enhancer.servicesapi.ContentItem;
 import org.apache.stanbol.enhancer.servicesapi.ContentItemFactory;
+import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 import org.apache.stanbol.enhancer.servicesapi.impl.StringSource;
 import org.apache.stanbol.enhancer.servicesapi.rdf.Properties;
 import org.apache.stanbol.enhancer.servicesapi.rdf.TechnicalClasses;
@@ -31,6 +33,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -53,8 +56,12 @@ public class DatatxtNexEngineTest {
     public void testFAMEngine() throws Exception {
         DatatxtNexEngine engine = new DatatxtNexEngine();
 
+        // the single valued form of the property, as plain configurations have it.
+        Dictionary<String, Object> config = TestUtils.config();
+        config.put(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY, OutputOntology.FAM.name());
+
         engine.bind(TestUtils.mockPrefixService());
-        engine.activate(TestUtils.mockComponentContext(OutputOntology.FAM));
+        engine.activate(TestUtils.mockComponentContext(config));
 
         ContentItem ci = ciFactory.createContentItem(new StringSource(TestUtils.DATA_TXT_DEMO_TEXT));
         engine.computeEnhancements(ci);
@@ -83,6 +90,37 @@ public class DatatxtNexEngineTest {
         Assert.assertEquals(TestUtils.ENTITIES.size(), count);
     }
     
+    @Test
+    public void testFAMEngineStreamed() throws Exception {
+        try (StubDatatxt datatxt = new StubDatatxt("Mona Lisa", "Leonardo", "Louvre", "Paris")) {
+            Dictionary<String, Object> config = datatxt.config();
+            config.put(EnhancementEngine.PROPERTY_NAME, "datatxtAnnotate");
+            config.put(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY, new String[]{OutputOntology.FAM.name()});
+            config.put(DatatxtProperties.DATATXT_STREAMING_WINDOW, "150");
+
+            DatatxtNexEngine engine = new DatatxtNexEngine();
+            engine.bind(TestUtils.mockPrefixService());
+            engine.activate(TestUtils.mockComponentContext(config));
+
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 5; i++) {
+                text.append("Chapter ").append(i).append(". ").append(TestUtils.DATA_TXT_DEMO_TEXT).append(' ');
+            }
+            ContentItem ci = ciFactory.createContentItem(new StringSource(text.toString()));
+            engine.computeEnhancements(ci);
+
+            debugEnhancementResults(ci);
+
+            // several windows, a single language annotation.
+            Assert.assertTrue(datatxt.getRequests().size() > 1);
+            MGraph graph = ci.getMetadata();
+            UriRef lang = (UriRef) get(graph.filter(null, RDF_TYPE, FAM.LanguageAnnotation), 1).getSubject();
+            PlainLiteral language = (PlainLiteral) get(graph.filter(lang, DC_LANGUAGE, null), 1).getObject();
+            Assert.assertEquals("en", language.getLexicalForm());
+            engine.deactivate(null);
+        }
+    }
+
     @Test
     public void testFISEEngine() throws Exception {
         DatatxtNexEngine engine = new DatatxtNexEngine();
@@ -120,6 +158,46 @@ public class DatatxtNexEngineTest {
         Assert.assertTrue(expectedEntities.isEmpty());
         
     }
+
+    @Test
+    public void testFISEAndFAMEngine() throws Exception {
+        DatatxtNexEngine engine = new DatatxtNexEngine();
+
+        engine.bind(TestUtils.mockPrefixService());
+        engine.activate(TestUtils.mockComponentContext(OutputOntology.FISE, OutputOntology.FAM));
+
+        ContentItem ci = ciFactory.createContentItem(new StringSource(TestUtils.DATA_TXT_DEMO_TEXT));
+        engine.computeEnhancements(ci);
+
+        debugEnhancementResults(ci);
+
+        MGraph metadata = ci.getMetadata();
+        Set<UriRef> famEntities = new HashSet<>();
+        Iterator<Triple> bodies = metadata.filter(null, RDF_TYPE, FAM.EntityAnnotation);
+        while (bodies.hasNext()) {
+            NonLiteral body = bodies.next().getSubject();
+            famEntities.add((UriRef) get(metadata.filter(body, FAM.entity_reference, null), 1).getObject());
+        }
+        Assert.assertEquals(new HashSet<>(TestUtils.ENTITIES), famEntities);
+
+        Set<UriRef> fiseEntities = new HashSet<>();
+        Iterator<Triple> it = metadata.filter(null, RDF_TYPE, ENHANCER_ENTITYANNOTATION);
+        while (it.hasNext()) {
+            NonLiteral annotation = it.next().getSubject();
+            fiseEntities.add((UriRef) get(metadata.filter(annotation, ENHANCER_ENTITY_REFERENCE, null), 1)
+                    .getObject());
+        }
+        Assert.assertEquals(famEntities, fiseEntities);
+
+        // each ontology gets its own language annotation.
+        UriRef famLanguage = (UriRef) get(metadata.filter(null, RDF_TYPE, FAM.LanguageAnnotation), 1).getSubject();
+        Assert.assertEquals("en", ((PlainLiteral) get(metadata.filter(famLanguage, DC_LANGUAGE, null), 1)
+                .getObject()).getLexicalForm());
+        NonLiteral fiseLanguage = get(metadata.filter(null, DC_TYPE, TechnicalClasses.DCTERMS_LINGUISTIC_SYSTEM), 1)
+                .getSubject();
+        Assert.assertEquals("en", ((PlainLiteral) get(metadata.filter(fiseLanguage, DC_LANGUAGE, null), 1)
+                .getObject()).getLexicalForm());
+    }
     
     
     /**
@@ -1,13 +1,17 @@
 package eu.spaziodati.datatxt.stanbol.enhancer.engines;
 
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.StubDatatxt;
 import org.apache.clerezza.rdf.core.UriRef;
 import org.apache.stanbol.commons.namespaceprefix.NamespacePrefixService;
 import org.apache.stanbol.enhancer.servicesapi.EnhancementEngine;
 import org.easymock.EasyMock;
+import org.junit.Assert;
 import org.osgi.service.component.ComponentContext;
 
 import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtNexEngine.OutputOntology;
 
+import java.io.IOException;
 import java.util.*;
 
 public class TestUtils {
@@ -29,11 +33,15 @@ public class TestUtils {
         add(new UriRef("http://en.wikipedia.org/wiki/Paris"));
     }};
 
-    public static ComponentContext mockComponentContext(OutputOntology outputOntology) throws Exception {
+    public static ComponentContext mockComponentContext(OutputOntology... outputOntologies) throws Exception {
+        return mockComponentContext(config(outputOntologies));
+    }
+
+    public static ComponentContext mockComponentContext(Dictionary<String, Object> config) throws Exception {
         ComponentContext context = EasyMock.createMock(ComponentContext.class);
 
         EasyMock.expect(context.getProperties())
-                .andReturn(config(outputOntology))
+                .andReturn(config)
                 .anyTimes();
 
         EasyMock.replay(context);
@@ -54,10 +62,10 @@ public class TestUtils {
     }
 
     public static Dictionary<String, Object> config() throws Exception {
-        return config(null);
+        return config(new OutputOntology[0]);
     }
     
-    public static Dictionary<String, Object> config(OutputOntology outputOntology) throws Exception {
+    public static Dictionary<String, Object> config(OutputOntology... outputOntologies) throws Exception {
         Dictionary<String, Object> config = new Hashtable<>();
 
         config.put(EnhancementEngine.PROPERTY_NAME, "datatxtAnnotate");
@@ -65,13 +73,56 @@ public class TestUtils {
 
         addProperty(config, ENV_TEST_APP_ID, DatatxtProperties.DATATXT_APP_ID);
         addProperty(config, ENV_TEST_APP_KEY, DatatxtProperties.DATATXT_APP_KEY);
-        if(outputOntology == null){
-            outputOntology = OutputOntology.FAM;
+        if(outputOntologies == null || outputOntologies.length == 0){
+            outputOntologies = new OutputOntology[]{OutputOntology.FAM};
         }
-        config.put(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY, outputOntology.name());
+        String[] names = new String[outputOntologies.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = outputOntologies[i].name();
+        }
+        config.put(DatatxtNexEngine.PROPERTY_OUTPUT_ONTOLOGY, names);
         return config;
     }
 
+    /**
+     * @return a stub dataTXT linking the spots of the paragraph tests.
+     */
+    public static StubDatatxt stubDatatxt() throws IOException {
+        return new StubDatatxt("Mona Lisa", "Leonardo", "Louvre", "Paris", "Florence");
+    }
+
+    /**
+     * @return the paragraphs, separated by blank lines.
+     */
+    public static String paragraphs(String... paragraphs) {
+        StringBuilder text = new StringBuilder();
+        for (String paragraph : paragraphs) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(paragraph);
+        }
+        return text.toString();
+    }
+
+    public static List<Integer> starts(DatatxtResponse response) {
+        List<Integer> starts = new ArrayList<>();
+        for (DatatxtResponse.Annotation annotation : response.annotations) {
+            starts.add(annotation.start);
+        }
+        return starts;
+    }
+
+    /**
+     * Asserts that a response is about a text, and that the offsets of its annotations point at their spots.
+     */
+    public static void assertSpotsMatch(String text, DatatxtResponse response) {
+        Assert.assertEquals(text, response.text);
+        for (DatatxtResponse.Annotation annotation : response.annotations) {
+            Assert.assertEquals(annotation.spot, text.substring(annotation.start, annotation.end));
+        }
+    }
+
     private static void addProperty(Dictionary<String, Object> config, String envKey, String engineKey) {
         String value = System.getenv(envKey);
         if (value == null) {
@@ -0,0 +1,29 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.ResponseReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public class WarmUpTest {
+
+    @Test
+    public void bundledResponseMatchesItsText() throws Exception {
+        DatatxtResponse response;
+        try (InputStream is = WarmUp.class.getResourceAsStream(WarmUp.RESPONSE)) {
+            Assert.assertNotNull(is);
+            response = new ResponseReader().read(new InputStreamReader(is, StandardCharsets.UTF_8));
+        }
+
+        Assert.assertFalse(response.annotations.isEmpty());
+        for (DatatxtResponse.Annotation annotation : response.annotations) {
+            Assert.assertEquals(annotation.spot, WarmUp.TEXT.substring(annotation.start, annotation.end));
+            Assert.assertNotNull(annotation.uri);
+        }
+    }
+
+}
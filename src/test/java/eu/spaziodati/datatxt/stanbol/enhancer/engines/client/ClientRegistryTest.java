@@ -0,0 +1,237 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.EnumSet;
+import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientRegistryTest {
+
+    @Test
+    public void sharesEndpointsAndQuotas() throws Exception {
+        ClientRegistry registry = new ClientRegistry();
+        URL url = new URL("http://localhost/nex");
+
+        Endpoint endpoint = registry.endpoint(url, "id", "key", 1, 10);
+        Assert.assertSame(endpoint, registry.endpoint(url, "id", "key", 2, 0));
+        Assert.assertNotSame(endpoint, registry.endpoint(url, "id", "other-key", 1, 10));
+        Assert.assertSame(endpoint.getQuota(), registry.endpoint(url, "id", "other-key", 1, 10).getQuota());
+    }
+
+    @Test
+    public void sharesCachesUntilReleased() throws Exception {
+        ClientRegistry registry = new ClientRegistry();
+
+        ResponseCache first = registry.cache("a", 10, null, 0);
+        ResponseCache second = registry.cache("a", 20, null, 0);
+        Assert.assertSame(first, second);
+        Assert.assertNull(registry.cache("a", 0, null, 0));
+        Assert.assertNotSame(first, registry.cache("b", 10, null, 0));
+
+        registry.release(first);
+        Assert.assertSame(second, registry.cache("a", 10, null, 0));
+        registry.release(second);
+        registry.release(second);
+        Assert.assertNotSame(first, registry.cache("a", 10, null, 0));
+    }
+
+    @Test
+    public void keepsTheResponsesOfOtherEndpointsApart() throws Exception {
+        ClientRegistry registry = new ClientRegistry();
+        try (StubDatatxt louvre = new StubDatatxt("Louvre"); StubDatatxt paris = new StubDatatxt("Paris");
+             DatatxtClient first = DatatxtClient.newClient(cached(louvre.config(), 10),
+                     EnumSet.allOf(ResponseField.class), null, registry);
+             DatatxtClient second = DatatxtClient.newClient(cached(paris.config(), 10),
+                     EnumSet.allOf(ResponseField.class), null, registry)) {
+            String text = "The Louvre is in Paris.";
+            Assert.assertEquals("Louvre", first.doRequest(text, "en").annotations.iterator().next().spot);
+            Assert.assertEquals("Paris", second.doRequest(text, "en").annotations.iterator().next().spot);
+            Assert.assertEquals(1, paris.getRequests().size());
+
+            // the same endpoint, with another cache size: the cache is shared.
+            try (DatatxtClient third = DatatxtClient.newClient(cached(louvre.config(), 5),
+                    EnumSet.allOf(ResponseField.class), null, registry)) {
+                Assert.assertEquals("Louvre", third.doRequest(text, "en").annotations.iterator().next().spot);
+                Assert.assertEquals(1, louvre.getRequests().size());
+            }
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    public void rejectsConflictingClusterSettings() throws Exception {
+        ClientRegistry registry = new ClientRegistry();
+        registry.setConnector(new CacheConnector() {
+            @Override
+            public void serve(CacheNode local) {
+            }
+
+            @Override
+            public void stop(CacheNode local) {
+            }
+
+            @Override
+            public CacheNode connect(String id) throws IOException {
+                throw new IOException("No other node");
+            }
+        });
+
+        ResponseCache cluster = registry.cluster(registry.cache("a", 10, null, 0), "a", Arrays.asList("a"), 2, 0);
+        Assert.assertSame(cluster, registry.cluster(registry.cache("a", 10, null, 0), "a", Arrays.asList("a"), 2,
+                0));
+
+        ResponseCache other = registry.cache("b", 10, null, 0);
+        try {
+            registry.cluster(other, "a", Arrays.asList("a"), 2, 0);
+            Assert.fail("a node id can't serve two caches");
+        } catch (IllegalStateException ex) {
+            // the share is left to the caller.
+            Assert.assertSame(other, registry.cache("b", 10, null, 0));
+        }
+        try {
+            registry.cluster(registry.cache("a", 10, null, 0), "a", Arrays.asList("a"), 3, 0);
+            Assert.fail("a node id can't have two replica settings");
+        } catch (IllegalStateException ex) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void collapsesIdenticalRequests() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final DatatxtResponse[] responses = new DatatxtResponse[2];
+
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        responses[index] = flight.execute("key", new Callable<DatatxtResponse>() {
+                            @Override
+                            public DatatxtResponse call() throws Exception {
+                                calls.incrementAndGet();
+                                release.await();
+                                return new DatatxtResponse();
+                            }
+                        }, new RequestContext(0));
+                    } catch (DatatxtException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        // give both threads the time to get to the call.
+        Thread.sleep(200);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(1, calls.get());
+        Assert.assertSame(responses[0], responses[1]);
+        Assert.assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void followersRetryWhenTheLeaderRunsOutOfTime() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    flight.execute("key", new Callable<DatatxtResponse>() {
+                        @Override
+                        public DatatxtResponse call() throws Exception {
+                            release.await();
+                            throw new DeadlineException("Request deadline exceeded.", false);
+                        }
+                    }, new RequestContext(0));
+                } catch (DatatxtException ex) {
+                    failure[0] = ex;
+                }
+            }
+        };
+        leader.start();
+        while (flight.size() == 0) {
+            Thread.sleep(1);
+        }
+
+        final AtomicInteger calls = new AtomicInteger();
+        final DatatxtResponse response = new DatatxtResponse();
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // give the follower the time to join the leader's call.
+                    Thread.sleep(200);
+                } catch (InterruptedException ex) {
+                    // release anyway.
+                }
+                release.countDown();
+            }
+        };
+        releaser.start();
+        DatatxtResponse followed = flight.execute("key", new Callable<DatatxtResponse>() {
+            @Override
+            public DatatxtResponse call() {
+                calls.incrementAndGet();
+                return response;
+            }
+        }, new RequestContext(10000));
+        leader.join();
+        releaser.join();
+
+        Assert.assertTrue(failure[0] instanceof DeadlineException);
+        Assert.assertSame(response, followed);
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void reconfiguredClientsKeepTheirEndpoints() throws Exception {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(DatatxtProperties.DATATXT_NEX_URL, "http://localhost/nex");
+        config.put(DatatxtProperties.DATATXT_APP_ID, "id");
+        config.put(DatatxtProperties.DATATXT_APP_KEY, "key");
+        config.put(DatatxtProperties.DATATXT_CACHE_SIZE, "10");
+        DatatxtClient client = DatatxtClient.newClient(config, Collections.<ResponseField>emptySet(), null);
+
+        config.put(DatatxtProperties.DATATXT_MIN_CONFIDENCE, "0.8");
+        DatatxtClient reconfigured = client.reconfigure(config, Collections.<ResponseField>emptySet(), null);
+        Assert.assertSame(client.getEndpoints().get(0), reconfigured.getEndpoints().get(0));
+        Assert.assertSame(client.getEndpoints().get(0).getQuota(), reconfigured.getEndpoints().get(0).getQuota());
+
+        // the registry, and the endpoints in it, now belong to the new client.
+        client.close();
+        config.put(DatatxtProperties.DATATXT_MIN_CONFIDENCE, "0.9");
+        Assert.assertSame(reconfigured.getEndpoints().get(0),
+                reconfigured.reconfigure(config, Collections.<ResponseField>emptySet(), null).getEndpoints().get(0));
+        reconfigured.close();
+    }
+
+    private static Dictionary<String, Object> cached(Dictionary<String, Object> config, int size) {
+        config.put(DatatxtProperties.DATATXT_CACHE_SIZE, String.valueOf(size));
+        return config;
+    }
+
+}
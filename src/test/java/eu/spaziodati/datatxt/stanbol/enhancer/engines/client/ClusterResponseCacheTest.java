@@ -0,0 +1,240 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ClusterResponseCacheTest {
+
+    private static final int KEYS = 1000;
+
+    /**
+     * Connects the nodes of a cluster living in the same JVM. A node which stopped serving its share is
+     * unreachable, as if it were down.
+     */
+    private static class InProcessConnector implements CacheConnector {
+
+        private final Map<String, CacheNode> fNodes = new ConcurrentHashMap<>();
+
+        @Override
+        public void serve(CacheNode local) {
+            fNodes.put(local.getId(), local);
+        }
+
+        @Override
+        public void stop(CacheNode local) {
+            fNodes.remove(local.getId());
+        }
+
+        @Override
+        public CacheNode connect(final String id) {
+            return new CacheNode() {
+                @Override
+                public String getId() {
+                    return id;
+                }
+
+                @Override
+                public byte[] get(String key) throws IOException {
+                    return node().get(key);
+                }
+
+                @Override
+                public void put(String key, byte[] payload) throws IOException {
+                    node().put(key, payload);
+                }
+
+                private CacheNode node() throws IOException {
+                    CacheNode node = fNodes.get(id);
+                    if (node == null) {
+                        throw new IOException("Node " + id + " is down");
+                    }
+                    return node;
+                }
+            };
+        }
+    }
+
+    /**
+     * A cluster of nodes without near-caches, so that every lookup goes to the owners.
+     */
+    private static class Cluster {
+
+        private final InProcessConnector fConnector = new InProcessConnector();
+
+        private final Map<String, ClusterResponseCache> fNodes = new LinkedHashMap<>();
+
+        private final Map<String, MemoryResponseCache> fShares = new HashMap<>();
+
+        private final int fReplicas;
+
+        private Cluster(int replicas, String... ids) throws IOException {
+            fReplicas = replicas;
+            for (String id : ids) {
+                join(id);
+            }
+        }
+
+        private void join(String id) throws IOException {
+            MemoryResponseCache share = new MemoryResponseCache(KEYS * 2);
+            fShares.put(id, share);
+            fNodes.put(id, new ClusterResponseCache(id, share, fConnector, fReplicas, 0));
+            for (ClusterResponseCache node : fNodes.values()) {
+                node.setMembers(fNodes.keySet());
+            }
+        }
+
+        private void leave(String id) {
+            fNodes.remove(id).close();
+            fShares.remove(id);
+            for (ClusterResponseCache node : fNodes.values()) {
+                node.leave(id);
+            }
+        }
+
+        private ClusterResponseCache node(String id) {
+            return fNodes.get(id);
+        }
+    }
+
+    @Test
+    public void sharesResponsesAcrossNodes() throws Exception {
+        Cluster cluster = new Cluster(1, "a", "b", "c");
+        for (int i = 0; i < KEYS; i++) {
+            cluster.node("a").put(key(i), response(i));
+        }
+
+        ClusterResponseCache b = cluster.node("b");
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertEquals(key(i), b.get(key(i)).lang);
+        }
+        Assert.assertEquals(KEYS, b.getHits());
+        Assert.assertEquals(0, b.getMisses());
+
+        // each node owns about a third of the keys, and stores nothing else.
+        for (String id : Arrays.asList("a", "b", "c")) {
+            int size = cluster.fShares.get(id).size();
+            Assert.assertTrue(id + ": " + size, size > KEYS / 5 && size < KEYS / 2);
+        }
+        Assert.assertEquals(KEYS, cluster.fShares.get("a").size() + cluster.fShares.get("b").size()
+                + cluster.fShares.get("c").size());
+    }
+
+    @Test
+    public void keepsResponsesWhenANodeLeaves() throws Exception {
+        Cluster cluster = new Cluster(2, "a", "b", "c", "d");
+        for (int i = 0; i < KEYS; i++) {
+            cluster.node("a").put(key(i), response(i));
+        }
+
+        cluster.leave("c");
+        ClusterResponseCache b = cluster.node("b");
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertNotNull(key(i), b.get(key(i)));
+        }
+        Assert.assertEquals(0, b.getMisses());
+        Assert.assertEquals(0, b.getErrors());
+    }
+
+    @Test
+    public void toleratesANodeDown() throws Exception {
+        Cluster cluster = new Cluster(2, "a", "b", "c");
+        for (int i = 0; i < KEYS; i++) {
+            cluster.node("a").put(key(i), response(i));
+        }
+
+        // c crashes: the others still think it is a member.
+        cluster.fConnector.fNodes.remove("c");
+        ClusterResponseCache b = cluster.node("b");
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertNotNull(key(i), b.get(key(i)));
+        }
+        Assert.assertEquals(0, b.getMisses());
+        Assert.assertTrue(b.getErrors() > 0);
+    }
+
+    @Test
+    public void leavesAFailedNodeAloneForAWhile() throws Exception {
+        Cluster cluster = new Cluster(2, "a", "b", "c");
+        for (int i = 0; i < KEYS; i++) {
+            cluster.node("a").put(key(i), response(i));
+        }
+
+        cluster.fConnector.fNodes.remove("c");
+        ClusterResponseCache b = cluster.node("b");
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertNotNull(key(i), b.get(key(i)));
+            b.put(key(i), response(i));
+        }
+        // only the first call to c failed: the next ones were not made.
+        Assert.assertEquals(1, b.getErrors());
+        Assert.assertEquals(0, b.getMisses());
+    }
+
+    @Test
+    public void movesOnlyTheKeysOfAJoiningNode() throws Exception {
+        Cluster cluster = new Cluster(2, "a", "b", "c");
+        List<String> before = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            cluster.node("a").put(key(i), response(i));
+            before.add(cluster.node("a").getOwners(key(i)).get(0));
+        }
+
+        cluster.join("d");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = cluster.node("a").getOwners(key(i)).get(0);
+            if (!owner.equals(before.get(i))) {
+                Assert.assertEquals("d", owner);
+                moved++;
+            }
+        }
+        Assert.assertTrue(String.valueOf(moved), moved > KEYS / 8 && moved < KEYS * 3 / 8);
+
+        // the moved keys are still found, on their previous owners, and repaired on the new one.
+        ClusterResponseCache d = cluster.node("d");
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertNotNull(key(i), d.get(key(i)));
+        }
+        Assert.assertEquals(0, d.getMisses());
+        Assert.assertEquals(moved, cluster.fShares.get("d").size());
+    }
+
+    @Test
+    public void answersFromTheNearCache() throws Exception {
+        InProcessConnector connector = new InProcessConnector();
+        ClusterResponseCache a = new ClusterResponseCache("a", new MemoryResponseCache(10), connector, 1, 10);
+        ClusterResponseCache b = new ClusterResponseCache("b", new MemoryResponseCache(10), connector, 1, 10);
+        a.setMembers(Arrays.asList("a", "b"));
+        b.setMembers(Arrays.asList("a", "b"));
+
+        b.put("key", response(0));
+        Assert.assertNotNull(a.get("key"));
+        Assert.assertNotNull(a.get("key"));
+        Assert.assertEquals(1, a.getHits());
+        Assert.assertEquals(1, a.getNearHits());
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+
+    /**
+     * @return a response telling which key it was stored with.
+     */
+    private static DatatxtResponse response(int i) {
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = key(i);
+        response.annotations = new ArrayList<>();
+        return response;
+    }
+
+}
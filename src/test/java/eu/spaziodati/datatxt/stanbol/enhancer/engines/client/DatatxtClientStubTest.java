@@ -0,0 +1,115 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Dictionary;
+import java.util.Map;
+
+/**
+ * Tests of {@link DatatxtClient} against a {@link StubDatatxt}.
+ */
+public class DatatxtClientStubTest {
+
+    private static final String TEXT = "The Mona Lisa is held at the Louvre in Paris, by the Seine.";
+
+    private static final String FILLER = "Nothing worth linking is said here, only words to keep the spots apart. ";
+
+    @Test
+    public void fetchesAtTheSpotLengthFloor() throws Exception {
+        try (StubDatatxt datatxt = new StubDatatxt("Mona Lisa", "Louvre", "Paris", "Seine")) {
+            Dictionary<String, Object> config = datatxt.config();
+            config.put(DatatxtProperties.DATATXT_MIN_LENGTH, "6");
+            config.put(DatatxtProperties.DATATXT_FETCH_MIN_CONFIDENCE, "0.3");
+            try (DatatxtClient client = DatatxtClient.newClient(config)) {
+                DatatxtResponse response = client.doRequest(TEXT, "en");
+                // spots shorter than min_length are not even asked for.
+                Assert.assertEquals("6", datatxt.getRequests().get(0).get("min_length"));
+                Assert.assertEquals("0.3", datatxt.getRequests().get(0).get("min_confidence"));
+                Assert.assertEquals(2, response.annotations.size());
+            }
+
+            datatxt.clear();
+            config.put(DatatxtProperties.DATATXT_FETCH_MIN_LENGTH, "2");
+            try (DatatxtClient client = DatatxtClient.newClient(config)) {
+                DatatxtResponse response = client.doRequest(TEXT, "en");
+                Assert.assertEquals("2", datatxt.getRequests().get(0).get("min_length"));
+                // the shorter spots are fetched, and filtered locally.
+                Assert.assertEquals(2, response.annotations.size());
+            }
+        }
+    }
+
+    @Test
+    public void describesOnlyNewEntitiesOnceTheStoreIsWarm() throws Exception {
+        try (StubDatatxt datatxt = new StubDatatxt("Mona Lisa", "Louvre", "Paris", "Seine", "Leonardo")) {
+            Dictionary<String, Object> config = datatxt.config();
+            config.put(DatatxtProperties.DATATXT_ENTITY_STORE_SIZE, "100");
+            try (DatatxtClient client = DatatxtClient.newClient(config)) {
+                EntityStore store = client.getEntityStore();
+
+                // cold: a single request, with the descriptions, which fill the store.
+                client.doRequest(TEXT, "en");
+                Assert.assertEquals(1, datatxt.getRequests().size());
+                Assert.assertTrue(isFull(datatxt.getRequests().get(0)));
+                Assert.assertNotNull(store.get(StubDatatxt.uri("Mona Lisa")).summary);
+
+                for (int i = 0; i < 100 && !store.isWarm(); i++) {
+                    client.doRequest(TEXT, "en");
+                }
+                Assert.assertTrue(store.isWarm());
+
+                // warm, with every entity known: a single lean request.
+                datatxt.clear();
+                DatatxtResponse response = client.doRequest(TEXT, "en");
+                Assert.assertEquals(1, datatxt.getRequests().size());
+                Assert.assertFalse(isFull(datatxt.getRequests().get(0)));
+                Assert.assertNull(response.annotations.iterator().next().summary);
+
+                // a new entity: only an excerpt around it is sent again, with the descriptions.
+                StringBuilder text = new StringBuilder(TEXT);
+                for (int i = 0; i < 5; i++) {
+                    text.append(FILLER);
+                }
+                text.append("Leonardo painted it.");
+                datatxt.clear();
+                client.doRequest(text.toString(), "en");
+                Assert.assertEquals(2, datatxt.getRequests().size());
+                Assert.assertFalse(isFull(datatxt.getRequests().get(0)));
+                Assert.assertTrue(isFull(datatxt.getRequests().get(1)));
+                String excerpt = datatxt.getTexts().get(1);
+                Assert.assertTrue(excerpt, excerpt.contains("Leonardo"));
+                Assert.assertFalse(excerpt, excerpt.contains("Mona Lisa"));
+                Assert.assertNotNull(store.get(StubDatatxt.uri("Leonardo")).summary);
+            }
+        }
+    }
+
+    @Test
+    public void givesBackTheUnitsOfExpiredRequests() throws Exception {
+        try (StubDatatxt datatxt = new StubDatatxt("Mona Lisa")) {
+            Dictionary<String, Object> config = datatxt.config();
+            config.put(DatatxtProperties.DATATXT_ENDPOINTS, config.get(DatatxtProperties.DATATXT_NEX_URL)
+                    + "|stub|stub|1|100");
+            datatxt.setDelay(2000);
+            try (DatatxtClient client = DatatxtClient.newClient(config)) {
+                Quota quota = client.getEndpoints().get(0).getQuota();
+                try {
+                    client.doRequest(TEXT, "en", new RequestContext(200));
+                    Assert.fail("the stub answers after the deadline");
+                } catch (DeadlineException ex) {
+                    // expected.
+                }
+                Assert.assertEquals(1, datatxt.getRequests().size());
+                Assert.assertEquals(100, quota.getRemaining());
+            }
+        }
+    }
+
+    private static boolean isFull(Map<String, String> request) {
+        String include = request.get("include");
+        return include != null && include.contains(ResponseField.ABSTRACT.getName());
+    }
+
+}
@@ -0,0 +1,108 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class EndpointBalancerTest {
+
+    @Test
+    public void prefersFasterAndLessLoadedEndpoints() throws Exception {
+        Endpoint slow = endpoint("http://slow", new Quota("a", 0));
+        Endpoint fast = endpoint("http://fast", new Quota("b", 0));
+        EndpointBalancer balancer = new EndpointBalancer(Arrays.asList(slow, fast));
+
+        slow.started();
+        slow.succeeded(500);
+        fast.started();
+        fast.succeeded(50);
+
+        Assert.assertSame(fast, balancer.select(Collections.<Endpoint>emptySet(), 1));
+        Assert.assertEquals(1, fast.getOutstanding());
+    }
+
+    @Test
+    public void failsOverAndSkipsExhaustedQuotas() throws Exception {
+        Quota shared = new Quota("a", 1);
+        Endpoint first = endpoint("http://first", shared);
+        Endpoint second = endpoint("http://second", shared);
+        Endpoint third = endpoint("http://third", new Quota("b", 0));
+        EndpointBalancer balancer = new EndpointBalancer(Arrays.asList(first, second, third));
+
+        Set<Endpoint> failed = new HashSet<>();
+        Endpoint selected = balancer.select(failed, 1);
+        Assert.assertTrue(selected == first || selected == second);
+        selected.failed();
+        shared.release(1);
+        failed.add(selected);
+
+        // the failed request gave its unit back: the other endpoint sharing the quota can take it.
+        Endpoint other = balancer.select(failed, 1);
+        Assert.assertSame(selected == first ? second : first, other);
+        Assert.assertEquals(0, shared.getRemaining());
+        other.succeeded(10);
+
+        // the shared quota is used up: only the third endpoint is left.
+        Assert.assertSame(third, balancer.select(Collections.<Endpoint>emptySet(), 1));
+        third.failed();
+
+        try {
+            balancer.select(Collections.singleton(third), 1);
+            Assert.fail("Expected the quota to be exhausted.");
+        } catch (DatatxtException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void bulkRequestsLeaveTheInteractiveReserve() throws Exception {
+        Endpoint endpoint = endpoint("http://first", new Quota("a", 10));
+        EndpointBalancer balancer = new EndpointBalancer(Collections.singletonList(endpoint), 0.2f);
+
+        for (int i = 0; i < 8; i++) {
+            Assert.assertNotNull(balancer.select(Collections.<Endpoint>emptySet(), 1, Priority.BULK));
+        }
+        try {
+            balancer.select(Collections.<Endpoint>emptySet(), 1, Priority.BULK);
+            Assert.fail();
+        } catch (DatatxtException ex) {
+            // expected: the last two units are reserved.
+        }
+        Assert.assertNotNull(balancer.select(Collections.<Endpoint>emptySet(), 1, Priority.INTERACTIVE));
+        Assert.assertNotNull(balancer.select(Collections.<Endpoint>emptySet(), 1, Priority.INTERACTIVE));
+        Assert.assertEquals(0, endpoint.getQuota().getRemaining());
+    }
+
+    @Test
+    public void givesBackAndTakesAgainAReservation() throws Exception {
+        Quota quota = new Quota("a", 2);
+        Endpoint endpoint = endpoint("http://first", quota);
+        EndpointBalancer balancer = new EndpointBalancer(Collections.singletonList(endpoint), 0.5f);
+
+        Assert.assertSame(endpoint, balancer.select(new HashSet<Endpoint>(), 1, Priority.BULK));
+        Assert.assertEquals(1, endpoint.getOutstanding());
+        Assert.assertEquals(1, quota.getRemaining());
+
+        // e.g. while waiting for a pacing slot.
+        balancer.release(endpoint, 1);
+        Assert.assertEquals(0, endpoint.getOutstanding());
+        Assert.assertEquals(2, quota.getRemaining());
+
+        Assert.assertTrue(balancer.reacquire(endpoint, 1, Priority.BULK));
+        Assert.assertEquals(1, endpoint.getOutstanding());
+        // the interactive reserve is left alone.
+        Assert.assertFalse(balancer.reacquire(endpoint, 1, Priority.BULK));
+        Assert.assertEquals(1, endpoint.getOutstanding());
+        Assert.assertEquals(1, quota.getRemaining());
+    }
+
+    private Endpoint endpoint(String url, Quota quota) throws Exception {
+        return new Endpoint(new URL(url), quota.getAppId(), "key", 1, quota);
+    }
+
+}
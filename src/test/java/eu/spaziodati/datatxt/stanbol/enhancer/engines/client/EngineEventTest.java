@@ -0,0 +1,25 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EngineEventTest {
+
+    @Test
+    public void recordsNothingWithoutARecording() {
+        for (EngineEvent.Type type : EngineEvent.Type.values()) {
+            EngineEvent event = EngineEvent.begin(type);
+            Assert.assertSame(EngineEvent.NONE, event);
+            Assert.assertSame(event, event.set(EngineEvent.Field.CONTENT_ITEM, "urn:test")
+                    .set(EngineEvent.Field.STATUS, null));
+            event.commit();
+        }
+    }
+
+    @Test
+    public void namesEventTypesInTheDatatxtNamespace() {
+        Assert.assertEquals("eu.spaziodati.datatxt.HTTPCall", EngineEvent.Type.HTTP_CALL.getEventName());
+        Assert.assertEquals("eu.spaziodati.datatxt.ResponseParsing", EngineEvent.Type.PARSE.getEventName());
+    }
+
+}
@@ -0,0 +1,64 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class EntityStoreTest {
+
+    @Test
+    public void forgetsTheLeastRecentlyUsedEntities() {
+        EntityStore store = new EntityStore(2);
+        store.learn(annotation("Paris"));
+        store.learn(annotation("Rome"));
+        Assert.assertEquals("Paris is a city.", store.get(StubDatatxt.uri("Paris")).summary);
+
+        store.learn(annotation("Berlin"));
+        Assert.assertEquals(2, store.size());
+        Assert.assertTrue(store.contains(StubDatatxt.uri("Paris")));
+        Assert.assertTrue(store.contains(StubDatatxt.uri("Berlin")));
+        Assert.assertFalse(store.contains(StubDatatxt.uri("Rome")));
+        Assert.assertEquals(Collections.singletonList("http://dbpedia.org/ontology/City"),
+                store.get(StubDatatxt.uri("Berlin")).types);
+    }
+
+    @Test
+    public void ignoresAnnotationsWithoutUri() {
+        EntityStore store = new EntityStore(2);
+        Annotation annotation = annotation("Paris");
+        annotation.uri = null;
+        store.learn(annotation);
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void warmsUpWithKnownEntitiesAndCoolsDownWithNewOnes() {
+        EntityStore store = new EntityStore(10);
+        Assert.assertFalse(store.isWarm());
+
+        int responses = 0;
+        while (!store.isWarm()) {
+            store.observe(4, 4);
+            responses++;
+        }
+        // a few responses are not enough to trust the store.
+        Assert.assertTrue(String.valueOf(responses), responses > 10);
+
+        store.observe(0, 0);
+        Assert.assertTrue(store.isWarm());
+        store.observe(0, 4);
+        Assert.assertFalse(store.isWarm());
+    }
+
+    private static Annotation annotation(String title) {
+        Annotation annotation = new Annotation();
+        annotation.uri = StubDatatxt.uri(title);
+        annotation.title = title;
+        annotation.summary = title + " is a city.";
+        annotation.types = Collections.singletonList("http://dbpedia.org/ontology/City");
+        return annotation;
+    }
+
+}
@@ -0,0 +1,165 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+
+public class MappedResponseCacheTest {
+
+    @Test
+    public void survivesReopening() throws Exception {
+        File directory = tempDirectory();
+
+        MappedResponseCache cache = new MappedResponseCache(directory, 1024 * 1024);
+        Assert.assertTrue(cache.isWriter());
+        cache.put("key", response("en", 3));
+        cache.close();
+
+        cache = new MappedResponseCache(directory, 1024 * 1024);
+        DatatxtResponse response = cache.get("key");
+        Assert.assertEquals("en", response.lang);
+        Assert.assertEquals(3, response.annotations.size());
+        Assert.assertNull(cache.get("other"));
+        cache.close();
+    }
+
+    @Test
+    public void compactsKeepingNewestResponses() throws Exception {
+        File directory = tempDirectory();
+        MappedResponseCache cache = new MappedResponseCache(directory, 16 * 1024);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, response("en", 2));
+        }
+
+        Assert.assertTrue(cache.size() < 1000);
+        Assert.assertNotNull(cache.get("key999"));
+        Assert.assertNull(cache.get("key0"));
+        cache.close();
+    }
+
+    @Test
+    public void sharesDirectoryReadOnly() throws Exception {
+        File directory = tempDirectory();
+        MappedResponseCache writer = new MappedResponseCache(directory, 1024 * 1024);
+        MappedResponseCache reader = new MappedResponseCache(directory, 1024 * 1024);
+
+        Assert.assertFalse(reader.isWriter());
+        writer.put("key", response("it", 1));
+        reader.put("ignored", response("it", 1));
+
+        Assert.assertEquals("it", reader.get("key").lang);
+        Assert.assertNull(writer.get("ignored"));
+
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void preloadsTheMostRecentResponses() throws Exception {
+        File directory = tempDirectory();
+        MappedResponseCache cache = new MappedResponseCache(directory, 1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, response("en", 1));
+        }
+
+        MemoryResponseCache memory = new MemoryResponseCache(3);
+        Assert.assertEquals(3, cache.preload(memory, memory.getCapacity()));
+        Assert.assertNotNull(memory.get("key9"));
+        Assert.assertNotNull(memory.get("key7"));
+        Assert.assertNull(memory.get("key6"));
+        cache.close();
+    }
+
+    @Test
+    public void keepsKeysWithCollidingHashes() throws Exception {
+        File directory = tempDirectory();
+        MappedResponseCache cache = new MappedResponseCache(directory, 1024 * 1024);
+        cache.put("one", 42, response("en", 1));
+        cache.put("two", 42, response("it", 2));
+        cache.put("one", 42, response("de", 3));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("de", cache.get("one", 42).lang);
+        Assert.assertEquals("it", cache.get("two", 42).lang);
+        Assert.assertNull(cache.get("three", 42));
+        cache.close();
+    }
+
+    @Test
+    public void readersWaitForTheWriterToInitialize() throws Exception {
+        final File directory = tempDirectory();
+        // Another writer holds the lock but has not written CURRENT yet.
+        final FileChannel channel = new RandomAccessFile(new File(directory, "lock"), "rw").getChannel();
+        final FileLock lock = channel.lock();
+        final MappedResponseCache[] writer = new MappedResponseCache[1];
+        Thread initializer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    lock.release();
+                    channel.close();
+                    writer[0] = new MappedResponseCache(directory, 1024 * 1024);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        initializer.start();
+
+        MappedResponseCache reader = new MappedResponseCache(directory, 1024 * 1024);
+        initializer.join();
+        Assert.assertFalse(reader.isWriter());
+        Assert.assertTrue(writer[0].isWriter());
+        writer[0].put("key", response("en", 1));
+        Assert.assertEquals("en", reader.get("key").lang);
+
+        reader.close();
+        writer[0].close();
+    }
+
+    @Test
+    public void deletesSupersededGenerationsOneCompactionLater() throws Exception {
+        File directory = tempDirectory();
+        MappedResponseCache cache = new MappedResponseCache(directory, 16 * 1024);
+        for (int i = 0; !new File(directory, "log-3").exists(); i++) {
+            cache.put("key" + i, response("en", 2));
+        }
+
+        // the generation just superseded may still be mapped by readers.
+        Assert.assertTrue(new File(directory, "log-2").exists());
+        Assert.assertTrue(new File(directory, "index-2").exists());
+        Assert.assertFalse(new File(directory, "log-1").exists());
+        Assert.assertFalse(new File(directory, "index-1").exists());
+        cache.close();
+    }
+
+    private DatatxtResponse response(String lang, int annotations) {
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = lang;
+        response.annotations = new ArrayList<>();
+        for (int i = 0; i < annotations; i++) {
+            DatatxtResponse.Annotation annotation = new DatatxtResponse.Annotation();
+            annotation.start = i * 10;
+            annotation.end = i * 10 + 5;
+            annotation.uri = "http://en.wikipedia.org/wiki/Entity_" + i;
+            response.annotations.add(annotation);
+        }
+        return response;
+    }
+
+    private File tempDirectory() throws Exception {
+        File directory = File.createTempFile("datatxt-cache", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdirs());
+        directory.deleteOnExit();
+        return directory;
+    }
+
+}
@@ -0,0 +1,37 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+public class QueryDataTest {
+
+    private static final String TEXT = "The Mona Lisa (\u00e8 \"La Gioconda\") 100% \u2013 \ud83d\ude00 & more\nof it=ok";
+
+    @Test
+    public void encodesLikeURLEncoder() throws Exception {
+        QueryData query = new QueryData()
+                .add("$app_id", "id")
+                .add("lang", "  ")
+                .add("text", TEXT);
+
+        String expected = "%24app_id=id&text=" + URLEncoder.encode(TEXT.trim(), "UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        query.writeTo(out);
+
+        Assert.assertEquals(expected, new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(expected.length(), query.contentLength());
+    }
+
+    @Test
+    public void redactsCredentialsWhenLogged() throws Exception {
+        String logged = new QueryData().add("$app_key", "secret").add("text", TEXT).toString(5);
+        Assert.assertFalse(logged.contains("secret"));
+        Assert.assertTrue(logged.contains("text=The M..."));
+    }
+
+}
@@ -0,0 +1,85 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class QuotaTest {
+
+    @Test
+    public void followsTheUnitsReportedByDatatxt() {
+        Quota quota = new Quota("a", 0);
+        Assert.assertEquals(Long.MAX_VALUE, quota.getRemaining());
+
+        long resetAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        Assert.assertTrue(quota.tryAcquire(1));
+        quota.observe(1, 3, 2, resetAt);
+        Assert.assertEquals(2, quota.getRemaining());
+        Assert.assertEquals(resetAt, quota.getResetAt());
+        Assert.assertEquals(5, quota.getBudget());
+
+        Assert.assertTrue(quota.tryAcquire(1));
+        Assert.assertFalse(quota.tryAcquire(1, 1));
+        Assert.assertTrue(quota.tryAcquire(1));
+        Assert.assertTrue(quota.isExhausted());
+    }
+
+    @Test
+    public void givesBackUnitsOfFailedRequests() {
+        Quota quota = new Quota("a", 2);
+        Assert.assertTrue(quota.tryAcquire(1));
+        Assert.assertTrue(quota.tryAcquire(1));
+        Assert.assertTrue(quota.isExhausted());
+
+        quota.release(1);
+        Assert.assertEquals(1, quota.getRemaining());
+
+        quota.observe(0, -1, 5, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        Assert.assertTrue(quota.tryAcquire(1));
+        quota.release(1);
+        Assert.assertEquals(1, quota.getRemaining());
+        Assert.assertFalse(quota.isExhausted());
+    }
+
+    @Test
+    public void projectsTheExhaustion() throws Exception {
+        Quota quota = new Quota("a", 0);
+        Assert.assertEquals(Long.MAX_VALUE, quota.getProjectedExhaustion());
+
+        Thread.sleep(20);
+        quota.tryAcquire(1);
+        quota.observe(1, 10, 1000, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        long exhaustion = quota.getProjectedExhaustion();
+        Assert.assertTrue(exhaustion > System.currentTimeMillis());
+        Assert.assertTrue(exhaustion < System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+    }
+
+    @Test
+    public void pacesRequestsUntilTheReset() {
+        Quota quota = new Quota("a", 0);
+        Assert.assertEquals(0, quota.pace(1, Long.MAX_VALUE));
+
+        // 100 units left for 100 seconds: one unit a second, after a burst of ten.
+        quota.observe(0, -1, 100, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(100));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, quota.pace(1, 0));
+        }
+        Assert.assertEquals(-1, quota.pace(1, 0));
+        long wait = quota.pace(1, Long.MAX_VALUE);
+        Assert.assertTrue(String.valueOf(wait), wait > 0 && wait <= 1000);
+    }
+
+    @Test
+    public void parsesUnitHeaders() {
+        Assert.assertEquals(1, DatatxtClient.parseUnits("0.5", true));
+        Assert.assertEquals(998, DatatxtClient.parseUnits("998.97", false));
+        Assert.assertEquals(-1, DatatxtClient.parseUnits("n/a", false));
+        Assert.assertEquals(-1, DatatxtClient.parseUnits(null, false));
+
+        Assert.assertEquals(1433894400000L, DatatxtClient.parseTime("2015-06-10 00:00:00 +0000"));
+        Assert.assertEquals(1433894400000L, DatatxtClient.parseTime("1433894400"));
+        Assert.assertEquals(0, DatatxtClient.parseTime("tomorrow"));
+    }
+
+}
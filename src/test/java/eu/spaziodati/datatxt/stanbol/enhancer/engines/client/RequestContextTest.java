@@ -0,0 +1,52 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestContextTest {
+
+    @Test
+    public void expires() throws Exception {
+        RequestContext context = new RequestContext(10);
+        context.check();
+        Thread.sleep(20);
+        try {
+            context.check();
+            Assert.fail();
+        } catch (DeadlineException ex) {
+            Assert.assertFalse(ex.isCancelled());
+        }
+    }
+
+    @Test
+    public void unboundedWithoutTimeout() throws Exception {
+        RequestContext context = new RequestContext(0);
+        Assert.assertEquals(Long.MAX_VALUE, context.remaining());
+        context.check();
+    }
+
+    @Test
+    public void cancels() throws Exception {
+        RequestContext context = new RequestContext(0);
+        context.cancel();
+        try {
+            context.check();
+            Assert.fail();
+        } catch (DeadlineException ex) {
+            Assert.assertTrue(ex.isCancelled());
+        }
+    }
+
+    @Test
+    public void interruptionCancels() throws Exception {
+        RequestContext context = new RequestContext(0);
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertTrue(context.isCancelled());
+        } finally {
+            Thread.interrupted();
+        }
+        Assert.assertFalse(context.isCancelled());
+    }
+
+}
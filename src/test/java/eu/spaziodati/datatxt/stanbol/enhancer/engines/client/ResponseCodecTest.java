@@ -0,0 +1,110 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import com.google.gson.GsonBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class ResponseCodecTest {
+
+    @Test
+    public void roundTrips() {
+        DatatxtResponse expected = response(20);
+        DatatxtResponse actual = ResponseCodec.decode(ResponseCodec.encode(expected));
+
+        Assert.assertEquals(expected.time, actual.time);
+        Assert.assertEquals(expected.lang, actual.lang);
+        Assert.assertEquals(expected.langConfidence, actual.langConfidence, 0f);
+        Assert.assertFalse(actual.error);
+        Assert.assertNull(actual.message);
+        Assert.assertEquals(expected.annotations.size(), actual.annotations.size());
+
+        Iterator<DatatxtResponse.Annotation> a = actual.annotations.iterator();
+        for (DatatxtResponse.Annotation e : expected.annotations) {
+            DatatxtResponse.Annotation next = a.next();
+            Assert.assertEquals(e.start, next.start);
+            Assert.assertEquals(e.end, next.end);
+            Assert.assertEquals(e.confidence, next.confidence, 0f);
+            Assert.assertEquals(e.spot, next.spot);
+            Assert.assertEquals(e.title, next.title);
+            Assert.assertEquals(e.uri, next.uri);
+            Assert.assertEquals(e.summary, next.summary);
+            Assert.assertEquals(e.types, next.types);
+            if (e.image == null) {
+                Assert.assertNull(next.image);
+            } else {
+                Assert.assertEquals(e.image.full, next.image.full);
+                Assert.assertEquals(e.image.thumbnail, next.image.thumbnail);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsErrors() {
+        DatatxtResponse error = new DatatxtResponse();
+        error.error = true;
+        error.code = "error.unmanagedLanguage";
+        error.message = "Unmanaged language [zz]";
+
+        DatatxtResponse actual = ResponseCodec.decode(ResponseCodec.encode(error));
+        Assert.assertTrue(actual.error);
+        Assert.assertEquals(error.code, actual.code);
+        Assert.assertEquals(error.message, actual.message);
+        Assert.assertNull(actual.annotations);
+    }
+
+    @Test
+    public void isMuchSmallerThanJson() {
+        DatatxtResponse response = response(50);
+        int json = new GsonBuilder().create().toJson(response).getBytes(StandardCharsets.UTF_8).length;
+        int binary = ResponseCodec.encode(response).length;
+        Assert.assertTrue(binary + " vs " + json, binary * 3 < json);
+    }
+
+    @Test
+    public void rejectsCorruptedData() {
+        byte[] data = ResponseCodec.encode(response(3));
+        Assert.assertTrue(ResponseCodec.isEncoded(data));
+        Assert.assertFalse(ResponseCodec.isEncoded("{}".getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            ResponseCodec.decode(Arrays.copyOf(data, data.length / 2));
+            Assert.fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private DatatxtResponse response(int annotations) {
+        DatatxtResponse response = new DatatxtResponse();
+        response.time = 7;
+        response.lang = "en";
+        response.langConfidence = 0.93f;
+        response.annotations = new ArrayList<>();
+        for (int i = 0; i < annotations; i++) {
+            // The same few entities, spots and types again and again, like in a real document.
+            DatatxtResponse.Annotation annotation = new DatatxtResponse.Annotation();
+            annotation.start = 1000 - i * 10;
+            annotation.end = annotation.start + 9;
+            annotation.confidence = 0.5f + i % 5 / 10f;
+            annotation.spot = "Mona Lisa " + i % 3;
+            annotation.title = "Mona Lisa";
+            annotation.uri = "http://en.wikipedia.org/wiki/Mona_Lisa_" + i % 4;
+            annotation.summary = i % 2 == 0 ? "The Mona Lisa is a half-length portrait painting." : null;
+            annotation.types = Arrays.asList("http://dbpedia.org/ontology/Artwork",
+                    "http://dbpedia.org/ontology/Work");
+            if (i % 3 == 0) {
+                annotation.image = new DatatxtResponse.Image();
+                annotation.image.full = "https://commons.wikimedia.org/wiki/Special:FilePath/Mona_Lisa.jpg";
+                annotation.image.thumbnail = annotation.image.full + "?width=300";
+            }
+            response.annotations.add(annotation);
+        }
+        return response;
+    }
+
+}
@@ -0,0 +1,110 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import com.google.gson.GsonBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.EnumSet;
+
+public class ResponseReaderTest {
+
+    private static final String RESPONSE = "{\"time\": 3, \"timestamp\": \"2015-01-01T00:00:00\","
+            + " \"lang\": \"en\", \"langConfidence\": 0.93, \"annotations\": [{\"id\": 70889,"
+            + " \"title\": \"Mona Lisa\", \"uri\": \"http://en.wikipedia.org/wiki/Mona_Lisa\", \"label\": \"Mona\","
+            + " \"confidence\": 0.85, \"spot\": \"Mona Lisa\", \"start\": 4, \"end\": 13,"
+            + " \"abstract\": \"A portrait.\", \"types\": [\"http://dbpedia.org/ontology/Artwork\"],"
+            + " \"image\": {\"full\": \"http://x/full.jpg\", \"thumbnail\": \"http://x/thumb.jpg\"},"
+            + " \"categories\": [\"Paintings\"], \"lod\": {\"dbpedia\": \"http://dbpedia.org/resource/Mona_Lisa\"}}]}";
+
+    @Test
+    public void readsLikeGson() throws Exception {
+        DatatxtResponse expected = new GsonBuilder().create().fromJson(RESPONSE, DatatxtResponse.class);
+        DatatxtResponse actual = new ResponseReader().read(new StringReader(RESPONSE));
+
+        Assert.assertEquals(expected.time, actual.time);
+        Assert.assertEquals(expected.lang, actual.lang);
+        Assert.assertEquals(expected.langConfidence, actual.langConfidence, 0f);
+
+        DatatxtResponse.Annotation e = expected.annotations.iterator().next();
+        DatatxtResponse.Annotation a = actual.annotations.iterator().next();
+        Assert.assertEquals(e.title, a.title);
+        Assert.assertEquals(e.uri, a.uri);
+        Assert.assertEquals(e.spot, a.spot);
+        Assert.assertEquals(e.start, a.start);
+        Assert.assertEquals(e.end, a.end);
+        Assert.assertEquals(e.confidence, a.confidence, 0f);
+        Assert.assertEquals(e.summary, a.summary);
+        Assert.assertEquals(e.types, a.types);
+        Assert.assertEquals(e.image.full, a.image.full);
+        Assert.assertEquals(e.image.thumbnail, a.image.thumbnail);
+    }
+
+    @Test
+    public void skipsFieldsOutsideTheProjection() throws Exception {
+        DatatxtResponse response = new ResponseReader(EnumSet.of(ResponseField.TYPES))
+                .read(new StringReader(RESPONSE));
+
+        DatatxtResponse.Annotation a = response.annotations.iterator().next();
+        Assert.assertEquals("Mona Lisa", a.title);
+        Assert.assertEquals(1, a.types.size());
+        Assert.assertNull(a.summary);
+        Assert.assertNull(a.image);
+    }
+
+    @Test
+    public void keepsTheMostConfidentAnnotations() throws Exception {
+        StringBuilder json = new StringBuilder("{\"annotations\": [");
+        float[] confidences = {0.3f, 0.9f, 0.1f, 0.7f, 0.5f, 0.8f};
+        for (int i = 0; i < confidences.length; i++) {
+            json.append(i > 0 ? ", " : "").append("{\"start\": ").append(i * 10).append(", \"end\": ")
+                    .append(i * 10 + 5).append(", \"confidence\": ").append(confidences[i]).append('}');
+        }
+        json.append("]}");
+
+        DatatxtResponse response = new ResponseReader(EnumSet.noneOf(ResponseField.class), 3)
+                .read(new StringReader(json.toString()));
+
+        Assert.assertEquals(3, response.annotations.size());
+        int previous = -1;
+        for (DatatxtResponse.Annotation a : response.annotations) {
+            Assert.assertTrue(a.confidence >= 0.7f);
+            Assert.assertTrue(a.start > previous);
+            previous = a.start;
+        }
+    }
+
+    @Test
+    public void dropsShortSpotsBeforeRanking() throws Exception {
+        StringBuilder json = new StringBuilder("{\"annotations\": [");
+        String[] spots = {"Mona Lisa", "it", "Louvre", "on", "Paris"};
+        float[] confidences = {0.5f, 0.9f, 0.6f, 0.8f, 0.7f};
+        for (int i = 0; i < spots.length; i++) {
+            json.append(i > 0 ? ", " : "").append("{\"start\": ").append(i * 10).append(", \"spot\": \"")
+                    .append(spots[i]).append("\", \"confidence\": ").append(confidences[i]).append('}');
+        }
+        json.append("]}");
+
+        DatatxtResponse response = new ResponseReader(EnumSet.noneOf(ResponseField.class), 2, 3)
+                .read(new StringReader(json.toString()));
+
+        // the short, confident spots don't push out the long ones.
+        Assert.assertEquals(2, response.annotations.size());
+        for (DatatxtResponse.Annotation a : response.annotations) {
+            Assert.assertTrue(a.spot, a.spot.length() >= 3);
+            Assert.assertTrue(a.confidence >= 0.6f);
+        }
+    }
+
+    @Test
+    public void readsErrors() throws Exception {
+        DatatxtResponse response = new ResponseReader().read(new StringReader(
+                "{\"error\": true, \"code\": \"error.unmanagedLanguage\", \"message\": \"Unmanaged language [zz]\","
+                        + " \"data\": null}"));
+
+        Assert.assertTrue(response.error);
+        Assert.assertEquals("error.unmanagedLanguage", response.code);
+        Assert.assertNull(response.annotations);
+    }
+
+}
@@ -0,0 +1,190 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.DatatxtProperties;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Image;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A local stand-in for dataTXT NEX, for tests which need a {@link DatatxtClient} without the network. It annotates
+ * each occurrence of a fixed set of spots, with the optional fields the request includes, and records the
+ * parameters of every request it gets.
+ */
+public class StubDatatxt implements Closeable {
+
+    private final HttpServer fServer;
+
+    private final List<String> fSpots;
+
+    private volatile long fDelay;
+
+    private final List<Map<String, String>> fRequests = Collections.synchronizedList(
+            new ArrayList<Map<String, String>>());
+
+    /**
+     * @param spots the spots to annotate. Each one links to the Wikipedia page with its name.
+     */
+    public StubDatatxt(String... spots) throws IOException {
+        fSpots = Arrays.asList(spots);
+        fServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        fServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        fServer.start();
+    }
+
+    /**
+     * @return a configuration of a client calling this stub.
+     */
+    public Dictionary<String, Object> config() {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(DatatxtProperties.DATATXT_NEX_URL,
+                "http://127.0.0.1:" + fServer.getAddress().getPort() + "/datatxt/nex/v1");
+        config.put(DatatxtProperties.DATATXT_APP_ID, "stub");
+        config.put(DatatxtProperties.DATATXT_APP_KEY, "stub");
+        return config;
+    }
+
+    /**
+     * @return the parameters of the requests received so far, in order.
+     */
+    public List<Map<String, String>> getRequests() {
+        synchronized (fRequests) {
+            return new ArrayList<>(fRequests);
+        }
+    }
+
+    /**
+     * @return the texts of the requests received so far, in order.
+     */
+    public List<String> getTexts() {
+        List<String> texts = new ArrayList<>();
+        for (Map<String, String> request : getRequests()) {
+            texts.add(request.get("text"));
+        }
+        return texts;
+    }
+
+    /**
+     * @param delay the milliseconds the stub waits before answering.
+     */
+    public void setDelay(long delay) {
+        fDelay = delay;
+    }
+
+    public void clear() {
+        fRequests.clear();
+    }
+
+    public static String uri(String spot) {
+        return "http://en.wikipedia.org/wiki/" + spot.replace(' ', '_');
+    }
+
+    @Override
+    public void close() {
+        fServer.stop(0);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters;
+        try (InputStream is = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            parameters = decode(IOUtils.toString(is, StandardCharsets.UTF_8.name()));
+        }
+        fRequests.add(parameters);
+        if (fDelay > 0) {
+            try {
+                Thread.sleep(fDelay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String text = parameters.get("text");
+        String include = parameters.get("include") != null ? parameters.get("include") : "";
+        DatatxtResponse response = new DatatxtResponse();
+        response.lang = parameters.get("lang") != null ? parameters.get("lang") : "en";
+        response.langConfidence = 1f;
+        List<Annotation> annotations = new ArrayList<>();
+        for (String spot : fSpots) {
+            for (int start = text.indexOf(spot); start >= 0; start = text.indexOf(spot, start + 1)) {
+                annotations.add(annotation(spot, start, include));
+            }
+        }
+        // as dataTXT does, in the order of the text.
+        Collections.sort(annotations, new Comparator<Annotation>() {
+            @Override
+            public int compare(Annotation a, Annotation b) {
+                return Integer.compare(a.start, b.start);
+            }
+        });
+        response.annotations = annotations;
+
+        byte[] body = new Gson().toJson(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Annotation annotation(String spot, int start, String include) {
+        Annotation annotation = new Annotation();
+        annotation.start = start;
+        annotation.end = start + spot.length();
+        annotation.spot = spot;
+        annotation.confidence = 0.8f;
+        annotation.title = spot;
+        annotation.uri = uri(spot);
+        if (include.contains(ResponseField.ABSTRACT.getName())) {
+            annotation.summary = spot + " is an entity.";
+        }
+        if (include.contains(ResponseField.TYPES.getName())) {
+            annotation.types = Collections.singletonList("http://dbpedia.org/ontology/Thing");
+        }
+        if (include.contains(ResponseField.IMAGE.getName())) {
+            annotation.image = new Image();
+            annotation.image.full = annotation.uri + ".jpg";
+            annotation.image.thumbnail = annotation.uri + ".thumb.jpg";
+        }
+        return annotation;
+    }
+
+    private static Map<String, String> decode(String form) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+        return parameters;
+    }
+
+}
@@ -0,0 +1,36 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.client;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class TraceTest {
+
+    @Test
+    public void rendersSpans() {
+        Trace trace = new Trace("urn:content-item");
+        trace.start("cache").attr("hit", false).end();
+        trace.start("http").attr("code", 200).attr("received", 42);
+
+        String rendered = trace.toString();
+        Assert.assertTrue(rendered, rendered.startsWith("urn:content-item "));
+        Assert.assertTrue(rendered, rendered.contains(" cache[hit=false]="));
+        // the http span never ended.
+        Assert.assertTrue(rendered, rendered.endsWith(", http[code=200, received=42]=?"));
+    }
+
+    @Test
+    public void metersResponses() throws Exception {
+        byte[] response = "{\"annotations\": []}".getBytes(StandardCharsets.UTF_8);
+        MeteredInputStream meter = new MeteredInputStream(new ByteArrayInputStream(response), 5);
+
+        IOUtils.toByteArray(meter);
+
+        Assert.assertEquals(response.length, meter.getCount());
+        Assert.assertEquals("{\"ann", meter.getExcerpt());
+    }
+
+}
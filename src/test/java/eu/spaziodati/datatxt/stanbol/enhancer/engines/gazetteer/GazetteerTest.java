@@ -0,0 +1,129 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.gazetteer;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class GazetteerTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void matchesWholeWordsLeftmostLongest() {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("paris", "louvre", "louvre museum", "mona lisa", "is"));
+
+        List<AhoCorasick.Match> matches = automaton.match("The Mona Lisa is in the Louvre Museum, Paris (not Parisian).");
+
+        List<String> found = new ArrayList<>();
+        for (AhoCorasick.Match match : matches) {
+            found.add(match.start + ":" + match.pattern);
+        }
+        Assert.assertEquals(Arrays.asList("4:3", "14:4", "24:2", "39:0"), found);
+    }
+
+    @Test
+    public void annotatesWithLearnedEntities() {
+        Gazetteer gazetteer = new Gazetteer(10, DIRECT);
+        DatatxtResponse learned = new DatatxtResponse();
+        learned.lang = "en";
+        learned.annotations = Arrays.asList(
+                annotation("Leonardo", "http://en.wikipedia.org/wiki/Leonardo_da_Vinci", 0.8f),
+                annotation("Leonardo", "http://en.wikipedia.org/wiki/Leonardo_DiCaprio", 0.4f));
+        gazetteer.learn(learned);
+
+        String text = "A painting by leonardo.";
+        DatatxtResponse response = gazetteer.annotate(text, "en");
+
+        Assert.assertEquals(1, response.annotations.size());
+        Annotation annotation = response.annotations.iterator().next();
+        Assert.assertEquals("http://en.wikipedia.org/wiki/Leonardo_da_Vinci", annotation.uri);
+        Assert.assertEquals("leonardo", annotation.spot);
+        Assert.assertEquals(text.indexOf("leonardo"), annotation.start);
+        Assert.assertEquals(0.8f * Gazetteer.CONFIDENCE_FACTOR, annotation.confidence, 0.0001f);
+    }
+
+    @Test
+    public void rebuildsOffTheCallingThread() {
+        final List<Runnable> builds = new ArrayList<>();
+        Gazetteer gazetteer = new Gazetteer(10, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                builds.add(command);
+            }
+        });
+        DatatxtResponse learned = new DatatxtResponse();
+        learned.lang = "en";
+        learned.annotations = Arrays.asList(annotation("Paris", "http://en.wikipedia.org/wiki/Paris", 0.8f));
+        gazetteer.learn(learned);
+        Assert.assertEquals(1, builds.size());
+
+        // the automaton is not there yet: nothing is annotated, and no other build is scheduled.
+        Assert.assertTrue(gazetteer.annotate("Paris, France.", "en").annotations.isEmpty());
+        Assert.assertEquals(1, builds.size());
+
+        builds.get(0).run();
+        Assert.assertEquals(1, gazetteer.annotate("Paris, France.", "en").annotations.size());
+    }
+
+    @Test
+    public void annotatesWithTheEntitiesOfTheLanguage() {
+        final List<Runnable> builds = new ArrayList<>();
+        Gazetteer gazetteer = new Gazetteer(10, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                builds.add(command);
+            }
+        });
+        DatatxtResponse english = new DatatxtResponse();
+        english.lang = "en";
+        english.annotations = Arrays.asList(annotation("Paris", "http://en.wikipedia.org/wiki/Paris", 0.8f),
+                annotation("Louvre", "http://en.wikipedia.org/wiki/Louvre", 0.8f));
+        gazetteer.learn(english);
+        DatatxtResponse italian = new DatatxtResponse();
+        italian.lang = "it";
+        italian.annotations = Arrays.asList(annotation("Parigi", "http://it.wikipedia.org/wiki/Parigi", 0.8f),
+                annotation("Louvre", "http://it.wikipedia.org/wiki/Museo_del_Louvre", 0.9f));
+        gazetteer.learn(italian);
+        // a single build, for both languages.
+        Assert.assertEquals(1, builds.size());
+        builds.get(0).run();
+
+        String text = "Parigi, Paris: the Louvre.";
+        Assert.assertEquals(Arrays.asList("http://en.wikipedia.org/wiki/Paris", "http://en.wikipedia.org/wiki/Louvre"),
+                uris(gazetteer.annotate(text, "en-GB")));
+        Assert.assertEquals(Arrays.asList("http://it.wikipedia.org/wiki/Parigi",
+                "http://it.wikipedia.org/wiki/Museo_del_Louvre"), uris(gazetteer.annotate(text, "it")));
+        Assert.assertTrue(gazetteer.annotate(text, "de").annotations.isEmpty());
+    }
+
+    private static List<String> uris(DatatxtResponse response) {
+        List<String> uris = new ArrayList<>();
+        for (Annotation annotation : response.annotations) {
+            uris.add(annotation.uri);
+        }
+        return uris;
+    }
+
+    private Annotation annotation(String spot, String uri, float confidence) {
+        Annotation annotation = new Annotation();
+        annotation.start = 10;
+        annotation.end = 10 + spot.length();
+        annotation.spot = spot;
+        annotation.uri = uri;
+        annotation.title = spot;
+        annotation.confidence = confidence;
+        return annotation;
+    }
+
+}
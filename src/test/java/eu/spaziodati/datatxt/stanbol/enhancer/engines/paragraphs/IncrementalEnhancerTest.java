@@ -0,0 +1,91 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.StubDatatxt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.paragraphs;
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.starts;
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.stubDatatxt;
+
+public class IncrementalEnhancerTest {
+
+    private static final String FIRST = "The Mona Lisa is a portrait painted by Leonardo.";
+
+    private static final String SECOND = "It has been held at the Louvre for centuries, behind a glass.";
+
+    private static final String THIRD = "Every year, millions of visitors come to Paris to see it.";
+
+    private static final String FOURTH = "Leonardo worked on it for years, and never gave it away.";
+
+    @Test
+    public void sendsOnlyTheEditedParagraph() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            IncrementalEnhancer enhancer = new IncrementalEnhancer(10);
+            String original = paragraphs(FIRST, SECOND, THIRD, FOURTH);
+            DatatxtResponse response = enhancer.enhance("doc", original, "en", client);
+            Assert.assertEquals(Arrays.asList(original), datatxt.getTexts());
+            assertSpotsMatch(original, response, 5);
+
+            // the first paragraph grows: the others move forward.
+            String edited = "The Mona Lisa is a portrait painted by Leonardo, in Florence.";
+            String text = paragraphs(edited, SECOND, THIRD, FOURTH);
+            datatxt.clear();
+            response = enhancer.enhance("doc", text, "en", client);
+
+            Assert.assertEquals(Arrays.asList(edited), datatxt.getTexts());
+            assertSpotsMatch(text, response, 6);
+            Assert.assertEquals(Arrays.asList(text.indexOf("Mona Lisa"), text.indexOf("Leonardo"),
+                            text.indexOf("Florence"), text.indexOf("Louvre"), text.indexOf("Paris"),
+                            text.lastIndexOf("Leonardo")), starts(response));
+
+            // nothing changed: nothing is sent.
+            datatxt.clear();
+            response = enhancer.enhance("doc", text, "en", client);
+            Assert.assertTrue(datatxt.getTexts().isEmpty());
+            assertSpotsMatch(text, response, 6);
+        }
+    }
+
+    @Test
+    public void sendsTheWholeTextWhenMostOfItChanged() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            IncrementalEnhancer enhancer = new IncrementalEnhancer(10);
+            enhancer.enhance("doc", paragraphs(FIRST, SECOND), "en", client);
+
+            String text = paragraphs("Leonardo also painted in Florence.", "Paris has many museums, the Louvre first.",
+                    SECOND);
+            datatxt.clear();
+            DatatxtResponse response = enhancer.enhance("doc", text, "en", client);
+
+            Assert.assertEquals(Arrays.asList(text), datatxt.getTexts());
+            assertSpotsMatch(text, response, 5);
+        }
+    }
+
+    @Test
+    public void forgottenDocumentsAreEnhancedInFull() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            IncrementalEnhancer enhancer = new IncrementalEnhancer(1);
+            String text = paragraphs(FIRST, SECOND, THIRD);
+            enhancer.enhance("doc", text, "en", client);
+            // a second document evicts the first.
+            enhancer.enhance("other", FOURTH, "en", client);
+
+            datatxt.clear();
+            enhancer.enhance("doc", text, "en", client);
+            Assert.assertEquals(Arrays.asList(text), datatxt.getTexts());
+        }
+    }
+
+    private static void assertSpotsMatch(String text, DatatxtResponse response, int count) {
+        TestUtils.assertSpotsMatch(text, response);
+        Assert.assertEquals(count, response.annotations.size());
+    }
+
+}
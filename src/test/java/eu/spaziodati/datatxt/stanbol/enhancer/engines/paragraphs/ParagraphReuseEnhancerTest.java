@@ -0,0 +1,110 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtClient;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse;
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.StubDatatxt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.assertSpotsMatch;
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.paragraphs;
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.starts;
+import static eu.spaziodati.datatxt.stanbol.enhancer.engines.TestUtils.stubDatatxt;
+
+public class ParagraphReuseEnhancerTest {
+
+    private static final String FILLER = " Nothing in this sentence is worth linking, it only takes some room.";
+
+    private static final String DISCLAIMER = padded("This message comes from the Louvre, in Paris.");
+
+    private static final String FOOTER = padded("Leonardo fans, subscribe to our newsletter.");
+
+    private static final String FIRST = "The Mona Lisa was moved to another room this week.";
+
+    private static final String SECOND = "A drawing from Florence is on show for the first time.";
+
+    @Test
+    public void reusesKnownParagraphsAndSendsOnlyTheNovelOnes() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            ParagraphReuseEnhancer enhancer = new ParagraphReuseEnhancer(100);
+            String first = paragraphs(FIRST, DISCLAIMER, FOOTER);
+            enhancer.enhance(first, "en", client, client.newContext());
+            Assert.assertEquals(Arrays.asList(first), datatxt.getTexts());
+
+            String text = paragraphs(SECOND, DISCLAIMER, FOOTER);
+            datatxt.clear();
+            DatatxtResponse response = enhancer.enhance(text, "en", client, client.newContext());
+
+            // only the novel paragraph, with some of the text around it.
+            Assert.assertEquals(1, datatxt.getTexts().size());
+            String sent = datatxt.getTexts().get(0);
+            Assert.assertTrue(sent, sent.startsWith(SECOND));
+            Assert.assertFalse(sent, sent.contains("Leonardo"));
+            Assert.assertEquals(2, enhancer.getReused());
+
+            // the stored annotations are shifted to where the paragraphs are now.
+            assertSpotsMatch(text, response);
+            Assert.assertEquals(Arrays.asList(text.indexOf("Florence"), text.indexOf("Louvre"),
+                    text.indexOf("Paris"), text.indexOf("Leonardo")), starts(response));
+        }
+    }
+
+    @Test
+    public void sendsTheWholeTextWhenMostOfItIsNovel() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            ParagraphReuseEnhancer enhancer = new ParagraphReuseEnhancer(100);
+            enhancer.enhance(paragraphs(FIRST, DISCLAIMER), "en", client, client.newContext());
+
+            String text = paragraphs(padded(SECOND), padded(FIRST + FILLER), DISCLAIMER);
+            datatxt.clear();
+            DatatxtResponse response = enhancer.enhance(text, "en", client, client.newContext());
+
+            Assert.assertEquals(Arrays.asList(text), datatxt.getTexts());
+            Assert.assertEquals(0, enhancer.getReused());
+            assertSpotsMatch(text, response);
+            Assert.assertEquals(4, response.annotations.size());
+        }
+    }
+
+    @Test
+    public void storesRepeatedNovelParagraphsOnce() throws Exception {
+        try (StubDatatxt datatxt = stubDatatxt(); DatatxtClient client = DatatxtClient.newClient(datatxt.config())) {
+            ParagraphReuseEnhancer enhancer = new ParagraphReuseEnhancer(100);
+            enhancer.enhance(paragraphs(FIRST, DISCLAIMER, FOOTER), "en", client, client.newContext());
+
+            // the novel paragraph appears twice, but is sent once.
+            String text = paragraphs(SECOND, DISCLAIMER, FOOTER, SECOND);
+            datatxt.clear();
+            DatatxtResponse response = enhancer.enhance(text, "en", client, client.newContext());
+            Assert.assertEquals(1, datatxt.getTexts().size());
+            String sent = datatxt.getTexts().get(0);
+            Assert.assertEquals(sent.indexOf(SECOND), sent.lastIndexOf(SECOND));
+            assertSpotsMatch(text, response);
+            Assert.assertEquals(Arrays.asList(text.indexOf("Florence"), text.indexOf("Louvre"),
+                    text.indexOf("Paris"), text.indexOf("Leonardo"), text.lastIndexOf("Florence")), starts(response));
+
+            // and is now known to the next documents.
+            text = paragraphs(DISCLAIMER, SECOND);
+            datatxt.clear();
+            response = enhancer.enhance(text, "en", client, client.newContext());
+            Assert.assertTrue(datatxt.getTexts().isEmpty());
+            assertSpotsMatch(text, response);
+            Assert.assertEquals(Arrays.asList(text.indexOf("Louvre"), text.indexOf("Paris"),
+                    text.indexOf("Florence")), starts(response));
+        }
+    }
+
+    /**
+     * @return a paragraph longer than the context sent around novel paragraphs.
+     */
+    private static String padded(String sentence) {
+        StringBuilder paragraph = new StringBuilder(sentence);
+        while (paragraph.length() < 400) {
+            paragraph.append(FILLER);
+        }
+        return paragraph.toString();
+    }
+
+}
@@ -0,0 +1,77 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import eu.spaziodati.datatxt.stanbol.enhancer.engines.client.DatatxtResponse.Annotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ParagraphsTest {
+
+    private static final String TEXT = "The Mona Lisa is a painting.\n\n  \nIt's held at the Louvre.\n\nParis.";
+
+    @Test
+    public void splitsOnBlankLines() {
+        List<Paragraph> paragraphs = Paragraphs.split(TEXT);
+
+        Assert.assertEquals(3, paragraphs.size());
+        Assert.assertEquals("The Mona Lisa is a painting.", text(paragraphs.get(0)));
+        Assert.assertEquals("It's held at the Louvre.", text(paragraphs.get(1)));
+        Assert.assertEquals("Paris.", text(paragraphs.get(2)));
+    }
+
+    @Test
+    public void fingerprintsDependOnContentOnly() {
+        List<Paragraph> original = Paragraphs.split(TEXT);
+        List<Paragraph> edited = Paragraphs.split("A new paragraph.\n\n" + TEXT);
+
+        Assert.assertEquals(original.get(0).getFingerprint(), edited.get(1).getFingerprint());
+        Assert.assertEquals(original.get(2).getFingerprint(), edited.get(3).getFingerprint());
+    }
+
+    @Test
+    public void distributesAnnotationsWithRelativeOffsets() {
+        List<Paragraph> paragraphs = Paragraphs.split(TEXT);
+        int louvre = TEXT.indexOf("Louvre");
+
+        List<List<Annotation>> distributed = Paragraphs.distribute(paragraphs,
+                Arrays.asList(annotation(4, 13), annotation(louvre, louvre + 6)));
+
+        Assert.assertEquals(1, distributed.get(0).size());
+        Assert.assertEquals(4, distributed.get(0).get(0).start);
+        Assert.assertEquals(louvre - paragraphs.get(1).getStart(), distributed.get(1).get(0).start);
+        Assert.assertTrue(distributed.get(2).isEmpty());
+    }
+
+    @Test
+    public void windowsAddContextAtWordBoundaries() {
+        List<Paragraph> paragraphs = Paragraphs.split(TEXT);
+
+        List<int[]> windows = Paragraphs.windows(TEXT, Arrays.asList(paragraphs.get(1)), 15);
+        Assert.assertEquals(1, windows.size());
+        Assert.assertEquals("painting.\n\n  \nIt's held at the Louvre.\n\nParis.",
+                TEXT.substring(windows.get(0)[0], windows.get(0)[1]));
+
+        // without context, the windows of two paragraphs stay apart; with enough, they merge.
+        Assert.assertEquals(2, Paragraphs.windows(TEXT, Arrays.asList(paragraphs.get(0), paragraphs.get(2)), 0)
+                .size());
+        windows = Paragraphs.windows(TEXT, Arrays.asList(paragraphs.get(0), paragraphs.get(2)), 40);
+        Assert.assertEquals(1, windows.size());
+        Assert.assertEquals(0, windows.get(0)[0]);
+        Assert.assertEquals(TEXT.length(), windows.get(0)[1]);
+    }
+
+    private String text(Paragraph paragraph) {
+        return TEXT.substring(paragraph.getStart(), paragraph.getEnd());
+    }
+
+    private Annotation annotation(int start, int end) {
+        Annotation annotation = new Annotation();
+        annotation.start = start;
+        annotation.end = end;
+        annotation.spot = TEXT.substring(start, end);
+        return annotation;
+    }
+
+}
@@ -0,0 +1,57 @@
+package eu.spaziodati.datatxt.stanbol.enhancer.engines.paragraphs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+public class TextWindowsTest {
+
+    private static final String TEXT = "  \n The Mona Lisa is a portrait by Leonardo da Vinci.\n\nIt is kept at the Louvre"
+            + " in Paris.\nIt was stolen in 1911 and recovered two years later. \n\n  ";
+
+    @Test
+    public void scansTheTrimmedText() throws Exception {
+        TextWindows.Scan scan = TextWindows.scan(new StringReader(TEXT), 10);
+
+        Assert.assertEquals(4, scan.leading);
+        Assert.assertEquals(TEXT.trim().length(), scan.length);
+        Assert.assertEquals("The Mona L", scan.head);
+        Assert.assertEquals(TEXT.trim().substring(TEXT.trim().length() - 10), scan.tail);
+    }
+
+    @Test
+    public void windowsCoverTheTrimmedText() throws Exception {
+        String trimmed = TEXT.trim();
+        for (int size = 10; size <= trimmed.length() + 10; size += 7) {
+            TextWindows.Scan scan = TextWindows.scan(new StringReader(TEXT), 10);
+            TextWindows.WindowReader windows = new TextWindows.WindowReader(new StringReader(TEXT), scan, size);
+
+            StringBuilder joined = new StringBuilder();
+            TextWindows.Window window;
+            while ((window = windows.next()) != null) {
+                Assert.assertEquals(joined.length(), window.offset);
+                Assert.assertTrue(window.text.length() <= size);
+                joined.append(window.text);
+            }
+            Assert.assertEquals(trimmed, joined.toString());
+        }
+    }
+
+    @Test
+    public void cutsAtBlankLines() throws Exception {
+        TextWindows.Scan scan = TextWindows.scan(new StringReader(TEXT), 10);
+        TextWindows.WindowReader windows = new TextWindows.WindowReader(new StringReader(TEXT), scan, 70);
+
+        Assert.assertEquals("The Mona Lisa is a portrait by Leonardo da Vinci.\n\n", windows.next().text);
+    }
+
+    @Test
+    public void handlesBlankTexts() throws Exception {
+        TextWindows.Scan scan = TextWindows.scan(new StringReader(" \n\t "), 10);
+
+        Assert.assertEquals(0, scan.length);
+        Assert.assertNull(new TextWindows.WindowReader(new StringReader(" \n\t "), scan, 10).next());
+    }
+
+}